@@ -0,0 +1,104 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.technophobia.webdriver.substeps.runner.SubstepsHtmlUnitDriver;
+
+/**
+ * Drivers and pages shared by the benchmarks.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+        // static helpers only
+    }
+
+
+    /**
+     * A javascript enabled HtmlUnitDriver, the same driver and browser version
+     * the DefaultWebDriverFactory uses.
+     */
+    public static HtmlUnitDriver htmlUnitDriver() {
+        final HtmlUnitDriver driver = new SubstepsHtmlUnitDriver(BrowserVersion.FIREFOX_3_6);
+        driver.setJavascriptEnabled(true);
+        return driver;
+    }
+
+
+    /**
+     * @return the file url of a page under src/benchmark/resources/benchmark
+     */
+    public static String page(final String name) {
+        final URL url = BenchmarkFixtures.class.getResource("/benchmark/" + name);
+        if (url == null) {
+            throw new IllegalArgumentException("No benchmark page " + name);
+        }
+        return url.toExternalForm();
+    }
+
+
+    /**
+     * Writes a page with a single table of the given number of body rows, row
+     * n has the cells "Name n", "Town n", "Ref-n" and a link, with n zero
+     * padded so that no cell text contains another's.
+     *
+     * @return the file url of the page
+     */
+    public static String tablePage(final int rows) throws IOException {
+
+        final File file = File.createTempFile("benchmark-table-" + rows + "-", ".html");
+        file.deleteOnExit();
+
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write("<html><head><title>Table benchmark</title></head><body>\n");
+            writer.write("<table id=\"results\"><thead><tr><th>Name</th><th>Town</th><th>Ref</th><th></th></tr></thead>\n");
+            writer.write("<tbody>\n");
+            for (int i = 1; i <= rows; i++) {
+                final String n = String.format("%06d", Integer.valueOf(i));
+                writer.write("<tr><td>Name " + n + "</td><td>Town " + n + "</td><td>Ref-" + n
+                        + "</td><td><a href=\"#" + n + "\" class=\"view\">View</a></td></tr>\n");
+            }
+            writer.write("</tbody></table>\n</body></html>\n");
+        } finally {
+            writer.close();
+        }
+
+        return file.toURI().toURL().toExternalForm();
+    }
+
+
+    /**
+     * The FindTableRowWithColumnsThatContainText parameter matching row n of
+     * a {@link #tablePage(int)}.
+     */
+    public static String rowText(final int row) {
+        final String n = String.format("%06d", Integer.valueOf(row));
+        return "\"Name " + n + "\",\"Town " + n + "\",\"Ref-" + n + "\"";
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.google.common.base.Suppliers;
+import com.technophobia.webdriver.benchmark.BenchmarkFixtures;
+import com.technophobia.webdriver.substeps.runner.DefaultDriverType;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+/**
+ * TableSubStepImplementations.findRowInTableWithText on tables of increasing
+ * size, matching a row half way down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindRowInTableBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int rows;
+
+    private HtmlUnitDriver webDriver;
+
+    private TableSubStepImplementations tableSteps;
+
+    private String rowText;
+
+
+    @Setup
+    public void loadTable() throws IOException {
+        this.webDriver = BenchmarkFixtures.htmlUnitDriver();
+        this.webDriver.get(BenchmarkFixtures.tablePage(this.rows));
+
+        final WebDriverContext context = new WebDriverContext(DefaultDriverType.HTMLUNIT, this.webDriver);
+        context.setCurrentElement(this.webDriver.findElement(By.id("results")));
+
+        this.tableSteps = new TableSubStepImplementations(Suppliers.ofInstance(context));
+        this.rowText = BenchmarkFixtures.rowText(this.rows / 2);
+    }
+
+
+    @TearDown
+    public void quit() {
+        this.webDriver.quit();
+    }
+
+
+    @Benchmark
+    public void findRowInTableWithText() {
+        this.tableSteps.findRowInTableWithText(this.rowText);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.technophobia.webdriver.benchmark.BenchmarkFixtures;
+import com.technophobia.webdriver.substeps.runner.DefaultDriverType;
+import com.technophobia.webdriver.util.WebDriverContext;
+import com.technophobia.webdriver.util.WebDriverSubstepsBy;
+
+/**
+ * MatchingElementResultHandler.processResults for locators that match one and
+ * many elements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MatchingElementResultHandlerBenchmark {
+
+    private HtmlUnitDriver webDriver;
+
+    private WebDriverContext context;
+
+    private By single;
+
+    private By multiple;
+
+
+    @Setup
+    public void loadPage() {
+        this.webDriver = BenchmarkFixtures.htmlUnitDriver();
+        this.webDriver.get(BenchmarkFixtures.page("locators.html"));
+
+        this.context = new WebDriverContext(DefaultDriverType.HTMLUNIT, this.webDriver);
+
+        this.single = WebDriverSubstepsBy.ByTagAndAttributes("input", "type=\"submit\",name=\"go\"");
+        this.multiple = WebDriverSubstepsBy.ByTagAndAttributes("li", "class=\"result odd\"");
+    }
+
+
+    @TearDown
+    public void quit() {
+        this.webDriver.quit();
+    }
+
+
+    @Benchmark
+    public WebElement exactlyOneElement() {
+        return MatchingElementResultHandler.ExactlyOneElement.processResults(this.context, this.single,
+                "expecting one element");
+    }
+
+
+    @Benchmark
+    public WebElement atLeastOneElementOfMany() {
+        return MatchingElementResultHandler.AtLeastOneElement.processResults(this.context, this.multiple,
+                "expecting at least one element");
+    }
+
+
+    @Benchmark
+    public WebElement nthElementOfMany() {
+        return new MatchingElementResultHandler.NthElement(3).processResults(this.context, this.multiple,
+                "expecting a third element");
+    }
+}
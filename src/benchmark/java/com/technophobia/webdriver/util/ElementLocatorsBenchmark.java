@@ -0,0 +1,124 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.technophobia.webdriver.benchmark.BenchmarkFixtures;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsPropertiesConfiguration;
+
+/**
+ * Latency of ElementLocators.waitForElement, both for an element that is
+ * already present and for one added by script shortly after the wait starts.
+ * The difference between the appearing case and APPEAR_AFTER_MILLIS is the
+ * cost of the polling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElementLocatorsBenchmark {
+
+    private static final long APPEAR_AFTER_MILLIS = 50;
+
+    private static final long TIMEOUT_SECS = 5;
+
+    private static final WebdriverSubstepsConfiguration CONFIGURATION =
+            WebdriverSubstepsPropertiesConfiguration.INSTANCE;
+
+    private static final String ADD_LATER = "var container = document.getElementById('late-container');"
+            + "container.innerHTML = '';"
+            + "setTimeout(function() { container.innerHTML = '<span id=\"late\">here</span>'; }, arguments[0]);";
+
+    private HtmlUnitDriver webDriver;
+
+
+    @Setup
+    public void loadPage() {
+        this.webDriver = BenchmarkFixtures.htmlUnitDriver();
+        this.webDriver.get(BenchmarkFixtures.page("locators.html"));
+    }
+
+
+    @TearDown
+    public void quit() {
+        this.webDriver.quit();
+    }
+
+
+    /**
+     * A page of its own, whose element is removed and scheduled to be added
+     * again before each invocation.
+     */
+    @State(Scope.Benchmark)
+    public static class AppearingElement {
+
+        private HtmlUnitDriver webDriver;
+
+
+        @Setup
+        public void loadPage() {
+            this.webDriver = BenchmarkFixtures.htmlUnitDriver();
+            this.webDriver.get(BenchmarkFixtures.page("locators.html"));
+        }
+
+
+        @Setup(Level.Invocation)
+        public void scheduleElement() {
+            this.webDriver.executeScript(ADD_LATER, Long.valueOf(APPEAR_AFTER_MILLIS));
+        }
+
+
+        @TearDown
+        public void quit() {
+            this.webDriver.quit();
+        }
+    }
+
+
+    @Benchmark
+    public WebElement waitForPresentElement() {
+        return ElementLocators.waitForElement(By.id("summary"), TIMEOUT_SECS, this.webDriver, CONFIGURATION);
+    }
+
+
+    @Benchmark
+    public WebElement waitForAppearingElement(final AppearingElement appearing) {
+        return ElementLocators.waitForElement(By.id("late"), TIMEOUT_SECS, appearing.webDriver, CONFIGURATION);
+    }
+}
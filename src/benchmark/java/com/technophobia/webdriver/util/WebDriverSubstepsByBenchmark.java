@@ -0,0 +1,128 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.technophobia.webdriver.benchmark.BenchmarkFixtures;
+
+/**
+ * Construction of the XPath behind the WebDriverSubstepsBy locators, and
+ * evaluation of those locators against HtmlUnit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WebDriverSubstepsByBenchmark {
+
+    private static final String ATTRIBUTES = "type=\"text\",name=\"q\",class=\"search-input\"";
+
+    private HtmlUnitDriver webDriver;
+
+
+    @Setup
+    public void loadPage() {
+        this.webDriver = BenchmarkFixtures.htmlUnitDriver();
+        this.webDriver.get(BenchmarkFixtures.page("locators.html"));
+    }
+
+
+    @TearDown
+    public void quit() {
+        this.webDriver.quit();
+    }
+
+
+    @Benchmark
+    public String buildTagAndAttributesXPath() {
+        return xpath(WebDriverSubstepsBy.ByTagAndAttributes("input", ATTRIBUTES));
+    }
+
+
+    @Benchmark
+    public String buildTagAndTextXPath() {
+        return xpath(WebDriverSubstepsBy.ByTagAndWithText("span", "Fifth result"));
+    }
+
+
+    @Benchmark
+    public String buildIdAndTextXPath() {
+        return xpath(WebDriverSubstepsBy.ByIdAndText("summary", "Showing 8 results for your search"));
+    }
+
+
+    @Benchmark
+    public List<WebElement> findByTagAndAttributes() {
+        return this.webDriver.findElements(WebDriverSubstepsBy.ByTagAndAttributes("input", ATTRIBUTES));
+    }
+
+
+    @Benchmark
+    public List<WebElement> findByTagAndText() {
+        return this.webDriver.findElements(WebDriverSubstepsBy.ByTagAndWithText("span", "Fifth result"));
+    }
+
+
+    @Benchmark
+    public List<WebElement> findByTagContainingText() {
+        return this.webDriver.findElements(WebDriverSubstepsBy.ByTagContainingText("span", "result"));
+    }
+
+
+    @Benchmark
+    public List<WebElement> findByIdAndText() {
+        return this.webDriver.findElements(WebDriverSubstepsBy.ByIdAndText("summary",
+                "Showing 8 results for your search"));
+    }
+
+
+    /**
+     * The plain selenium equivalent of {@link #findByTagAndAttributes()}, for
+     * comparison.
+     */
+    @Benchmark
+    public List<WebElement> findByPlainXPath() {
+        return this.webDriver.findElements(By
+                .xpath("//input[@type=\"text\" and @name=\"q\" and @class=\"search-input\"]"));
+    }
+
+
+    private static String xpath(final By by) {
+        return ((WebDriverSubstepsBy.XPathBy) by).getXPath();
+    }
+}
@@ -18,11 +18,10 @@
  */
 package com.technophobia.webdriver.substeps.impl;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
@@ -31,6 +30,9 @@ import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.technophobia.substeps.runner.ProvidesScreenshot;
 import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+import com.technophobia.webdriver.util.ElementSnapshot;
+import com.technophobia.webdriver.util.ScreenshotService;
 import com.technophobia.webdriver.util.WebDriverContext;
 
 public abstract class AbstractWebDriverSubStepImplementations implements ProvidesScreenshot {
@@ -51,8 +53,11 @@ public abstract class AbstractWebDriverSubStepImplementations implements Provide
     protected boolean elementHasExpectedAttributes(final WebElement e, final Map<String, String> expectedAttributes) {
         final Map<String, String> actualValues = new HashMap<String, String>();
 
+        final ElementSnapshot snapshot = webDriverContext().snapshot(Collections.singletonList(e), false,
+                expectedAttributes.keySet().toArray(new String[expectedAttributes.size()])).get(0);
+
         for (final String key : expectedAttributes.keySet()) {
-            final String elementVal = e.getAttribute(key);
+            final String elementVal = snapshot.getAttribute(key);
 
             // if no attribute will this throw an exception or just return
             // null ??
@@ -75,17 +80,22 @@ public abstract class AbstractWebDriverSubStepImplementations implements Provide
     }
 
 
-    public byte[] getScreenshotBytes() {
-
-        final WebDriver webDriver = webDriver();
-
-        return TakesScreenshot.class.isAssignableFrom(webDriver.getClass()) ? getScreenshotBytes((TakesScreenshot) webDriver)
-                : null;
+    /**
+     * @return the configuration this thread's steps run with
+     */
+    protected WebdriverSubstepsConfiguration configuration() {
+        return webDriverContext().getConfiguration();
     }
 
 
-    private byte[] getScreenshotBytes(final TakesScreenshot screenshotTaker) {
+    public byte[] getScreenshotBytes() {
+
+        final byte[] png = ScreenshotService.capture(webDriver());
 
-        return screenshotTaker.getScreenshotAs(OutputType.BYTES);
+        if (png != null && configuration().screenshotsOnFailure()) {
+            // already captured for the report, just save a copy
+            ScreenshotService.getInstance(configuration()).save(png, "failure", false);
+        }
+        return png;
     }
 }
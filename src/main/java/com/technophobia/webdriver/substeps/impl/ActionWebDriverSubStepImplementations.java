@@ -20,6 +20,7 @@ package com.technophobia.webdriver.substeps.impl;
 
 import static org.hamcrest.CoreMatchers.is;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -31,9 +32,9 @@ import org.junit.Assert;
 import org.openqa.selenium.Alert;
 import org.openqa.selenium.By;
 import org.openqa.selenium.ElementNotVisibleException;
+import org.openqa.selenium.InvalidElementStateException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebDriver.TargetLocator;
-import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
@@ -44,6 +45,8 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Supplier;
 import com.technophobia.substeps.model.SubSteps.Step;
 import com.technophobia.substeps.model.SubSteps.StepImplementations;
+import com.technophobia.webdriver.util.RetryPolicy;
+import com.technophobia.webdriver.util.ScreenshotService;
 import com.technophobia.webdriver.util.WebDriverContext;
 
 @StepImplementations(requiredInitialisationClasses = DefaultExecutionSetupTearDown.class)
@@ -69,7 +72,9 @@ public class ActionWebDriverSubStepImplementations extends AbstractWebDriverSubS
     /**
      * Navigate to a url, if the url begins with http or file, the url will be
      * used as is, if a relative url is specified then it will be prepended with
-     * the base url property
+     * the base url property. How long this waits for the page to load depends
+     * on webdriver.page.load.strategy, with eager or none follow it with a step
+     * that waits for what the scenario needs
      * 
      * @example NavigateTo /myApp (will navigate to http://localhost/myApp if
      *          base.url is set to http://localhost)
@@ -123,30 +128,33 @@ public class ActionWebDriverSubStepImplementations extends AbstractWebDriverSubS
     
     private void clickElementWhenAvailable(final WebElement elem) {
 
-        final long timeout = System.currentTimeMillis() + (1000 * WebdriverSubstepsPropertiesConfiguration.INSTANCE.defaultTimeout());
-
-        boolean success = false;
-
-        while (!success && System.currentTimeMillis() < timeout) {
-
-            try {
-                elem.click();
-                success = true;
-            } catch (final WebDriverException e) {
-                if (! (e.getMessage().contains("Element is not clickable") || e.getMessage().contains("Element is not currently visible")) ) {
-                    throw e;
-                }
-                try {
-                    Thread.sleep(500);
-                } catch (final InterruptedException e1) {
-                    // bothered
-                    logger.debug("not clickable this time");
+        final RetryPolicy retryPolicy = RetryPolicy.fromConfiguration(configuration())
+                .retryOn(InvalidElementStateException.class).retryIf(NOT_CLICKABLE);
+        try {
+            retryPolicy.execute("click", new RetryPolicy.Attempt<Void>() {
+                public Void run() {
+                    elem.click();
+                    return null;
                 }
-            } 
+            });
+        } catch (final RuntimeException e) {
+            if (!retryPolicy.isRetryable(e)) {
+                throw e;
+            }
+            // still not clickable when the retries ran out
+            final AssertionError failure = new AssertionError("Failed to click on element within timeout");
+            failure.initCause(e);
+            throw failure;
         }
-        Assert.assertTrue("Failed to click on element within timeout", success);
+    }
 
-    }    
+    // chrome reports another element being in the way of the click as a plain
+    // WebDriverException, there's no more specific type to go on
+    private static final RetryPolicy.Classifier NOT_CLICKABLE = new RetryPolicy.Classifier() {
+        public boolean isRetryable(final RuntimeException e) {
+            return e.getMessage() != null && e.getMessage().contains("Element is not clickable");
+        }
+    };
 
     /**
      * Click the link "(....)" as it appears on the page
@@ -272,7 +280,7 @@ public class ActionWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
 
     private String normaliseURL(final String relativeURL) {
-        return normalise(WebdriverSubstepsPropertiesConfiguration.INSTANCE.baseURL() + relativeURL);
+        return normalise(configuration().baseURL() + relativeURL);
     }
 
 
@@ -349,6 +357,26 @@ public class ActionWebDriverSubStepImplementations extends AbstractWebDriverSubS
     }
 
 
+    /**
+     * Saves a screenshot of the page to webdriver.screenshots.dir, the file is
+     * written in the background.
+     * 
+     * @example TakeScreenshot "search results"
+     * @section Location
+     * 
+     * @param name
+     *            included in the file name
+     */
+    @Step("TakeScreenshot \"([^\"]*)\"")
+    public void takeScreenshot(final String name) {
+
+        final File file = ScreenshotService.getInstance(configuration()).screenshot(webDriver(), name, false);
+
+        logger.debug(file == null ? "Screenshot " + name + " not taken, the driver can't" : "Saving screenshot to "
+                + file);
+    }
+
+
     @Step("DismissAlert with message \"([^\"]*)\"")
     public void dismissAlertWithMessage(final String message) {
 
@@ -44,6 +44,7 @@ import com.technophobia.substeps.model.SubSteps.StepImplementations;
 import com.technophobia.substeps.runner.ExecutionContext;
 import com.technophobia.substeps.step.StepImplementationUtils;
 import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
+import com.technophobia.webdriver.util.ElementSnapshot;
 import com.technophobia.webdriver.util.WebDriverContext;
 import com.technophobia.webdriver.util.WebDriverSubstepsBy;
 
@@ -153,7 +154,7 @@ public class AssertionWebDriverSubStepImplementations extends AbstractWebDriverS
         final List<WebElement> itemList = webDriver().findElements(By.tagName(tag));
         boolean found = false;
 
-        for (final WebElement item : itemList) {
+        for (final ElementSnapshot item : webDriverContext().snapshot(itemList, false, attributeName)) {
             final String itemAttributeValue = item.getAttribute(attributeName);
             if (StringUtils.isNotBlank(itemAttributeValue) && itemAttributeValue.contains(attributeValue)) {
                 found = true;
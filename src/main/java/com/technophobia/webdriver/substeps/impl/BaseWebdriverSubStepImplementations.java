@@ -35,6 +35,7 @@ import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
         AssertionWebDriverSubStepImplementations.class,
         FinderWebDriverSubStepImplementations.class,
         FormWebDriverSubStepImplementations.class,
+        PerformanceWebDriverSubStepImplementations.class,
         StartupWebDriverSubStepImplementations.class,
         TableSubStepImplementations.class })
 public class BaseWebdriverSubStepImplementations {
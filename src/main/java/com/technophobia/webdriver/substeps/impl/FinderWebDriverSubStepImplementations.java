@@ -38,6 +38,9 @@ import com.technophobia.substeps.model.SubSteps.StepImplementations;
 import com.technophobia.substeps.model.SubSteps.StepParameter;
 import com.technophobia.substeps.model.parameter.IntegerConverter;
 import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
+import com.technophobia.webdriver.util.ElementSnapshot;
+import com.technophobia.webdriver.util.ElementStash;
+import com.technophobia.webdriver.util.RetryPolicy;
 import com.technophobia.webdriver.util.WebDriverContext;
 import com.technophobia.webdriver.util.WebDriverSubstepsBy;
 
@@ -78,7 +81,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         final WebElement elem = webDriverContext().waitForElement(By.id(id));
         Assert.assertNotNull("expecting an element with id " + id, elem);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, By.id(id)));
         return elem;
     }
 
@@ -103,7 +106,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         webDriverContext().setCurrentElement(null);
         final WebElement elem = webDriverContext().waitForElement(By.id(id), t);
         Assert.assertNotNull("expecting an element with id " + id, elem);
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, By.id(id)));
         return elem;
     }
 
@@ -123,7 +126,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         webDriverContext().setCurrentElement(null);
         final WebElement elem = webDriverContext().waitForElement(By.xpath(xpath));
         Assert.assertNotNull("expecting an element with xpath " + xpath, elem);
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, By.xpath(xpath)));
     }
 
 
@@ -143,7 +146,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         webDriverContext().setCurrentElement(null);
         final WebElement elem = webDriverContext().waitForElement(By.name(name));
         Assert.assertNotNull("expecting an element with name " + name, elem);
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, By.name(name)));
         return elem;
     }
 
@@ -172,7 +175,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         final WebElement elem = MatchingElementResultHandler.AtLeastOneElement.processResults(webDriverContext(), by,
                 "expecting at least one child element to contain text: " + text);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, by));
     }
 
 
@@ -194,12 +197,12 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         final List<WebElement> elementsWithTagName = webDriver().findElements(By.tagName(tag));
 
         WebElement matchingElement = null;
-        for (final WebElement element : elementsWithTagName) {
+        for (final ElementSnapshot element : webDriverContext().snapshot(elementsWithTagName, true)) {
 
             if (element.getText().equals(text)) {
 
                 if (matchingElement == null) {
-                    matchingElement = element;
+                    matchingElement = element.getElement();
                 } else {
                     Assert.fail("expected one element with tag " + tag + " and text " + text + " but found multiple");
                 }
@@ -229,7 +232,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         final WebElement elem = webDriverContext().getCurrentElement().findElement(By.name(name));
 
         Assert.assertNotNull("expecting an element with name " + name, elem);
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, webDriverContext().childRecipe(By.name(name)));
         return elem;
     }
 
@@ -273,7 +276,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         final WebElement elem = resultHandler.processResults(webDriverContext(), chained, msg);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, webDriverContext().childRecipe(byTagAndAttributes));
 
         return elem;
     }
@@ -320,7 +323,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         final WebElement elem = resultHandler.processResults(webDriverContext(), chained, msg);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, webDriverContext().childRecipe(byTagAndAttributesWithText));
 
         return elem;
     }    
@@ -425,30 +428,28 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         List<WebElement> matchingElems = null;
 
-        for (final WebElement tagElem : tagElems) {
+        final List<WebElement> inputElements = new ArrayList<WebElement>();
+
+        for (final ElementSnapshot tagElem : webDriverContext().snapshot(tagElems, true)) {
 
             // does this tag contain the right text ?
             if (label.compareTo(tagElem.getText()) == 0) {
                 // yes
                 // is there a radio button inside ?
+                inputElements.addAll(tagElem.getElement().findElements(By.tagName("input")));
+            }
+        }
 
-                final List<WebElement> inputElements = tagElem.findElements(By.tagName("input"));
-
-                if (inputElements != null && !inputElements.isEmpty()) {
-                    // are they radio buttons ?
-
-                    for (final WebElement inputElement : inputElements) {
-                        final String type = inputElement.getAttribute("type");
+        // are they radio buttons ?
+        for (final ElementSnapshot inputElement : webDriverContext().snapshot(inputElements, false, "type")) {
+            final String type = inputElement.getAttribute("type");
 
-                        if (type != null && type.compareToIgnoreCase(inputType) == 0) {
-                            // bingo
-                            if (matchingElems == null) {
-                                matchingElems = new ArrayList<WebElement>();
-                            }
-                            matchingElems.add(inputElement);
-                        }
-                    }
+            if (type != null && type.compareToIgnoreCase(inputType) == 0) {
+                // bingo
+                if (matchingElems == null) {
+                    matchingElems = new ArrayList<WebElement>();
                 }
+                matchingElems.add(inputElement.getElement());
             }
         }
 
@@ -504,7 +505,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         rtn = handler.processResults(webDriverContext(), by, msg);
 
-        webDriverContext().setCurrentElement(rtn);
+        webDriverContext().setCurrentElement(rtn, ElementStash.recipe(null, by));
 
         return rtn;
     }
@@ -627,21 +628,16 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
     private WebElement findParentByWithChildBy(final By by, final By childBy, final String assertionMessage,
             final String findParentAssertionMessage, final String multipleChildrenMessage) {
         
-        boolean repeat = true;
-        WebElement rtn = null;
-        while (repeat){
-            
-            repeat = false;
-            try {
-                rtn = findParentWithChildByInternal(by, childBy, assertionMessage, findParentAssertionMessage,
-                    multipleChildrenMessage);
-            }
-            catch (StaleElementReferenceException e){
-                
-                logger.debug("stale element exception caught, retrying..");
-                repeat = true;
-            }
-        }
+        // the page may redraw the candidates while they're being searched
+        final WebElement rtn = RetryPolicy.fromConfiguration(configuration())
+                .retryOn(StaleElementReferenceException.class)
+                .execute("find parent", new RetryPolicy.Attempt<WebElement>() {
+                    public WebElement run() {
+                        return findParentWithChildByInternal(by, childBy, assertionMessage,
+                                findParentAssertionMessage, multipleChildrenMessage);
+                    }
+                });
+
         Assert.assertNotNull(assertionMessage, rtn);
         webDriverContext().setCurrentElement(rtn);
         return rtn;
@@ -742,10 +738,10 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         WebElement elem = null;
         final List<WebElement> elems = webDriver().findElements(By.tagName(type));
         if (elems != null) {
-            for (final WebElement e : elems) {
+            for (final ElementSnapshot e : webDriverContext().snapshot(elems, true)) {
 
                 if (text.equalsIgnoreCase(e.getText())) {
-                    elem = e;
+                    elem = e.getElement();
                     break;
                 }
             }
@@ -776,7 +772,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
             final WebElement elem = webDriverContext().waitForElement(byIdAndText);
 
             Assert.assertNotNull("expecting to find an element with id: " + id, elem);
-            webDriverContext().setCurrentElement(elem);
+            webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, byIdAndText));
         } catch (final TimeoutException e) {
             logger.debug("timed out waiting for id: " + id + " with text: " + expected + " page src:\n"
                     + webDriver().getPageSource());
@@ -803,14 +799,18 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         final By byCurrentElement = WebDriverSubstepsBy.ByCurrentWebElement(webDriverContext().getCurrentElement());
 
-        final By chained = new ByChained(byCurrentElement, WebDriverSubstepsBy.ByXpathContainingText(xpath, text));
+        final By byXpathContainingText = WebDriverSubstepsBy.ByXpathContainingText(xpath, text);
+
+        final By chained = new ByChained(byCurrentElement, byXpathContainingText);
+
+        final ElementStash.Recipe recipe = webDriverContext().childRecipe(byXpathContainingText);
 
         webDriverContext().setCurrentElement(null);
 
         final WebElement elem = MatchingElementResultHandler.AtLeastOneElement.processResults(webDriverContext(),
                 chained, "expecting at least one child element to contain text: " + text);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, recipe);
 
     }
 
@@ -837,7 +837,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
         final WebElement elem = MatchingElementResultHandler.AtLeastOneElement.processResults(webDriverContext(), by,
                 "expecting at least one child element to contain text: " + text);
 
-        webDriverContext().setCurrentElement(elem);
+        webDriverContext().setCurrentElement(elem, ElementStash.recipe(null, by));
 
     }
     
@@ -874,7 +874,7 @@ public class FinderWebDriverSubStepImplementations extends AbstractWebDriverSubS
 
         rtn = handler.processResults(webDriverContext(), by, msg);
 
-        webDriverContext().setCurrentElement(rtn);
+        webDriverContext().setCurrentElement(rtn, ElementStash.recipe(null, by));
 
         return rtn;
     }    
@@ -0,0 +1,184 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.impl;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.model.SubSteps.Step;
+import com.technophobia.substeps.model.SubSteps.StepImplementations;
+import com.technophobia.webdriver.substeps.runner.Condition;
+import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
+import com.technophobia.webdriver.util.PagePerformance;
+import com.technophobia.webdriver.util.PagePerformanceLog;
+
+/**
+ * Performance budgets for the current page, checked against the browser's
+ * Navigation Timing and Resource Timing measurements once the page has
+ * loaded. Each measurement is also recorded to webdriver.page.performance.file
+ */
+@StepImplementations(requiredInitialisationClasses = DefaultExecutionSetupTearDown.class)
+public class PerformanceWebDriverSubStepImplementations extends AbstractWebDriverSubStepImplementations {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceWebDriverSubStepImplementations.class);
+
+
+    /**
+     * Check that the current page, eg. the one just navigated to, loaded
+     * within the time given, from the start of the navigation to the end of
+     * the load event.
+     * 
+     * @example AssertPageLoadUnder 2000 ms
+     * @section Performance
+     * 
+     * @param millis
+     *            the most the page may take to load
+     */
+    @Step("AssertPageLoadUnder ([0-9]+) ms")
+    public void assertPageLoadUnder(final String millis) {
+        logger.debug("Asserting the page loaded in under " + millis + " ms");
+
+        final PagePerformance performance = measure("AssertPageLoadUnder " + millis + " ms");
+        final long limit = Long.parseLong(millis);
+
+        Assert.assertTrue("page " + performance.getUrl() + " took " + performance.getPageLoadMillis()
+                + " ms to load, expecting under " + limit + " ms", performance.getPageLoadMillis() < limit);
+    }
+
+
+    /**
+     * Check that the current page fetched fewer resources, eg. scripts,
+     * stylesheets, images and xhr requests, than the number given. The
+     * browser only keeps the timings of its first 150 or 250 resources until
+     * the page is first measured, and this step fails rather than pass on an
+     * undercount if that limit was reached.
+     * 
+     * @example AssertResourceCountBelow 80
+     * @section Performance
+     * 
+     * @param count
+     *            the number of resources the page must stay below
+     */
+    @Step("AssertResourceCountBelow ([0-9]+)")
+    public void assertResourceCountBelow(final String count) {
+        logger.debug("Asserting the page fetched fewer than " + count + " resources");
+
+        final PagePerformance performance = measure("AssertResourceCountBelow " + count);
+        final int limit = Integer.parseInt(count);
+
+        assertAllResourcesCounted(performance);
+        Assert.assertTrue("page " + performance.getUrl() + " fetched " + performance.getResourceCount()
+                + " resources, expecting fewer than " + limit, performance.getResourceCount() < limit);
+    }
+
+
+    /**
+     * Check that the current page and its resources were transferred in fewer
+     * bytes than given. Cached resources, and cross origin ones served without
+     * a Timing-Allow-Origin header, count as nothing. As with
+     * AssertResourceCountBelow, the step fails if the browser's resource
+     * timing buffer filled up and resources went uncounted.
+     * 
+     * @example AssertTransferSizeBelow 1 MB
+     * @section Performance
+     * 
+     * @param size
+     *            the size, may be fractional
+     * @param unit
+     *            bytes, KB or MB
+     */
+    @Step("AssertTransferSizeBelow ([0-9]+(?:\\.[0-9]+)?) (bytes|KB|MB)")
+    public void assertTransferSizeBelow(final String size, final String unit) {
+        logger.debug("Asserting the page transferred less than " + size + " " + unit);
+
+        final PagePerformance performance = measure("AssertTransferSizeBelow " + size + " " + unit);
+        final long limit = bytes(size, unit);
+
+        Assert.assertTrue("the browser doesn't report the transfer size of " + performance.getUrl(),
+                performance.getTransferBytes() != PagePerformance.UNKNOWN);
+        assertAllResourcesCounted(performance);
+        Assert.assertTrue("page " + performance.getUrl() + " transferred " + performance.getTransferBytes()
+                + " bytes, expecting less than " + limit, performance.getTransferBytes() < limit);
+    }
+
+
+    /**
+     * Record the current page's performance without checking it against a
+     * budget.
+     * 
+     * @example RecordPagePerformance
+     * @section Performance
+     */
+    @Step("RecordPagePerformance")
+    public void recordPagePerformance() {
+        logger.info("Page performance: " + measure("RecordPagePerformance"));
+    }
+
+
+    /**
+     * Waits for the current page to finish loading and records its
+     * performance.
+     */
+    private PagePerformance measure(final String step) {
+
+        final PagePerformance[] measured = new PagePerformance[1];
+
+        webDriverContext().waitForCondition(new Condition() {
+            public boolean conditionMet() {
+                measured[0] = PagePerformance.measure(webDriver());
+                return measured[0] == null || measured[0].isLoaded();
+            }
+        });
+
+        final PagePerformance performance = measured[0];
+        Assert.assertNotNull("page performance isn't available from " + webDriverContext().getDriverType(),
+                performance);
+        Assert.assertTrue("page " + performance.getUrl() + " didn't finish loading", performance.isLoaded());
+
+        final PagePerformanceLog log = PagePerformanceLog.getInstance(configuration());
+        if (log != null) {
+            log.record(performance, step);
+        }
+        return performance;
+    }
+
+
+    private static void assertAllResourcesCounted(final PagePerformance performance) {
+        Assert.assertFalse("the browser's resource timing buffer filled up on " + performance.getUrl()
+                + ", it fetched more than the " + performance.getResourceCount() + " resources counted",
+                performance.isResourceBufferFull());
+    }
+
+
+    static long bytes(final String size, final String unit) {
+
+        final double value = Double.parseDouble(size);
+        final String u = unit.toUpperCase(Locale.UK);
+
+        if ("MB".equals(u)) {
+            return (long) (value * 1024 * 1024);
+        } else if ("KB".equals(u)) {
+            return (long) (value * 1024);
+        }
+        return (long) value;
+    }
+}
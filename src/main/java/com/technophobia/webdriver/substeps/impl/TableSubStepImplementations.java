@@ -23,10 +23,14 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.text.IsEqualIgnoringCase.equalToIgnoringCase;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Assert;
 import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 import com.google.common.base.Supplier;
@@ -35,6 +39,8 @@ import com.technophobia.substeps.model.SubSteps.StepImplementations;
 import com.technophobia.substeps.model.SubSteps.StepParameter;
 import com.technophobia.substeps.model.parameter.IntegerConverter;
 import com.technophobia.webdriver.substeps.runner.DefaultExecutionSetupTearDown;
+import com.technophobia.webdriver.util.ElementStash;
+import com.technophobia.webdriver.util.TableScanner;
 import com.technophobia.webdriver.util.WebDriverContext;
 import com.technophobia.webdriver.util.WebDriverSubstepsBy;
 
@@ -248,49 +254,77 @@ public class TableSubStepImplementations extends AbstractWebDriverSubStepImpleme
             columnValList.add(s.replaceAll("\"", "").trim());
         }
 
-        final List<WebElement> tableRows = currentElement.findElements(By.tagName("tr"));
+        final By byRow = new ByRowWithText(columnValList, columnText);
+
+        // the row is found again from the table as it is now, if the Find step
+        // that found the table said how to find it again
+        final ElementStash.Recipe tableRecipe = webDriverContext().getCurrentElementRecipe();
+        final ElementStash.Recipe recipe;
+        if (tableRecipe != null) {
+            recipe = ElementStash.recipe(tableRecipe, byRow);
+        } else {
+            recipe = new ElementStash.Recipe() {
+                public WebElement resolve(final WebDriver webDriver) {
+                    return byRow.findElement(currentElement);
+                }
 
-        List<WebElement> matchingRows = null;
 
-        // TODO - refactor this into WebDriver Bys ..?
+                @Override
+                public String toString() {
+                    return String.valueOf(byRow);
+                }
+            };
+        }
 
-        // go through all rows
-        for (final WebElement row : tableRows) {
+        webDriverContext().stashElement(TABLE_ROW_KEY, byRow.findElement(currentElement), recipe);
+    }
 
-            // for each row
-            final List<WebElement> tableCells = row.findElements(By.tagName("td"));
+    /**
+     * The one row of a table with cells containing the text, in order.
+     */
+    private final class ByRowWithText extends By {
 
-            int lookingForIdx = 0;
+        private final List<String> columnValList;
+        private final String columnText;
 
-            boolean found = false;
-            // do we have a match ?
-            for (final WebElement td : tableCells) {
 
-                if (td.getText().contains(columnValList.get(lookingForIdx))) {
+        ByRowWithText(final List<String> columnValList, final String columnText) {
+            this.columnValList = columnValList;
+            this.columnText = columnText;
+        }
 
-                    lookingForIdx++;
-                    if (lookingForIdx >= columnValList.size()) {
-                        // found em all
-                        found = true;
-                        break;
-                    }
-                }
-            }
 
-            if (found) {
-                if (matchingRows == null) {
-                    matchingRows = new ArrayList<WebElement>();
-                }
-                matchingRows.add(row);
-            }
+        @Override
+        public List<WebElement> findElements(final SearchContext context) {
+            Assert.assertTrue("expecting to look for a row within a table", context instanceof WebElement);
+            return Collections.singletonList(findRowWithText(webDriver(), (WebElement) context, this.columnValList,
+                    this.columnText));
+        }
+
+
+        @Override
+        public String toString() {
+            return "ByRowWithText: [" + this.columnText + "]";
+        }
+    }
+
+
+    private WebElement findRowWithText(final WebDriver webDriver, final WebElement table,
+            final List<String> columnValList, final String columnText) {
+
+        // a single script where the driver allows it, rather than a round trip
+        // per row and per cell
+        List<WebElement> matchingRows = new TableScanner(webDriver).findRowsContainingText(table, columnValList);
 
+        if (matchingRows == null) {
+            matchingRows = findRowsContainingText(table, columnValList);
         }
 
-        Assert.assertNotNull("Didn't find any rows with values: [" + columnText + "]", matchingRows);
+        Assert.assertFalse("Didn't find any rows with values: [" + columnText + "]", matchingRows.isEmpty());
 
         Assert.assertThat("Found too many rows that match values: [" + columnText + "]", matchingRows.size(), is(1));
 
-        webDriverContext().stashElement(TABLE_ROW_KEY, matchingRows.get(0));
+        return matchingRows.get(0);
     }
 
 
@@ -331,7 +365,43 @@ public class TableSubStepImplementations extends AbstractWebDriverSubStepImpleme
         findElementInRowBy(by);
     }
 
-    private static final String TABLE_ROW_KEY = "_tr_stash_key";
+    private static final ElementStash.Key TABLE_ROW_KEY = new ElementStash.Key("_tr_stash_key",
+            ElementStash.Scope.SCENARIO);
+
+
+    private List<WebElement> findRowsContainingText(final WebElement table, final List<String> columnValues) {
+
+        final List<WebElement> matchingRows = new ArrayList<WebElement>();
+
+        // go through all rows
+        for (final WebElement row : table.findElements(By.tagName("tr"))) {
+
+            final Iterator<WebElement> tableCells = row.findElements(By.tagName("td")).iterator();
+
+            // cell text is only fetched until the row is known to match
+            final Iterator<String> cellTexts = new Iterator<String>() {
+
+                public boolean hasNext() {
+                    return tableCells.hasNext();
+                }
+
+
+                public String next() {
+                    return tableCells.next().getText();
+                }
+
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+
+            if (TableScanner.containsInOrder(cellTexts, columnValues)) {
+                matchingRows.add(row);
+            }
+        }
+        return matchingRows;
+    }
 
 
     private WebElement findElementInRowBy(final By by) {
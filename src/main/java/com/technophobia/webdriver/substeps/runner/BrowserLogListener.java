@@ -0,0 +1,72 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.BrowserLogCollector;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+/**
+ * Drains the browser log into the {@link BrowserLogCollector} after each
+ * step, on the thread that ran it.
+ */
+public class BrowserLogListener implements IExecutionListener {
+
+    private final BrowserLogCollector collector;
+
+
+    public BrowserLogListener(final BrowserLogCollector collector) {
+        this.collector = collector;
+    }
+
+
+    public void onNodeFinished(final IExecutionNode node) {
+        collect(node);
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        collect(node);
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+        // no op
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    private void collect(final IExecutionNode node) {
+
+        if (node instanceof StepImplementationNode) {
+            final WebDriverContext webDriverContext = DefaultExecutionSetupTearDown.getThreadLocalWebDriverContext();
+
+            if (webDriverContext != null && !webDriverContext.isShutdown()) {
+                this.collector.collect(webDriverContext.getWebDriver(),
+                        StepTimingListener.stepName((StepImplementationNode) node));
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.Histogram;
+import com.technophobia.webdriver.util.WebDriverCommandListener;
+
+/**
+ * Traces every WebDriver command, enabled with webdriver.trace.commands. Each
+ * scenario's commands are logged, with their arguments, timings and the step
+ * that issued them, to a file of their own in webdriver.trace.commands.dir.
+ * Typed keys are logged only as a number of characters.
+ * At the end of the suite the latency of each type of command, and the number
+ * of commands each step implementation issues, are written to
+ * command-stats.csv and commands-per-step.csv in the same directory.
+ */
+public final class CommandTracingListener implements WebDriverCommandListener, IExecutionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandTracingListener.class);
+
+    public static final CommandTracingListener INSTANCE = new CommandTracingListener();
+
+    private static final int MAX_ARG_LENGTH = 120;
+
+    private final ConcurrentMap<String, Histogram> commandMicros = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, AtomicLong> commandFailures = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Histogram> commandsPerStep = new ConcurrentHashMap<String, Histogram>();
+
+    private final AtomicInteger scenarios = new AtomicInteger();
+
+    private final ThreadLocal<Trace> trace = new ThreadLocal<Trace>() {
+        @Override
+        protected Trace initialValue() {
+            return new Trace();
+        }
+    };
+
+
+    private CommandTracingListener() {
+        // single instance shared by the drivers and the notifier
+    }
+
+
+    public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+            final Throwable failure) {
+
+        histogram(this.commandMicros, command).record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        if (failure != null) {
+            counter(this.commandFailures, command).incrementAndGet();
+        }
+
+        final Trace t = this.trace.get();
+        t.stepCommands++;
+
+        if (t.log != null) {
+            t.log.append(String.format(Locale.UK, "%10.1f %9.1f  %s(%s)%s%n",
+                    Double.valueOf((System.nanoTime() - t.scenarioStartNanos) / 1000000.0),
+                    Double.valueOf(durationNanos / 1000000.0), command, formatArgs(command, args),
+                    failure == null ? "" : "  FAILED " + failure.getClass().getSimpleName()));
+        }
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+
+        if (node instanceof StepImplementationNode) {
+            final Trace t = this.trace.get();
+            t.step = StepTimingListener.stepName((StepImplementationNode) node);
+            t.stepCommands = 0;
+
+            if (t.log != null) {
+                t.log.append("-- ").append(node.getDescription()).append(String.format("%n"));
+            }
+        }
+    }
+
+
+    public void onNodeFinished(final IExecutionNode node) {
+        stepFinished(node);
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        stepFinished(node);
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    /**
+     * Starts logging the calling thread's commands for a new scenario.
+     */
+    public void scenarioStarted() {
+        final Trace t = this.trace.get();
+        t.scenario = this.scenarios.incrementAndGet();
+        t.scenarioStartNanos = System.nanoTime();
+        t.log = new StringBuilder();
+        t.log.append(String.format("# scenario %d on %s%n#   elapsed ms   took ms  command%n",
+                Integer.valueOf(t.scenario), Thread.currentThread().getName()));
+    }
+
+
+    /**
+     * Writes the calling thread's scenario command log to the directory.
+     */
+    public void scenarioFinished(final File dir) {
+
+        final Trace t = this.trace.get();
+        if (t.log == null) {
+            return;
+        }
+
+        final File file = new File(dir, String.format("scenario-%04d.log", Integer.valueOf(t.scenario)));
+        try {
+            final Writer writer = open(file);
+            try {
+                writer.write(t.log.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (final IOException e) {
+            LOG.warn("Failed to write command log " + file, e);
+        }
+        t.log = null;
+    }
+
+
+    /**
+     * Writes the aggregate statistics to the directory and starts afresh.
+     */
+    public void writeSummary(final File dir) {
+
+        if (this.commandMicros.isEmpty()) {
+            return;
+        }
+
+        try {
+            Writer writer = open(new File(dir, "command-stats.csv"));
+            try {
+                writer.write("command,count,failures,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,total_ms\n");
+                for (final String command : sorted(this.commandMicros)) {
+                    final Histogram h = this.commandMicros.get(command);
+                    final AtomicLong failures = this.commandFailures.get(command);
+                    writer.write(String.format(Locale.UK, "%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n", command,
+                            Long.valueOf(h.getCount()), Long.valueOf(failures == null ? 0 : failures.get()),
+                            Double.valueOf(h.getMean() / 1000.0), millis(h.getValueAtPercentile(50)),
+                            millis(h.getValueAtPercentile(95)), millis(h.getValueAtPercentile(99)),
+                            millis(h.getMax()), millis(h.getTotal())));
+                }
+            } finally {
+                writer.close();
+            }
+
+            writer = open(new File(dir, "commands-per-step.csv"));
+            try {
+                writer.write("step,invocations,commands_total,commands_mean,commands_p95,commands_max\n");
+                for (final String step : sorted(this.commandsPerStep)) {
+                    final Histogram h = this.commandsPerStep.get(step);
+                    writer.write(String.format(Locale.UK, "%s,%d,%d,%.2f,%d,%d\n", step, Long.valueOf(h.getCount()),
+                            Long.valueOf(h.getTotal()), Double.valueOf(h.getMean()),
+                            Long.valueOf(h.getValueAtPercentile(95)), Long.valueOf(h.getMax())));
+                }
+            } finally {
+                writer.close();
+            }
+            LOG.info("WebDriver command statistics written to {}", dir.getAbsolutePath());
+
+        } catch (final IOException e) {
+            LOG.warn("Failed to write command statistics to " + dir, e);
+        }
+
+        this.commandMicros.clear();
+        this.commandFailures.clear();
+        this.commandsPerStep.clear();
+    }
+
+
+    private void stepFinished(final IExecutionNode node) {
+
+        if (node instanceof StepImplementationNode) {
+            final Trace t = this.trace.get();
+            if (t.step != null) {
+                histogram(this.commandsPerStep, t.step).record(t.stepCommands);
+                t.step = null;
+            }
+        }
+    }
+
+
+    static String formatArgs(final String command, final Object[] args) {
+        // typed values may be passwords or other secrets
+        return command.endsWith(".sendKeys") ? "<" + typedLength(args) + " chars>" : format(args);
+    }
+
+
+    private static int typedLength(final Object[] args) {
+
+        int length = 0;
+        if (args != null) {
+            for (final Object arg : args) {
+                if (arg instanceof Object[]) {
+                    length += typedLength((Object[]) arg);
+                } else if (arg instanceof CharSequence) {
+                    length += ((CharSequence) arg).length();
+                }
+            }
+        }
+        return length;
+    }
+
+
+    private static String format(final Object[] args) {
+
+        if (args == null) {
+            return "";
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        for (final Object arg : args) {
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            String s = arg instanceof Object[] ? format((Object[]) arg) : String.valueOf(arg);
+            s = s.replace('\n', ' ');
+            buf.append(s.length() > MAX_ARG_LENGTH ? s.substring(0, MAX_ARG_LENGTH) + "..." : s);
+        }
+        return buf.toString();
+    }
+
+
+    private static Histogram histogram(final ConcurrentMap<String, Histogram> map, final String key) {
+        Histogram h = map.get(key);
+        if (h == null) {
+            final Histogram created = new Histogram();
+            h = map.putIfAbsent(key, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        return h;
+    }
+
+
+    private static AtomicLong counter(final ConcurrentMap<String, AtomicLong> map, final String key) {
+        AtomicLong c = map.get(key);
+        if (c == null) {
+            final AtomicLong created = new AtomicLong();
+            c = map.putIfAbsent(key, created);
+            if (c == null) {
+                c = created;
+            }
+        }
+        return c;
+    }
+
+
+    private static List<String> sorted(final Map<String, ?> map) {
+        final List<String> keys = new ArrayList<String>(map.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+
+    private static Double millis(final long micros) {
+        return Double.valueOf(micros / 1000.0);
+    }
+
+
+    private static Writer open(final File file) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        return new FileWriter(file);
+    }
+
+    private static final class Trace {
+
+        private String step;
+        private int stepCommands;
+
+        private int scenario;
+        private long scenarioStartNanos;
+        private StringBuilder log;
+    }
+}
@@ -0,0 +1,645 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.technophobia.substeps.model.Configuration;
+
+/**
+ * An unchanging copy of a {@link WebdriverSubstepsConfiguration}, with some of
+ * its values overridden. Every value is read from the underlying
+ * configuration, and every override converted, when the copy is made rather
+ * than when first asked for. A bad override then stops the worker before it
+ * starts a browser, not part way through whichever scenario first needs the
+ * value.
+ *
+ * Overrides are named after the accessor they replace, eg. driverType or
+ * defaultTimeout, and given as strings. Parallel workers take theirs from
+ * properties of the form webdriver.parallel.worker.&lt;n&gt;.&lt;accessor&gt;,
+ * eg. webdriver.parallel.worker.2.driverType=FIREFOX
+ */
+public final class ConfigurationSnapshot implements WebdriverSubstepsConfiguration {
+
+    private static final String WORKER_PREFIX = "webdriver.parallel.worker.";
+
+    private static final List<String> ACCESSORS = new ArrayList<String>();
+    static {
+        for (final Method method : WebdriverSubstepsConfiguration.class.getMethods()) {
+            if (method.getParameterTypes().length == 0) {
+                ACCESSORS.add(method.getName());
+            }
+        }
+    }
+
+    private final String baseURL;
+    private final DefaultDriverType driverType;
+    private final String driverLocale;
+    private final boolean shutDownWebdriver;
+    private final boolean javascriptDisabledWithHTMLUnit;
+    private final boolean closeVisualWebDriveronFail;
+    private final boolean reuseWebDriver;
+    private final long defaultTimeout;
+    private final String htmlUnitProxyHost;
+    private final Integer htmlUnitProxyPort;
+    private final String networkProxyHost;
+    private final int networkProxyPort;
+    private final Class<? extends WebDriverFactory> webDriverFactoryClass;
+    private final int webDriverPoolSize;
+    private final long webDriverPoolMaxAgeSecs;
+    private final int webDriverPoolMaxUses;
+    private final int parallelWorkers;
+    private final boolean stepMetricsEnabled;
+    private final String stepMetricsFile;
+    private final boolean traceCommands;
+    private final String traceCommandsDir;
+    private final ResetMode resetMode;
+    private final String timeoutDiagnosticsDir;
+    private final int timeoutDiagnosticsMaxBytes;
+    private final boolean timeoutDiagnosticsScreenshot;
+    private final String screenshotsDir;
+    private final int screenshotsMaxWidth;
+    private final int screenshotsQueueSize;
+    private final boolean screenshotsEveryStep;
+    private final boolean screenshotsOnFailure;
+    private final String browserLogsFile;
+    private final boolean browserLogsJson;
+    private final int browserLogsBufferSize;
+    private final String remoteUrl;
+    private final String remoteBrowser;
+    private final int remotePoolMaxTotal;
+    private final int remotePoolMaxPerRoute;
+    private final int remoteKeepAliveSecs;
+    private final boolean remoteCompression;
+    private final int remoteConnectTimeoutSecs;
+    private final int remoteSocketTimeoutSecs;
+    private final String pageLoadStrategy;
+    private final String blockUrls;
+    private final RecordingProxy.Mode recordingProxyMode;
+    private final String recordingProxyDir;
+    private final int recordingProxyPort;
+    private final boolean lookupCache;
+    private final long retryInitialDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final int retryMaxAttempts;
+    private final String windowSize;
+    private final boolean headlessDisableImages;
+    private final long scenarioWarnThresholdMillis;
+    private final long scenarioFailThresholdMillis;
+    private final boolean scenarioTimingsEnabled;
+    private final String scenarioTimingsFile;
+    private final int scenarioTimingsSlowest;
+    private final String pagePerformanceFile;
+    private final long slowStepTraceThresholdMillis;
+    private final String slowStepTraceDir;
+
+
+    @SuppressWarnings("deprecation")
+    private ConfigurationSnapshot(final WebdriverSubstepsConfiguration configuration, final Overrides values) {
+
+        this.baseURL = values.string("baseURL", configuration.baseURL());
+        this.driverType = values.enumValue("driverType", DefaultDriverType.class, configuration.driverType());
+        this.driverLocale = values.string("driverLocale", configuration.driverLocale());
+        this.shutDownWebdriver = values.bool("shutDownWebdriver", configuration.shutDownWebdriver());
+        this.javascriptDisabledWithHTMLUnit = values.bool("isJavascriptDisabledWithHTMLUnit",
+                configuration.isJavascriptDisabledWithHTMLUnit());
+        this.closeVisualWebDriveronFail = values.bool("closeVisualWebDriveronFail",
+                configuration.closeVisualWebDriveronFail());
+        this.reuseWebDriver = values.bool("reuseWebDriver", configuration.reuseWebDriver());
+        this.defaultTimeout = values.longValue("defaultTimeout", configuration.defaultTimeout());
+        this.htmlUnitProxyHost = values.string("getHtmlUnitProxyHost", configuration.getHtmlUnitProxyHost());
+        this.htmlUnitProxyPort = values.integerOrNull("getHtmlUnitProxyPort", configuration.getHtmlUnitProxyPort());
+        this.networkProxyHost = values.string("getNetworkProxyHost", configuration.getNetworkProxyHost());
+        this.networkProxyPort = values.integer("getNetworkProxyPort", configuration.getNetworkProxyPort());
+        this.webDriverFactoryClass = values.factoryClass("getWebDriverFactoryClass",
+                configuration.getWebDriverFactoryClass());
+        this.webDriverPoolSize = values.integer("webDriverPoolSize", configuration.webDriverPoolSize());
+        this.webDriverPoolMaxAgeSecs = values.longValue("webDriverPoolMaxAgeSecs",
+                configuration.webDriverPoolMaxAgeSecs());
+        this.webDriverPoolMaxUses = values.integer("webDriverPoolMaxUses", configuration.webDriverPoolMaxUses());
+        this.parallelWorkers = values.integer("parallelWorkers", configuration.parallelWorkers());
+        this.stepMetricsEnabled = values.bool("stepMetricsEnabled", configuration.stepMetricsEnabled());
+        this.stepMetricsFile = values.string("stepMetricsFile", configuration.stepMetricsFile());
+        this.traceCommands = values.bool("traceCommands", configuration.traceCommands());
+        this.traceCommandsDir = values.string("traceCommandsDir", configuration.traceCommandsDir());
+        this.resetMode = values.enumValue("resetMode", ResetMode.class, configuration.resetMode());
+        this.timeoutDiagnosticsDir = values.string("timeoutDiagnosticsDir", configuration.timeoutDiagnosticsDir());
+        this.timeoutDiagnosticsMaxBytes = values.integer("timeoutDiagnosticsMaxBytes",
+                configuration.timeoutDiagnosticsMaxBytes());
+        this.timeoutDiagnosticsScreenshot = values.bool("timeoutDiagnosticsScreenshot",
+                configuration.timeoutDiagnosticsScreenshot());
+        this.screenshotsDir = values.string("screenshotsDir", configuration.screenshotsDir());
+        this.screenshotsMaxWidth = values.integer("screenshotsMaxWidth", configuration.screenshotsMaxWidth());
+        this.screenshotsQueueSize = values.integer("screenshotsQueueSize", configuration.screenshotsQueueSize());
+        this.screenshotsEveryStep = values.bool("screenshotsEveryStep", configuration.screenshotsEveryStep());
+        this.screenshotsOnFailure = values.bool("screenshotsOnFailure", configuration.screenshotsOnFailure());
+        this.browserLogsFile = values.string("browserLogsFile", configuration.browserLogsFile());
+        this.browserLogsJson = values.bool("browserLogsJson", configuration.browserLogsJson());
+        this.browserLogsBufferSize = values.integer("browserLogsBufferSize", configuration.browserLogsBufferSize());
+        this.remoteUrl = values.string("remoteUrl", configuration.remoteUrl());
+        this.remoteBrowser = values.string("remoteBrowser", configuration.remoteBrowser());
+        this.remotePoolMaxTotal = values.integer("remotePoolMaxTotal", configuration.remotePoolMaxTotal());
+        this.remotePoolMaxPerRoute = values.integer("remotePoolMaxPerRoute", configuration.remotePoolMaxPerRoute());
+        this.remoteKeepAliveSecs = values.integer("remoteKeepAliveSecs", configuration.remoteKeepAliveSecs());
+        this.remoteCompression = values.bool("remoteCompression", configuration.remoteCompression());
+        this.remoteConnectTimeoutSecs = values.integer("remoteConnectTimeoutSecs",
+                configuration.remoteConnectTimeoutSecs());
+        this.remoteSocketTimeoutSecs = values.integer("remoteSocketTimeoutSecs",
+                configuration.remoteSocketTimeoutSecs());
+        this.pageLoadStrategy = values.string("pageLoadStrategy", configuration.pageLoadStrategy());
+        this.blockUrls = values.string("blockUrls", configuration.blockUrls());
+        this.recordingProxyMode = values.enumValue("recordingProxyMode",
+                RecordingProxy.Mode.class, configuration.recordingProxyMode());
+        this.recordingProxyDir = values.string("recordingProxyDir", configuration.recordingProxyDir());
+        this.recordingProxyPort = values.integer("recordingProxyPort", configuration.recordingProxyPort());
+        this.lookupCache = values.bool("lookupCache", configuration.lookupCache());
+        this.retryInitialDelayMillis = values.longValue("retryInitialDelayMillis",
+                configuration.retryInitialDelayMillis());
+        this.retryMaxDelayMillis = values.longValue("retryMaxDelayMillis", configuration.retryMaxDelayMillis());
+        this.retryMaxAttempts = values.integer("retryMaxAttempts", configuration.retryMaxAttempts());
+        this.windowSize = values.string("windowSize", configuration.windowSize());
+        this.headlessDisableImages = values.bool("headlessDisableImages", configuration.headlessDisableImages());
+        this.scenarioWarnThresholdMillis = values.longValue("scenarioWarnThresholdMillis",
+                configuration.scenarioWarnThresholdMillis());
+        this.scenarioFailThresholdMillis = values.longValue("scenarioFailThresholdMillis",
+                configuration.scenarioFailThresholdMillis());
+        this.scenarioTimingsEnabled = values.bool("scenarioTimingsEnabled", configuration.scenarioTimingsEnabled());
+        this.scenarioTimingsFile = values.string("scenarioTimingsFile", configuration.scenarioTimingsFile());
+        this.scenarioTimingsSlowest = values.integer("scenarioTimingsSlowest", configuration.scenarioTimingsSlowest());
+        this.pagePerformanceFile = values.string("pagePerformanceFile", configuration.pagePerformanceFile());
+        this.slowStepTraceThresholdMillis = values.longValue("slowStepTraceThresholdMillis",
+                configuration.slowStepTraceThresholdMillis());
+        this.slowStepTraceDir = values.string("slowStepTraceDir", configuration.slowStepTraceDir());
+
+        values.checkAllUsed();
+    }
+
+
+    /**
+     * @param overrides
+     *            values by accessor name, may be empty
+     * @throws IllegalStateException
+     *             if an override doesn't name an accessor or can't be
+     *             converted to its type
+     */
+    public static WebdriverSubstepsConfiguration of(final WebdriverSubstepsConfiguration configuration,
+            final Map<String, String> overrides) {
+        return new ConfigurationSnapshot(configuration, new Overrides(overrides));
+    }
+
+
+    /**
+     * @return the overrides set for the worker, numbered from 1, in the
+     *         webdriver.parallel.worker.&lt;n&gt;.* properties
+     */
+    public static Map<String, String> workerOverrides(final int worker) {
+
+        final Map<String, String> overrides = new HashMap<String, String>();
+        for (final String accessor : ACCESSORS) {
+            final String value = Configuration.INSTANCE.getString(WORKER_PREFIX + worker + "." + accessor);
+            if (value != null && value.trim().length() > 0) {
+                overrides.put(accessor, value.trim());
+            }
+        }
+        return Collections.unmodifiableMap(overrides);
+    }
+
+
+    public String baseURL() {
+        return this.baseURL;
+    }
+
+
+    public DefaultDriverType driverType() {
+        return this.driverType;
+    }
+
+
+    public String driverLocale() {
+        return this.driverLocale;
+    }
+
+
+    public boolean shutDownWebdriver() {
+        return this.shutDownWebdriver;
+    }
+
+
+    public boolean isJavascriptDisabledWithHTMLUnit() {
+        return this.javascriptDisabledWithHTMLUnit;
+    }
+
+
+    public boolean closeVisualWebDriveronFail() {
+        return this.closeVisualWebDriveronFail;
+    }
+
+
+    public boolean reuseWebDriver() {
+        return this.reuseWebDriver;
+    }
+
+
+    public long defaultTimeout() {
+        return this.defaultTimeout;
+    }
+
+
+    /** @deprecated use getNetworkProxyHost instead */
+    @Deprecated
+    public String getHtmlUnitProxyHost() {
+        return this.htmlUnitProxyHost;
+    }
+
+
+    /** @deprecated use getNetworkProxyPort instead */
+    @Deprecated
+    public Integer getHtmlUnitProxyPort() {
+        return this.htmlUnitProxyPort;
+    }
+
+
+    public String getNetworkProxyHost() {
+        return this.networkProxyHost;
+    }
+
+
+    public int getNetworkProxyPort() {
+        return this.networkProxyPort;
+    }
+
+
+    public Class<? extends WebDriverFactory> getWebDriverFactoryClass() {
+        return this.webDriverFactoryClass;
+    }
+
+
+    public int webDriverPoolSize() {
+        return this.webDriverPoolSize;
+    }
+
+
+    public long webDriverPoolMaxAgeSecs() {
+        return this.webDriverPoolMaxAgeSecs;
+    }
+
+
+    public int webDriverPoolMaxUses() {
+        return this.webDriverPoolMaxUses;
+    }
+
+
+    public int parallelWorkers() {
+        return this.parallelWorkers;
+    }
+
+
+    public boolean stepMetricsEnabled() {
+        return this.stepMetricsEnabled;
+    }
+
+
+    public String stepMetricsFile() {
+        return this.stepMetricsFile;
+    }
+
+
+    public boolean traceCommands() {
+        return this.traceCommands;
+    }
+
+
+    public String traceCommandsDir() {
+        return this.traceCommandsDir;
+    }
+
+
+    public ResetMode resetMode() {
+        return this.resetMode;
+    }
+
+
+    public String timeoutDiagnosticsDir() {
+        return this.timeoutDiagnosticsDir;
+    }
+
+
+    public int timeoutDiagnosticsMaxBytes() {
+        return this.timeoutDiagnosticsMaxBytes;
+    }
+
+
+    public boolean timeoutDiagnosticsScreenshot() {
+        return this.timeoutDiagnosticsScreenshot;
+    }
+
+
+    public String screenshotsDir() {
+        return this.screenshotsDir;
+    }
+
+
+    public int screenshotsMaxWidth() {
+        return this.screenshotsMaxWidth;
+    }
+
+
+    public int screenshotsQueueSize() {
+        return this.screenshotsQueueSize;
+    }
+
+
+    public boolean screenshotsEveryStep() {
+        return this.screenshotsEveryStep;
+    }
+
+
+    public boolean screenshotsOnFailure() {
+        return this.screenshotsOnFailure;
+    }
+
+
+    public String browserLogsFile() {
+        return this.browserLogsFile;
+    }
+
+
+    public boolean browserLogsJson() {
+        return this.browserLogsJson;
+    }
+
+
+    public int browserLogsBufferSize() {
+        return this.browserLogsBufferSize;
+    }
+
+
+    public String remoteUrl() {
+        return this.remoteUrl;
+    }
+
+
+    public String remoteBrowser() {
+        return this.remoteBrowser;
+    }
+
+
+    public int remotePoolMaxTotal() {
+        return this.remotePoolMaxTotal;
+    }
+
+
+    public int remotePoolMaxPerRoute() {
+        return this.remotePoolMaxPerRoute;
+    }
+
+
+    public int remoteKeepAliveSecs() {
+        return this.remoteKeepAliveSecs;
+    }
+
+
+    public boolean remoteCompression() {
+        return this.remoteCompression;
+    }
+
+
+    public int remoteConnectTimeoutSecs() {
+        return this.remoteConnectTimeoutSecs;
+    }
+
+
+    public int remoteSocketTimeoutSecs() {
+        return this.remoteSocketTimeoutSecs;
+    }
+
+
+    public String pageLoadStrategy() {
+        return this.pageLoadStrategy;
+    }
+
+
+    public String blockUrls() {
+        return this.blockUrls;
+    }
+
+
+    public RecordingProxy.Mode recordingProxyMode() {
+        return this.recordingProxyMode;
+    }
+
+
+    public String recordingProxyDir() {
+        return this.recordingProxyDir;
+    }
+
+
+    public int recordingProxyPort() {
+        return this.recordingProxyPort;
+    }
+
+
+    public boolean lookupCache() {
+        return this.lookupCache;
+    }
+
+
+    public long retryInitialDelayMillis() {
+        return this.retryInitialDelayMillis;
+    }
+
+
+    public long retryMaxDelayMillis() {
+        return this.retryMaxDelayMillis;
+    }
+
+
+    public int retryMaxAttempts() {
+        return this.retryMaxAttempts;
+    }
+
+
+    public String windowSize() {
+        return this.windowSize;
+    }
+
+
+    public boolean headlessDisableImages() {
+        return this.headlessDisableImages;
+    }
+
+
+    public long scenarioWarnThresholdMillis() {
+        return this.scenarioWarnThresholdMillis;
+    }
+
+
+    public long scenarioFailThresholdMillis() {
+        return this.scenarioFailThresholdMillis;
+    }
+
+
+    public boolean scenarioTimingsEnabled() {
+        return this.scenarioTimingsEnabled;
+    }
+
+
+    public String scenarioTimingsFile() {
+        return this.scenarioTimingsFile;
+    }
+
+
+    public int scenarioTimingsSlowest() {
+        return this.scenarioTimingsSlowest;
+    }
+
+
+    public String pagePerformanceFile() {
+        return this.pagePerformanceFile;
+    }
+
+
+    public long slowStepTraceThresholdMillis() {
+        return this.slowStepTraceThresholdMillis;
+    }
+
+
+    public String slowStepTraceDir() {
+        return this.slowStepTraceDir;
+    }
+
+
+    /**
+     * The overrides not yet applied, each converted to the type of the value
+     * it replaces.
+     */
+    private static final class Overrides {
+
+        private final Map<String, String> remaining;
+
+
+        Overrides(final Map<String, String> overrides) {
+            this.remaining = new HashMap<String, String>(overrides);
+        }
+
+
+        String string(final String name, final String value) {
+            final String override = this.remaining.remove(name);
+            return override != null ? override : value;
+        }
+
+
+        int integer(final String name, final int value) {
+            final String override = this.remaining.remove(name);
+            return override != null ? parseInt(name, override) : value;
+        }
+
+
+        Integer integerOrNull(final String name, final Integer value) {
+            final String override = this.remaining.remove(name);
+            return override != null ? Integer.valueOf(parseInt(name, override)) : value;
+        }
+
+
+        long longValue(final String name, final long value) {
+            final String override = this.remaining.remove(name);
+            if (override == null) {
+                return value;
+            }
+            try {
+                return Long.parseLong(override.trim());
+            } catch (final NumberFormatException e) {
+                throw invalid(name, override, e);
+            }
+        }
+
+
+        boolean bool(final String name, final boolean value) {
+            final String override = this.remaining.remove(name);
+            if (override == null) {
+                return value;
+            }
+            // Boolean.parseBoolean would quietly turn a typo into false
+            if ("true".equalsIgnoreCase(override.trim())) {
+                return true;
+            }
+            if ("false".equalsIgnoreCase(override.trim())) {
+                return false;
+            }
+            throw invalid(name, override, null);
+        }
+
+
+        <E extends Enum<E>> E enumValue(final String name, final Class<E> type, final E value) {
+            final String override = this.remaining.remove(name);
+            if (override == null) {
+                return value;
+            }
+            try {
+                return Enum.valueOf(type, override.trim().toUpperCase());
+            } catch (final IllegalArgumentException e) {
+                throw invalid(name, override, e);
+            }
+        }
+
+
+        Class<? extends WebDriverFactory> factoryClass(final String name,
+                final Class<? extends WebDriverFactory> value) {
+            final String override = this.remaining.remove(name);
+            if (override == null) {
+                return value;
+            }
+            try {
+                return Class.forName(override.trim()).asSubclass(WebDriverFactory.class);
+            } catch (final ClassNotFoundException e) {
+                throw invalid(name, override, e);
+            } catch (final ClassCastException e) {
+                throw invalid(name, override, e);
+            }
+        }
+
+
+        void checkAllUsed() {
+            if (!this.remaining.isEmpty()) {
+                throw new IllegalStateException("No configuration called '"
+                        + this.remaining.keySet().iterator().next() + "'");
+            }
+        }
+
+
+        private static int parseInt(final String name, final String override) {
+            try {
+                return Integer.parseInt(override.trim());
+            } catch (final NumberFormatException e) {
+                throw invalid(name, override, e);
+            }
+        }
+
+
+        private static IllegalStateException invalid(final String name, final String override,
+                final Exception cause) {
+            return new IllegalStateException("'" + override + "' is invalid for '" + name + "'", cause);
+        }
+    }
+}
@@ -26,7 +26,7 @@ package com.technophobia.webdriver.substeps.runner;
  */
 public enum DefaultDriverType implements DriverType {
 
-	FIREFOX(true), HTMLUNIT(false), CHROME(true), IE(true);
+	FIREFOX(true), HTMLUNIT(false), CHROME(true), IE(true), REMOTE(false), CHROME_HEADLESS(false);
 
 	private DefaultDriverType(final boolean visual)
 	{
@@ -18,6 +18,10 @@
  */
 package com.technophobia.webdriver.substeps.runner;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 import org.openqa.selenium.WebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +29,16 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Supplier;
 import com.technophobia.substeps.model.Scope;
 import com.technophobia.substeps.runner.ExecutionContext;
-import com.technophobia.substeps.runner.ExecutionContextSupplier;
 import com.technophobia.substeps.runner.INotificationDistributor;
 import com.technophobia.substeps.runner.MutableSupplier;
+import com.technophobia.substeps.runner.setupteardown.Annotations.AfterAllFeatures;
 import com.technophobia.substeps.runner.setupteardown.Annotations.AfterEveryScenario;
 import com.technophobia.substeps.runner.setupteardown.Annotations.BeforeAllFeatures;
 import com.technophobia.substeps.runner.setupteardown.Annotations.BeforeEveryScenario;
+import com.technophobia.webdriver.util.BrowserLogCollector;
+import com.technophobia.webdriver.util.ElementStash;
+import com.technophobia.webdriver.util.PagePerformanceLog;
+import com.technophobia.webdriver.util.ScreenshotService;
 import com.technophobia.webdriver.util.WebDriverContext;
 
 public class DefaultExecutionSetupTearDown {
@@ -38,10 +46,18 @@ public class DefaultExecutionSetupTearDown {
     private static final Logger logger = LoggerFactory.getLogger(DefaultExecutionSetupTearDown.class);
 
     private final WebdriverSubstepsConfiguration configuration;
-    private long startTimeMillis;
 
-    private static final MutableSupplier<WebDriverContext> webDriverContextSupplier = new ExecutionContextSupplier<WebDriverContext>(
-            Scope.SUITE, WebDriverContext.EXECUTION_CONTEXT_KEY);
+    // one context per thread, features may be spread across parallel workers
+    private static final MutableSupplier<WebDriverContext> webDriverContextSupplier = new ThreadLocalWebDriverContextSupplier();
+
+    // shared by all workers, the execution context is not
+    private static final Object factoryLock = new Object();
+    private static WebDriverFactory sharedWebDriverFactory;
+    private static int factoryUsers = 0;
+
+    // step statistics are collected across all workers
+    private static StepStatistics stepStatistics;
+    private static ScenarioTimings scenarioTimings;
 
 
     public static Supplier<WebDriverContext> currentWebDriverContext() {
@@ -74,6 +90,7 @@ public class DefaultExecutionSetupTearDown {
                 INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY);
 
         notifier.addListener(new TestFailureListener(webDriverContextSupplier));
+        notifier.addListener(new ElementStashListener());
 
         logger.info("beforeAllTestsSetup");
 
@@ -88,75 +105,276 @@ public class DefaultExecutionSetupTearDown {
         logger.info("env prop: " + env);
 
 
-        WebDriverFactory factory = createWebDriverFactory();
+        final WebDriverFactory factory;
+        synchronized (factoryLock) {
+            if (sharedWebDriverFactory == null) {
+                sharedWebDriverFactory = createWebDriverFactory();
+            }
+            if (stepStatistics == null && configuration.stepMetricsEnabled()) {
+                stepStatistics = new StepStatistics();
+            }
+            if (scenarioTimings == null && configuration.scenarioTimingsEnabled()) {
+                scenarioTimings = new ScenarioTimings();
+            }
+            factoryUsers++;
+            factory = sharedWebDriverFactory;
+        }
+
+        if (configuration.stepMetricsEnabled()) {
+            notifier.addListener(new StepTimingListener(stepStatistics));
+        }
+        if (configuration.scenarioTimingsEnabled()) {
+            notifier.addListener(scenarioTimings);
+        }
+        if (configuration.traceCommands()) {
+            notifier.addListener(CommandTracingListener.INSTANCE);
+        }
+        if (configuration.slowStepTraceThresholdMillis() > 0) {
+            notifier.addListener(new SlowStepTraceListener(webDriverContextSupplier, configuration
+                    .slowStepTraceThresholdMillis(), new File(configuration.slowStepTraceDir())));
+        }
+        if (configuration.screenshotsEveryStep()) {
+            notifier.addListener(new StepScreenshotListener(ScreenshotService.getInstance(configuration)));
+        }
+        final BrowserLogCollector browserLogs = BrowserLogCollector.getInstance(configuration);
+        if (browserLogs != null) {
+            notifier.addListener(new BrowserLogListener(browserLogs));
+        }
         ExecutionContext.put(Scope.SUITE, WebDriverFactory.WEB_DRIVER_FACTORY_KEY, factory);
     }
 
 
     @BeforeEveryScenario
     public final void basePreScenarioSetup() {
-        startTimeMillis = System.currentTimeMillis();
+        ScenarioTimings.scenarioStarting();
+
+        if (configuration.traceCommands()) {
+            CommandTracingListener.INSTANCE.scenarioStarted();
+        }
 
         final WebDriverContext webDriverContext = webDriverContextSupplier.get();
 
         boolean createNewWebDriver = shouldStartup(webDriverContext);
 
         if (createNewWebDriver) {
-            WebDriverFactory factory = (WebDriverFactory) ExecutionContext.get(Scope.SUITE, WebDriverFactory.WEB_DRIVER_FACTORY_KEY);
-            webDriverContextSupplier.set(new WebDriverContext(factory.driverType(), factory.createWebDriver()));
+            WebDriverFactory factory = webDriverFactory();
+            webDriverContextSupplier.set(new WebDriverContext(factory.driverType(), factory.createWebDriver(),
+                    threadConfiguration()));
         }
+        ScenarioTimings.stepsStarting();
     }
 
 
     @AfterEveryScenario
     public final void basePostScenariotearDown() {
 
+        ScenarioTimings.tearDownStarting();
 
         final WebDriverContext webDriverContext = webDriverContextSupplier.get();
 
         if (webDriverContext != null) {
 
+            webDriverContext.clearStash(ElementStash.Scope.SCENARIO);
+
             boolean doShutdown = shouldShutdown(webDriverContext);
+            final ResetMode resetMode = threadConfiguration().resetMode();
 
             if (doShutdown) {
-                webDriverContext.shutdownWebDriver();
-            } else {
-                webDriverContext.resetWebDriver();
+                shutdownWebDriver(webDriverContext, resetMode);
+            } else if (!webDriverContext.resetWebDriver(resetMode)) {
+                // start the next scenario with a fresh browser instead
+                discardWebDriver(webDriverContext);
             }
         }
 
-        // TODO put long test threshold in config
+        if (configuration.traceCommands()) {
+            CommandTracingListener.INSTANCE.scenarioFinished(new File(configuration.traceCommandsDir()));
+        }
+
+        final ScenarioTimings.Scenario scenario = ScenarioTimings.scenarioFinished(webDriverContext != null
+                && webDriverContext.hasFailed());
+        if (scenario != null) {
+            scenarioFinished(scenario);
+        }
+    }
+
+
+    private void scenarioFinished(final ScenarioTimings.Scenario scenario) {
 
-        final long ticks = (System.currentTimeMillis() - this.startTimeMillis) / 1000;
+        final long millis = TimeUnit.NANOSECONDS.toMillis(scenario.getTotalNanos());
+        final String timings = String.format(Locale.UK,
+                "Test scenario took %.3f seconds (startup %d ms, navigation %d ms, steps %d ms, teardown %d ms)",
+                Double.valueOf(millis / 1000.0),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(scenario.getStartupNanos())),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(scenario.getNavigationNanos())),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(scenario.getStepNanos())),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(scenario.getTearDownNanos())));
 
-        if (ticks > 30) {
-            logger.warn(String.format("Test scenario took %s seconds", ticks));
+        final long warnThreshold = configuration.scenarioWarnThresholdMillis();
+        if (warnThreshold > 0 && millis > warnThreshold) {
+            logger.warn(timings);
         } else {
-            logger.info(String.format("Test scenario took %s seconds", ticks));
+            logger.info(timings);
+        }
+
+        final ScenarioTimings timingsForSuite;
+        synchronized (factoryLock) {
+            timingsForSuite = scenarioTimings;
+        }
+        if (timingsForSuite != null) {
+            timingsForSuite.record(scenario);
+        }
+
+        final long failThreshold = configuration.scenarioFailThresholdMillis();
+        if (failThreshold > 0 && millis > failThreshold) {
+            throw new WebDriverSubstepsException("Scenario '" + scenario.getName() + "' took " + millis
+                    + " ms, longer than webdriver.scenario.fail.threshold.millis of " + failThreshold + " ms");
         }
     }
 
+    @AfterAllFeatures
+    public final void afterAllFeaturesTearDown() {
+
+        WebDriverFactory factory = webDriverFactory();
+        final StepStatistics statistics;
+        final ScenarioTimings timings;
+
+        synchronized (factoryLock) {
+            // only the last runner to finish gets rid of the shared factory
+            if (sharedWebDriverFactory != null && --factoryUsers > 0) {
+                return;
+            }
+            sharedWebDriverFactory = null;
+            factoryUsers = 0;
+
+            statistics = stepStatistics;
+            stepStatistics = null;
+            timings = scenarioTimings;
+            scenarioTimings = null;
+        }
+
+        if (statistics != null) {
+            statistics.write(configuration.stepMetricsFile());
+        }
+        if (timings != null) {
+            timings.write(configuration.scenarioTimingsFile(), configuration.scenarioTimingsSlowest());
+        }
+        if (configuration.traceCommands()) {
+            CommandTracingListener.INSTANCE.writeSummary(new File(configuration.traceCommandsDir()));
+        }
+
+        ScreenshotService.getInstance(configuration).flush();
+
+        final PagePerformanceLog pagePerformance = PagePerformanceLog.getInstance(configuration);
+        if (pagePerformance != null) {
+            pagePerformance.close();
+        }
+
+        final BrowserLogCollector browserLogs = BrowserLogCollector.getInstance(configuration);
+        if (browserLogs != null) {
+            browserLogs.flush();
+        }
+
+        if (factory instanceof PooledWebDriverFactory) {
+            ((PooledWebDriverFactory) factory).shutdown();
+        }
+
+        RecordingProxy.shutdownInstance();
+        PooledHttpCommandExecutor.shutdownSharedHttpClient();
+    }
+
+    /**
+     * Shuts down the calling thread's webdriver, if it has one, and forgets the
+     * context. Used by parallel workers once they have run out of features.
+     */
+    static void shutdownThreadLocalWebDriver() {
+
+        final WebDriverContext webDriverContext = webDriverContextSupplier.get();
+
+        if (webDriverContext != null) {
+            if (!webDriverContext.isShutdown()) {
+                shutdownWebDriver(webDriverContext, webDriverContext.getConfiguration().resetMode());
+            }
+            webDriverContextSupplier.set(null);
+        }
+    }
+
+    private static void shutdownWebDriver(final WebDriverContext webDriverContext, final ResetMode resetMode) {
+
+        final WebDriverFactory factory = webDriverFactory();
+
+        if (factory instanceof PooledWebDriverFactory && !webDriverContext.isShutdown()) {
+            // hand the driver back for another scenario rather than quitting it
+            if (webDriverContext.resetWebDriver(resetMode)) {
+                ((PooledWebDriverFactory) factory).releaseWebDriver(webDriverContext.getWebDriver());
+            } else {
+                discardWebDriver(webDriverContext);
+            }
+        } else {
+            webDriverContext.shutdownWebDriver();
+        }
+    }
+
+    private static void discardWebDriver(final WebDriverContext webDriverContext) {
+
+        final WebDriverFactory factory = webDriverFactory();
+
+        webDriverContext.shutdownWebDriver();
+
+        if (factory instanceof PooledWebDriverFactory) {
+            ((PooledWebDriverFactory) factory).discardWebDriver(webDriverContext.getWebDriver());
+        }
+    }
+
+    static WebDriverFactory webDriverFactory() {
+
+        final WebDriverFactory factory = (WebDriverFactory) ExecutionContext.get(Scope.SUITE,
+                WebDriverFactory.WEB_DRIVER_FACTORY_KEY);
+
+        if (factory != null) {
+            return factory;
+        }
+        // a worker thread that hasn't had the factory put into its context
+        synchronized (factoryLock) {
+            return sharedWebDriverFactory;
+        }
+    }
+
+    /**
+     * The configuration for the calling thread's drivers, a parallel worker
+     * may have been given its own snapshot
+     */
+    private WebdriverSubstepsConfiguration threadConfiguration() {
+
+        final WebdriverSubstepsConfiguration workerConfiguration = (WebdriverSubstepsConfiguration) ExecutionContext
+                .get(Scope.SUITE, WebdriverSubstepsConfiguration.CONFIGURATION_KEY);
+
+        return workerConfiguration != null ? workerConfiguration : this.configuration;
+    }
+
     private boolean shouldShutdown(final WebDriverContext webDriverContext) {
 
+        final WebdriverSubstepsConfiguration config = threadConfiguration();
+
         if (webDriverContext != null) {
             logger.debug("webDriverContextSupplier.get().hasFailed(): {}", webDriverContext.hasFailed());
             logger.debug("driverType().isVisual(): {}", webDriverContext.getDriverType().isVisual());
         }
 
-        logger.debug("WebdriverSubstepsPropertiesConfiguration.closeVisualWebDriveronFail(): {}", configuration.closeVisualWebDriveronFail());
-        logger.debug("WebdriverSubstepsPropertiesConfiguration.reuseWebDriver(): {}", configuration.reuseWebDriver());
+        logger.debug("WebdriverSubstepsPropertiesConfiguration.closeVisualWebDriveronFail(): {}", config.closeVisualWebDriveronFail());
+        logger.debug("WebdriverSubstepsPropertiesConfiguration.reuseWebDriver(): {}", config.reuseWebDriver());
 
         boolean doShutDown = true;
 
         // reasons *NOT* to shutdown
-        if (!configuration.shutDownWebdriver()) {
+        if (!config.shutDownWebdriver()) {
 
             //don't shutdown if:
             // - global config says we don't have to
             // - and config says we don't close visual webdrivers on failure
             // - and we're going to reuse the webdriver
 
-            if (failedIsVisualButShouldNotClose(webDriverContext) || configuration.reuseWebDriver()) {
+            if (failedIsVisualButShouldNotClose(webDriverContext) || config.reuseWebDriver()) {
                 doShutDown = false;
             }
         }
@@ -166,23 +384,25 @@ public class DefaultExecutionSetupTearDown {
 
     private boolean shouldStartup(final WebDriverContext webDriverContext) {
 
+        final WebdriverSubstepsConfiguration config = threadConfiguration();
+
         if (webDriverContext != null) {
             logger.debug("webDriverContextSupplier.get().hasFailed(): {}", webDriverContext.hasFailed());
             logger.debug("driverType().isVisual(): {}", webDriverContext.getDriverType().isVisual());
         }
 
-        logger.debug("WebdriverSubstepsPropertiesConfiguration.closeVisualWebDriveronFail(): {}", configuration.closeVisualWebDriveronFail());
-        logger.debug("WebdriverSubstepsPropertiesConfiguration.reuseWebDriver(): {}", configuration.reuseWebDriver());
+        logger.debug("WebdriverSubstepsPropertiesConfiguration.closeVisualWebDriveronFail(): {}", config.closeVisualWebDriveronFail());
+        logger.debug("WebdriverSubstepsPropertiesConfiguration.reuseWebDriver(): {}", config.reuseWebDriver());
 
         boolean doStartup = true;
 
         // reasons *NOT* to start up
-        if (webDriverContext != null && !configuration.shutDownWebdriver()) {
+        if (webDriverContext != null && !webDriverContext.isShutdown() && !config.shutDownWebdriver()) {
 
             //don't start up if:
             // - we want to reuse the webdriver instance, unless the previous test failed and we don't want to close, in which case we need a new instance
 
-            if (!failedIsVisualButShouldNotClose(webDriverContext) && configuration.reuseWebDriver()) {
+            if (!failedIsVisualButShouldNotClose(webDriverContext) && config.reuseWebDriver()) {
                 doStartup = false;
             }
         }
@@ -192,10 +412,12 @@ public class DefaultExecutionSetupTearDown {
 
     private boolean failedIsVisualButShouldNotClose(final WebDriverContext webDriverContext) {
 
+        final WebdriverSubstepsConfiguration config = threadConfiguration();
+
         //we default to always closing
         boolean shouldNotClose = false;
 
-        if(!configuration.closeVisualWebDriveronFail() && webDriverContext != null && webDriverContext.getDriverType().isVisual()) {
+        if(!config.closeVisualWebDriveronFail() && webDriverContext != null && webDriverContext.getDriverType().isVisual()) {
             shouldNotClose = webDriverContext.hasFailed();
         }
 
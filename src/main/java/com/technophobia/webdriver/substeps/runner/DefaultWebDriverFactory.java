@@ -20,29 +20,51 @@
 package com.technophobia.webdriver.substeps.runner;
 
 import java.lang.reflect.Field;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.htmlunit.HtmlUnitDriver;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.logging.LogType;
 import org.openqa.selenium.logging.LoggingPreferences;
 import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.Augmenter;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.technophobia.webdriver.util.ElementLookupCache;
+import com.technophobia.webdriver.util.InstrumentedWebDriver;
+import com.technophobia.webdriver.util.StepMetrics;
+import com.technophobia.webdriver.util.UrlBlockList;
+import com.technophobia.webdriver.util.WebDriverCommandListener;
 
 public class DefaultWebDriverFactory implements WebDriverFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultWebDriverFactory.class);
 
+    private static final String PAGE_LOAD_STRATEGY = "pageLoadStrategy";
+    private static final String NORMAL_PAGE_LOAD = "normal";
+    private static final String EAGER_PAGE_LOAD = "eager";
+
+    private static final Dimension HEADLESS_WINDOW_SIZE = new Dimension(1280, 1024);
+
     private final WebdriverSubstepsConfiguration configuration;
 
     public DefaultWebDriverFactory() {
@@ -61,6 +83,14 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
             case FIREFOX: {
                 final DesiredCapabilities firefoxCapabilities = DesiredCapabilities.firefox();
                 setNetworkCapabilities(firefoxCapabilities);
+                setPageLoadStrategy(firefoxCapabilities);
+
+                final String firefoxLoadStrategy = firefoxLoadStrategy();
+                if (firefoxLoadStrategy != null) {
+                    final FirefoxProfile profile = new FirefoxProfile();
+                    profile.setPreference("webdriver.load.strategy", firefoxLoadStrategy);
+                    firefoxCapabilities.setCapability(FirefoxDriver.PROFILE, profile);
+                }
 
                 setLoggingPreferences(firefoxCapabilities);
 
@@ -69,7 +99,7 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
 
             }
             case HTMLUNIT: {
-                final HtmlUnitDriver htmlUnitDriver = new HtmlUnitDriver(BrowserVersion.FIREFOX_3_6);
+                final SubstepsHtmlUnitDriver htmlUnitDriver = new SubstepsHtmlUnitDriver(BrowserVersion.FIREFOX_3_6);
                 htmlUnitDriver.setJavascriptEnabled(!configuration.isJavascriptDisabledWithHTMLUnit());
 
                 // Run via a proxy - firstly try deprecated HTML unit only
@@ -85,6 +115,17 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
                     final int proxyPort = configuration.getNetworkProxyPort();
                     htmlUnitDriver.setProxy(proxyHost, proxyPort);
                 }
+                // Run via a proxy - lastly the recording proxy, which goes on
+                // to the network proxy itself
+                final RecordingProxy recordingProxy = RecordingProxy.getInstance(configuration);
+                if (recordingProxy != null) {
+                    htmlUnitDriver.setProxy("localhost", recordingProxy.getPort());
+                }
+
+                final UrlBlockList blockList = new UrlBlockList(configuration.blockUrls());
+                if (!blockList.isEmpty()) {
+                    htmlUnitDriver.blockUrls(blockList);
+                }
 
                 setDriverLocale(htmlUnitDriver);
 
@@ -92,10 +133,18 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
                 break;
 
             }
-            case CHROME: {
+            case CHROME:
+            case CHROME_HEADLESS: {
 
                 final DesiredCapabilities chromeCapabilities = DesiredCapabilities.chrome();
                 setNetworkCapabilities(chromeCapabilities);
+                setPageLoadStrategy(chromeCapabilities);
+
+                if (isHeadless()) {
+                    final ChromeOptions options = new ChromeOptions();
+                    options.addArguments(headlessChromeArguments());
+                    chromeCapabilities.setCapability(ChromeOptions.CAPABILITY, options);
+                }
 
                 setLoggingPreferences(chromeCapabilities);
 
@@ -114,32 +163,102 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
                 LOG.warn("Using IE Webdriver with IGNORING SECURITY DOMAIN");
 
                 setNetworkCapabilities(ieCapabilities);
+                setPageLoadStrategy(ieCapabilities);
                 webDriver = new InternetExplorerDriver(ieCapabilities);
                 break;
             }
+            case REMOTE: {
+
+                final DesiredCapabilities remoteCapabilities = new DesiredCapabilities(configuration.remoteBrowser(),
+                        "", Platform.ANY);
+                setNetworkCapabilities(remoteCapabilities);
+                setPageLoadStrategy(remoteCapabilities);
+
+                setLoggingPreferences(remoteCapabilities);
+
+                final HttpCommandExecutor executor = PooledHttpCommandExecutor.create(remoteUrl(), configuration);
+
+                // augmented for screenshots and the like
+                webDriver = new Augmenter().augment(new RemoteWebDriver(executor, remoteCapabilities));
+                break;
+            }
             default: {
                 throw new IllegalArgumentException("unknown driver type " + configuration.driverType());
             }
         }
 
-        webDriver.manage().window().maximize();
-        
-        return webDriver;
+        // maximizing is slow, and means nothing without a display
+        final Dimension windowSize = windowSize();
+        if (windowSize != null) {
+            webDriver.manage().window().setSize(windowSize);
+        } else {
+            webDriver.manage().window().maximize();
+        }
+
+        return instrument(webDriver);
 
     }
 
+    /**
+     * Decorates the driver to report its commands, if anything wants to know
+     * about them.
+     */
+    private WebDriver instrument(final WebDriver webDriver) {
+
+        final List<WebDriverCommandListener> listeners = new ArrayList<WebDriverCommandListener>();
+
+        if (configuration.stepMetricsEnabled()) {
+            listeners.add(StepMetrics.COMMAND_COUNTER);
+        }
+        if (configuration.traceCommands()) {
+            listeners.add(CommandTracingListener.INSTANCE);
+        }
+        if (configuration.scenarioTimingsEnabled()) {
+            listeners.add(ScenarioTimings.NAVIGATION_TIMER);
+        }
+        if (configuration.slowStepTraceThresholdMillis() > 0) {
+            listeners.add(SlowStepTraceListener.COMMAND_TIMER);
+        }
+        if (configuration.lookupCache()) {
+            listeners.add(ElementLookupCache.INVALIDATOR);
+        }
+
+        return InstrumentedWebDriver.instrument(webDriver, listeners);
+    }
+
+    private URL remoteUrl() {
+        try {
+            return new URL(configuration.remoteUrl());
+        } catch (final MalformedURLException ex) {
+            throw new IllegalStateException("'webdriver.remote.url' is invalid.", ex);
+        }
+    }
+
     private void setLoggingPreferences(final DesiredCapabilities chromeCapabilities) {
         // TODO switch on based on properties
         final LoggingPreferences logPrefs = new LoggingPreferences();
         logPrefs.enable(LogType.BROWSER, Level.ALL);
+        if (configuration.slowStepTraceThresholdMillis() > 0 && isChrome()) {
+            // the devtools timeline, for tracing slow steps
+            logPrefs.enable(LogType.PERFORMANCE, Level.ALL);
+        }
         chromeCapabilities.setCapability(CapabilityType.LOGGING_PREFS, logPrefs);
     }
 
     private void setNetworkCapabilities(final DesiredCapabilities capabilities) {
-        final String proxyHost = configuration.getNetworkProxyHost();
-        if (StringUtils.isNotEmpty(proxyHost)) {
-            final int proxyPort = configuration.getNetworkProxyPort();
-            final String proxyHostAndPort = proxyHost + ":" + proxyPort;
+        final String proxyHostAndPort = proxyHostAndPort();
+
+        final UrlBlockList blockList = new UrlBlockList(configuration.blockUrls());
+
+        if (!blockList.isEmpty()) {
+            // a proxy script sends the blocked urls nowhere and the rest on
+            // to the proxy, if there is one
+            final org.openqa.selenium.Proxy proxy = new org.openqa.selenium.Proxy();
+            proxy.setProxyAutoconfigUrl(blockList.toPacUrl(proxyHostAndPort));
+            capabilities.setCapability(CapabilityType.PROXY, proxy);
+            LOG.info("Blocking urls {}", blockList.getPatterns());
+
+        } else if (proxyHostAndPort != null) {
             final org.openqa.selenium.Proxy proxy = new org.openqa.selenium.Proxy();
             proxy.setHttpProxy(proxyHostAndPort).setFtpProxy(proxyHostAndPort).setSslProxy(proxyHostAndPort);
             capabilities.setCapability(CapabilityType.PROXY, proxy);
@@ -147,6 +266,88 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
         }
     }
 
+    private String proxyHostAndPort() {
+        final RecordingProxy recordingProxy = RecordingProxy.getInstance(configuration);
+        if (recordingProxy != null) {
+            return "localhost:" + recordingProxy.getPort();
+        }
+        final String proxyHost = configuration.getNetworkProxyHost();
+        return StringUtils.isNotEmpty(proxyHost) ? proxyHost + ":" + configuration.getNetworkProxyPort() : null;
+    }
+
+    private boolean isChrome() {
+        return configuration.driverType() == DefaultDriverType.CHROME
+                || configuration.driverType() == DefaultDriverType.CHROME_HEADLESS;
+    }
+
+    private boolean isHeadless() {
+        return configuration.driverType() == DefaultDriverType.CHROME_HEADLESS;
+    }
+
+    /**
+     * @return the size set by webdriver.window.size, a default for headless
+     *         browsers, otherwise null for a maximized window
+     */
+    Dimension windowSize() {
+        final String size = configuration.windowSize();
+        if (StringUtils.isBlank(size)) {
+            return isHeadless() ? HEADLESS_WINDOW_SIZE : null;
+        }
+        final String[] widthAndHeight = size.toLowerCase().split("x");
+        try {
+            if (widthAndHeight.length == 2) {
+                return new Dimension(Integer.parseInt(widthAndHeight[0].trim()),
+                        Integer.parseInt(widthAndHeight[1].trim()));
+            }
+        } catch (final NumberFormatException ex) {
+            // reported below
+        }
+        throw new IllegalStateException("'webdriver.window.size' is invalid, expecting eg. 1280x1024");
+    }
+
+    List<String> headlessChromeArguments() {
+        final Dimension windowSize = windowSize();
+
+        final List<String> arguments = new ArrayList<String>();
+        arguments.add("--headless");
+        arguments.add("--disable-gpu");
+        arguments.add("--disable-extensions");
+        arguments.add("--disable-background-networking");
+        arguments.add("--window-size=" + windowSize.getWidth() + "," + windowSize.getHeight());
+        if (configuration.headlessDisableImages()) {
+            arguments.add("--blink-settings=imagesEnabled=false");
+        }
+        return arguments;
+    }
+
+    private void setPageLoadStrategy(final DesiredCapabilities capabilities) {
+        if (!isNormalPageLoad()) {
+            capabilities.setCapability(PAGE_LOAD_STRATEGY, configuration.pageLoadStrategy());
+        }
+    }
+
+    /**
+     * @return the firefox driver's webdriver.load.strategy for the configured
+     *         strategy, null to leave it waiting for the whole page. The
+     *         driver only knows waiting and not waiting (unstable), so eager
+     *         gets none's behaviour.
+     */
+    String firefoxLoadStrategy() {
+        if (isNormalPageLoad()) {
+            return null;
+        }
+        if (EAGER_PAGE_LOAD.equals(configuration.pageLoadStrategy())) {
+            LOG.warn("Firefox can't wait for just the document, webdriver.page.load.strategy=eager will behave like "
+                    + "none and not wait at all");
+        }
+        return "unstable";
+    }
+
+    private boolean isNormalPageLoad() {
+        final String strategy = configuration.pageLoadStrategy();
+        return StringUtils.isEmpty(strategy) || NORMAL_PAGE_LOAD.equals(strategy);
+    }
+
     public DriverType driverType() {
         return configuration.driverType();
     }
@@ -155,10 +356,10 @@ public class DefaultWebDriverFactory implements WebDriverFactory {
      * By default the HtmlUnit driver is set to en-us. This can cause problems
      * with formatters.
      */
-    private void setDriverLocale(final WebDriver driver) {
+    private void setDriverLocale(final HtmlUnitDriver driver) {
 
         try {
-            final Field field = driver.getClass().getDeclaredField("webClient");
+            final Field field = HtmlUnitDriver.class.getDeclaredField("webClient");
             if (field != null) {
                 final boolean original = field.isAccessible();
                 field.setAccessible(true);
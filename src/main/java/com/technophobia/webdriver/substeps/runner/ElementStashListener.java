@@ -0,0 +1,70 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import com.technophobia.substeps.execution.node.FeatureNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.ElementStash;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+/**
+ * Forgets the elements stashed for a step or a feature once it is over, those
+ * kept for a scenario are forgotten by the scenario tear down.
+ */
+public class ElementStashListener implements IExecutionListener {
+
+    public void onNodeFinished(final IExecutionNode node) {
+        clear(node);
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        clear(node);
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+        // no op
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    private static void clear(final IExecutionNode node) {
+
+        final ElementStash.Scope scope;
+        if (node instanceof StepImplementationNode) {
+            scope = ElementStash.Scope.STEP;
+        } else if (node instanceof FeatureNode) {
+            scope = ElementStash.Scope.FEATURE;
+        } else {
+            return;
+        }
+
+        final WebDriverContext webDriverContext = DefaultExecutionSetupTearDown.getThreadLocalWebDriverContext();
+        if (webDriverContext != null) {
+            webDriverContext.clearStash(scope);
+        }
+    }
+}
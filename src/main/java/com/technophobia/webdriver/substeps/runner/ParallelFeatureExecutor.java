@@ -0,0 +1,212 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.runner.ExecutionContext;
+import com.technophobia.substeps.runner.INotificationDistributor;
+
+/**
+ * Runs features across a number of worker threads, each of which gets its own
+ * WebDriverContext and so its own browser from the shared WebDriverFactory.
+ * Each feature is supplied as a Runnable that executes the feature on the
+ * calling thread; a worker's driver is shut down once it runs out of features.
+ *
+ * The number of workers defaults to webdriver.parallel.workers. Each worker's
+ * scenarios see a {@link ConfigurationSnapshot} of the suite's configuration
+ * with any webdriver.parallel.worker.&lt;n&gt;.&lt;setting&gt; overrides applied,
+ * e.g. webdriver.parallel.worker.2.driverType=CHROME_HEADLESS.
+ *
+ * The substeps runners execute features one after another and don't call
+ * this class; it is an entry point for a runner of your own that hands each
+ * feature over as a Runnable, see "Running features in parallel" in
+ * docs/using.rst. The calling thread's notifier is made available to the
+ * workers, so listeners registered by the setup see the workers' nodes.
+ */
+public class ParallelFeatureExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelFeatureExecutor.class);
+
+    private final int workers;
+    private final WebDriverFactory factory;
+    private final WebdriverSubstepsConfiguration configuration;
+
+
+    /**
+     * @param configuration
+     *            the suite's configuration, giving the number of workers and
+     *            the settings each worker's overrides apply to
+     */
+    public ParallelFeatureExecutor(final WebdriverSubstepsConfiguration configuration) {
+        this(configuration.parallelWorkers(), DefaultExecutionSetupTearDown.webDriverFactory(), configuration);
+    }
+
+
+    public ParallelFeatureExecutor(final int workers, final WebDriverFactory factory) {
+        this(workers, factory, null);
+    }
+
+
+    /**
+     * @param workers
+     *            the maximum number of features to run at once
+     * @param factory
+     *            the factory shared by the workers
+     * @param configuration
+     *            the suite's configuration, to be overridden per worker, or
+     *            null to leave the workers with the suite's configuration
+     */
+    public ParallelFeatureExecutor(final int workers, final WebDriverFactory factory,
+            final WebdriverSubstepsConfiguration configuration) {
+        this.workers = Math.max(1, workers);
+        this.factory = factory;
+        this.configuration = configuration;
+    }
+
+
+    /**
+     * Executes the features and waits for them all to finish.
+     *
+     * @param features
+     *            one Runnable per feature
+     * @throws WebDriverSubstepsException
+     *             if any feature threw, after the remaining features have run
+     */
+    public void execute(final List<? extends Runnable> features) {
+
+        final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>(features);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        // the execution context belongs to the thread, so the workers have to
+        // be handed the caller's notifier
+        final INotificationDistributor notifier = (INotificationDistributor) ExecutionContext.get(Scope.SUITE,
+                INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY);
+
+        final int workerCount = Math.min(this.workers, Math.max(1, features.size()));
+        LOG.info("Executing {} features on {} workers", features.size(), workerCount);
+
+        // set up every worker before starting any, so that a bad override
+        // fails the run rather than a worker
+        final List<Thread> threads = new ArrayList<Thread>(workerCount);
+        for (int i = 1; i <= workerCount; i++) {
+            threads.add(new Thread(worker(i, queue, failures, notifier), "webdriver-worker-" + i));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverSubstepsException("Interrupted waiting for features to complete", e);
+        }
+
+        if (!failures.isEmpty()) {
+            throw new WebDriverSubstepsException(failures.size() + " of " + features.size() + " features failed",
+                    failures.get(0));
+        }
+    }
+
+    private Worker worker(final int number, final BlockingQueue<Runnable> queue, final List<Throwable> failures,
+            final INotificationDistributor notifier) {
+
+        if (this.configuration == null) {
+            return new Worker(queue, failures, notifier, this.factory, null);
+        }
+
+        final Map<String, String> overrides = ConfigurationSnapshot.workerOverrides(number);
+        final WebdriverSubstepsConfiguration workerConfiguration = ConfigurationSnapshot.of(this.configuration,
+                overrides);
+
+        WebDriverFactory workerFactory = this.factory;
+        if (!overrides.isEmpty()) {
+            LOG.info("Worker {} overrides {}", number, overrides);
+
+            // the worker's settings only take effect through a factory of its
+            // own, pooled or custom factories are shared as they are
+            if (this.factory != null && this.factory.getClass() == DefaultWebDriverFactory.class) {
+                workerFactory = new DefaultWebDriverFactory(workerConfiguration);
+            }
+        }
+        return new Worker(queue, failures, notifier, workerFactory, workerConfiguration);
+    }
+
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+        private final List<Throwable> failures;
+        private final INotificationDistributor notifier;
+        private final WebDriverFactory factory;
+        private final WebdriverSubstepsConfiguration configuration;
+
+
+        Worker(final BlockingQueue<Runnable> queue, final List<Throwable> failures,
+                final INotificationDistributor notifier, final WebDriverFactory factory,
+                final WebdriverSubstepsConfiguration configuration) {
+            this.queue = queue;
+            this.failures = failures;
+            this.notifier = notifier;
+            this.factory = factory;
+            this.configuration = configuration;
+        }
+
+
+        public void run() {
+
+            // the execution context belongs to the thread, so the notifier,
+            // factory and configuration have to be made visible to this
+            // worker's scenarios
+            if (this.notifier != null) {
+                ExecutionContext.put(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY, this.notifier);
+            }
+            ExecutionContext.put(Scope.SUITE, WebDriverFactory.WEB_DRIVER_FACTORY_KEY, this.factory);
+            if (this.configuration != null) {
+                ExecutionContext.put(Scope.SUITE, WebdriverSubstepsConfiguration.CONFIGURATION_KEY, this.configuration);
+            }
+
+            try {
+                Runnable feature = this.queue.poll();
+                while (feature != null) {
+                    try {
+                        feature.run();
+                    } catch (final Throwable t) {
+                        LOG.warn("Feature failed on " + Thread.currentThread().getName(), t);
+                        this.failures.add(t);
+                    }
+                    feature = this.queue.poll();
+                }
+            } finally {
+                DefaultExecutionSetupTearDown.shutdownThreadLocalWebDriver();
+            }
+        }
+    }
+}
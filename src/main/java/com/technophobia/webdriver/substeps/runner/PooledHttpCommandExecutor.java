@@ -0,0 +1,196 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The command executor for driver.type=REMOTE. Selenium's own executor builds
+ * its http client with fixed settings, this swaps in one whose connection
+ * pool, keep alive, compression and timeouts come from the
+ * webdriver.remote.* properties. The client is shared by all the remote
+ * drivers, so connections to the hub are reused from one scenario to the
+ * next rather than opened for each browser, and is closed by
+ * {@link #shutdownSharedHttpClient()} once the features have run.
+ * <p>
+ * Selenium has no way to pass a client in, so it is set on
+ * {@link HttpCommandExecutor}'s private <code>client</code> field. If a
+ * selenium upgrade takes that field away, {@link #create} logs as much once
+ * and hands back selenium's own executor instead.
+ */
+public class PooledHttpCommandExecutor extends HttpCommandExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpCommandExecutor.class);
+
+    private static final Field CLIENT_FIELD = clientField();
+
+    private static CloseableHttpClient sharedHttpClient;
+
+
+    public PooledHttpCommandExecutor(final URL remoteServer, final HttpClient httpClient) {
+        super(remoteServer);
+
+        if (CLIENT_FIELD == null) {
+            throw new IllegalStateException("selenium's HttpCommandExecutor has no client field to set");
+        }
+        try {
+            CLIENT_FIELD.set(this, httpClient);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException("Unable to set the remote webdriver http client", e);
+        }
+    }
+
+
+    /**
+     * @return an executor for the hub at remoteServer using the shared
+     *         client, or selenium's own executor if this version of selenium
+     *         won't let the client be swapped
+     */
+    public static HttpCommandExecutor create(final URL remoteServer,
+            final WebdriverSubstepsConfiguration configuration) {
+
+        if (!isSupported()) {
+            return new HttpCommandExecutor(remoteServer);
+        }
+        return new PooledHttpCommandExecutor(remoteServer, sharedHttpClient(configuration));
+    }
+
+
+    /**
+     * @return whether the selenium on the classpath has the field the pooled
+     *         client is set on
+     */
+    public static boolean isSupported() {
+        return CLIENT_FIELD != null;
+    }
+
+
+    private static Field clientField() {
+
+        try {
+            final Field field = HttpCommandExecutor.class.getDeclaredField("client");
+            if (!field.getType().isAssignableFrom(CloseableHttpClient.class)) {
+                LOG.warn("selenium's HttpCommandExecutor.client is a " + field.getType().getName()
+                        + ", the webdriver.remote.* pool settings are ignored and selenium's own http client is used");
+                return null;
+            }
+            field.setAccessible(true);
+            return field;
+        } catch (final NoSuchFieldException e) {
+            LOG.warn("selenium's HttpCommandExecutor has no client field, the webdriver.remote.* pool settings are "
+                    + "ignored and selenium's own http client is used");
+            return null;
+        } catch (final SecurityException e) {
+            LOG.warn("Unable to get at selenium's HttpCommandExecutor.client, the webdriver.remote.* pool settings "
+                    + "are ignored and selenium's own http client is used: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the client shared by the remote drivers, created from the
+     *         configuration the first time it is needed
+     */
+    public static synchronized CloseableHttpClient sharedHttpClient(final WebdriverSubstepsConfiguration configuration) {
+
+        if (sharedHttpClient == null) {
+            sharedHttpClient = createHttpClient(configuration.remotePoolMaxTotal(),
+                    configuration.remotePoolMaxPerRoute(),
+                    TimeUnit.SECONDS.toMillis(configuration.remoteKeepAliveSecs()), configuration.remoteCompression(),
+                    (int) TimeUnit.SECONDS.toMillis(configuration.remoteConnectTimeoutSecs()),
+                    (int) TimeUnit.SECONDS.toMillis(configuration.remoteSocketTimeoutSecs()));
+        }
+        return sharedHttpClient;
+    }
+
+
+    /**
+     * Closes the shared client, and with it the pooled connections to the
+     * hub. A later {@link #sharedHttpClient} starts a new one.
+     */
+    public static synchronized void shutdownSharedHttpClient() {
+
+        if (sharedHttpClient != null) {
+            try {
+                sharedHttpClient.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close the remote webdriver http client", e);
+            }
+            sharedHttpClient = null;
+        }
+    }
+
+
+    /**
+     * @param maxTotal
+     *            the most connections open at once
+     * @param maxPerRoute
+     *            the most connections open to one hub at once
+     * @param keepAliveMillis
+     *            how long an idle connection is kept, unless the hub says
+     *            less
+     * @param compression
+     *            whether to ask for gzipped responses
+     */
+    public static CloseableHttpClient createHttpClient(final int maxTotal, final int maxPerRoute, final long keepAliveMillis,
+            final boolean compression, final int connectTimeoutMillis, final int socketTimeoutMillis) {
+
+        final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(maxTotal);
+        connections.setDefaultMaxPerRoute(maxPerRoute);
+
+        final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis).setStaleConnectionCheckEnabled(true).build();
+
+        final HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connections)
+                .setDefaultRequestConfig(requestConfig).setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+                    public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                        final long offered = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                                response, context);
+                        return offered > 0 ? Math.min(offered, keepAliveMillis) : keepAliveMillis;
+                    }
+                })
+                // the executor follows the hub's redirects itself
+                .disableRedirectHandling();
+
+        if (!compression) {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WebDriverFactory that keeps WebDriver instances launched and ready in the
+ * background, so that scenarios don't pay the browser startup cost inline.
+ * Drivers are handed back via {@link #releaseWebDriver(WebDriver)} once they
+ * have been reset and are reused, unless they have exceeded the configured
+ * maximum age or number of uses in which case they are quit and replaced.
+ *
+ * Use by setting webdriver.factory.class to this class, the drivers themselves
+ * are created by a {@link DefaultWebDriverFactory}.
+ */
+public class PooledWebDriverFactory implements WebDriverFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledWebDriverFactory.class);
+
+    // how long to wait for a driver that is already being launched before
+    // giving up and launching one inline
+    private static final long LAUNCH_WAIT_SECS = 60;
+
+    private final WebDriverFactory delegate;
+    private final int poolSize;
+    private final long maxAgeMillis;
+    private final int maxUses;
+
+    private final BlockingQueue<PooledWebDriver> idle = new LinkedBlockingQueue<PooledWebDriver>();
+
+    // guarded by this
+    private final Map<WebDriver, PooledWebDriver> leased = new IdentityHashMap<WebDriver, PooledWebDriver>();
+    private int launching = 0;
+
+    private final ExecutorService launcher;
+    // quitting has its own thread so it doesn't wait behind launches
+    private final ExecutorService quitter;
+    private volatile boolean shutdown = false;
+
+
+    public PooledWebDriverFactory() {
+        this(WebdriverSubstepsPropertiesConfiguration.INSTANCE);
+    }
+
+
+    public PooledWebDriverFactory(final WebdriverSubstepsConfiguration configuration) {
+        this(new DefaultWebDriverFactory(configuration), configuration.webDriverPoolSize(), TimeUnit.SECONDS
+                .toMillis(configuration.webDriverPoolMaxAgeSecs()), configuration.webDriverPoolMaxUses());
+    }
+
+
+    /**
+     * @param delegate
+     *            the factory used to launch new drivers
+     * @param poolSize
+     *            the total number of drivers kept by the pool, including
+     *            those in use
+     * @param maxAgeMillis
+     *            drivers older than this are discarded, 0 for no limit
+     * @param maxUses
+     *            drivers handed out this many times are discarded, 0 for no
+     *            limit
+     */
+    public PooledWebDriverFactory(final WebDriverFactory delegate, final int poolSize, final long maxAgeMillis,
+            final int maxUses) {
+        this.delegate = delegate;
+        this.poolSize = poolSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxUses = maxUses;
+
+        this.launcher = Executors.newFixedThreadPool(Math.max(1, poolSize), new LauncherThreadFactory("launcher"));
+        this.quitter = Executors.newSingleThreadExecutor(new LauncherThreadFactory("quitter"));
+
+        LOG.info("Creating WebDriver pool of size {}", poolSize);
+        topUp();
+    }
+
+
+    public WebDriver createWebDriver() {
+
+        PooledWebDriver pooled = takeIdle();
+
+        if (pooled == null && isLaunching()) {
+            // one is already on its way, which will be quicker than starting
+            // from scratch
+            try {
+                pooled = idle.poll(LAUNCH_WAIT_SECS, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (pooled == null) {
+            LOG.debug("No pooled WebDriver available, launching one inline");
+            pooled = new PooledWebDriver(this.delegate.createWebDriver());
+        }
+
+        pooled.lease();
+
+        synchronized (this) {
+            this.leased.put(pooled.webDriver, pooled);
+        }
+
+        topUp();
+
+        return pooled.webDriver;
+    }
+
+
+    /**
+     * Hands a driver back to the pool, the caller is expected to have reset
+     * the driver's state already.
+     *
+     * @param webDriver
+     *            a driver previously returned by {@link #createWebDriver()}
+     */
+    public void releaseWebDriver(final WebDriver webDriver) {
+
+        final PooledWebDriver pooled;
+        synchronized (this) {
+            pooled = this.leased.remove(webDriver);
+        }
+
+        if (pooled == null) {
+            LOG.debug("Released WebDriver was not created by the pool, quitting");
+            quit(webDriver);
+        } else if (this.shutdown) {
+            quit(webDriver);
+        } else if (pooled.isExpired()) {
+            LOG.debug("Discarding pooled WebDriver after {} uses", pooled.uses);
+            discard(pooled);
+            topUp();
+        } else if (this.idle.size() >= this.poolSize) {
+            // more drivers were launched inline than the pool should hold
+            discard(pooled);
+        } else {
+            this.idle.offer(pooled);
+        }
+    }
+
+
+    /**
+     * Forgets a driver that the caller has already quit, e.g. because it
+     * couldn't be reset, and launches a replacement.
+     *
+     * @param webDriver
+     *            a driver previously returned by {@link #createWebDriver()}
+     */
+    public void discardWebDriver(final WebDriver webDriver) {
+
+        synchronized (this) {
+            this.leased.remove(webDriver);
+        }
+        topUp();
+    }
+
+
+    /**
+     * Quits all idle drivers and stops launching new ones. Drivers still in use
+     * are quit when they are released.
+     */
+    public void shutdown() {
+
+        LOG.debug("Shutting down WebDriver pool");
+        synchronized (this) {
+            // once set no launch can add to the idle drivers
+            this.shutdown = true;
+        }
+        this.launcher.shutdown();
+        this.quitter.shutdown();
+
+        PooledWebDriver pooled = this.idle.poll();
+        while (pooled != null) {
+            quit(pooled.webDriver);
+            pooled = this.idle.poll();
+        }
+    }
+
+
+    public DriverType driverType() {
+        return this.delegate.driverType();
+    }
+
+
+    private PooledWebDriver takeIdle() {
+
+        PooledWebDriver pooled = this.idle.poll();
+
+        while (pooled != null && pooled.isExpired()) {
+            discard(pooled);
+            pooled = this.idle.poll();
+        }
+        return pooled;
+    }
+
+
+    private synchronized boolean isLaunching() {
+        return this.launching > 0;
+    }
+
+
+    private synchronized void topUp() {
+
+        if (this.shutdown) {
+            return;
+        }
+
+        while (this.idle.size() + this.leased.size() + this.launching < this.poolSize) {
+            this.launching++;
+            this.launcher.execute(new Runnable() {
+                public void run() {
+                    launch();
+                }
+            });
+        }
+    }
+
+
+    private void launch() {
+        try {
+            final PooledWebDriver pooled = new PooledWebDriver(this.delegate.createWebDriver());
+
+            final boolean pooledAfterShutdown;
+            synchronized (this) {
+                pooledAfterShutdown = this.shutdown;
+                if (!pooledAfterShutdown) {
+                    this.idle.offer(pooled);
+                }
+            }
+            if (pooledAfterShutdown) {
+                // launched while the pool was shutting down, nobody will
+                // take it
+                quit(pooled.webDriver);
+            }
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to launch a pooled WebDriver", e);
+        } finally {
+            synchronized (this) {
+                this.launching--;
+            }
+        }
+    }
+
+
+    private void discard(final PooledWebDriver pooled) {
+
+        if (this.shutdown) {
+            quit(pooled.webDriver);
+        } else {
+            // quitting a browser can take a while, keep it off the caller's
+            // thread
+            try {
+                this.quitter.execute(new Runnable() {
+                    public void run() {
+                        quit(pooled.webDriver);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // shut down in the meantime
+                quit(pooled.webDriver);
+            }
+        }
+    }
+
+
+    private static void quit(final WebDriver webDriver) {
+        try {
+            webDriver.quit();
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to quit WebDriver: " + e.getMessage());
+        }
+    }
+
+    private final class PooledWebDriver {
+
+        private final WebDriver webDriver;
+        private final long launchedAt;
+        private int uses = 0;
+
+
+        PooledWebDriver(final WebDriver webDriver) {
+            this.webDriver = webDriver;
+            this.launchedAt = System.currentTimeMillis();
+        }
+
+
+        void lease() {
+            this.uses++;
+        }
+
+
+        boolean isExpired() {
+            return (maxUses > 0 && this.uses >= maxUses)
+                    || (maxAgeMillis > 0 && System.currentTimeMillis() - this.launchedAt >= maxAgeMillis);
+        }
+    }
+
+    private static final class LauncherThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+
+        LauncherThreadFactory(final String name) {
+            this.name = name;
+        }
+
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "webdriver-pool-" + this.name + "-"
+                    + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
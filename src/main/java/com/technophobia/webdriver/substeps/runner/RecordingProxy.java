@@ -0,0 +1,624 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An http proxy, run in process, that records the responses to the requests
+ * the browser makes and plays them back on later runs, so suites can run
+ * against a recording of a slow or unavailable backend. Recordings are looked
+ * up by the request's method, url and a hash of its body, and kept one file
+ * per response in webdriver.recording.proxy.dir.
+ *
+ * Https is tunnelled to the server, through the upstream proxy if there is
+ * one; it can't be recorded without intercepting the encryption.
+ */
+public class RecordingProxy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordingProxy.class);
+
+    public enum Mode {
+
+        /**
+         * No proxy.
+         */
+        OFF,
+
+        /**
+         * Play back recorded responses, record the ones that haven't been.
+         */
+        AUTO,
+
+        /**
+         * Record every response afresh.
+         */
+        RECORD,
+
+        /**
+         * Only play back, requests that haven't been recorded fail, nothing
+         * goes to the network.
+         */
+        REPLAY
+    }
+
+    private static final String CRLF = "\r\n";
+    private static final int SOCKET_TIMEOUT_MILLIS = 60000;
+
+    // not passed on, they describe the connection rather than the content
+    private static final Set<String> HOP_BY_HOP = new HashSet<String>(Arrays.asList("connection", "keep-alive",
+            "proxy-connection", "proxy-authorization", "proxy-authenticate", "te", "trailer", "transfer-encoding",
+            "upgrade", "content-length", "host"));
+
+    private static RecordingProxy instance;
+
+    private final Mode mode;
+    private final File dir;
+    private final Proxy upstream;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private volatile boolean running = true;
+
+
+    /**
+     * @param mode
+     *            whether to record, play back or both
+     * @param dir
+     *            where the recordings are kept
+     * @param port
+     *            the port to listen on, 0 for any free one
+     * @param upstream
+     *            the proxy to record through, or {@link Proxy#NO_PROXY}
+     */
+    public RecordingProxy(final Mode mode, final String dir, final int port, final Proxy upstream) throws IOException {
+        this.mode = mode;
+        this.dir = new File(dir);
+        this.upstream = upstream;
+
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("localhost"));
+
+        this.connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "recording-proxy-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "recording-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        LOG.info("Recording proxy in {} mode listening on port {}, recordings in {}", new Object[] { mode,
+                Integer.valueOf(getPort()), this.dir.getAbsolutePath() });
+    }
+
+
+    /**
+     * @return the proxy configured by webdriver.recording.proxy, started the
+     *         first time it's needed, or null if it is switched off
+     */
+    public static synchronized RecordingProxy getInstance(final WebdriverSubstepsConfiguration configuration) {
+
+        final Mode mode = configuration.recordingProxyMode();
+        if (instance == null && mode != null && mode != Mode.OFF) {
+
+            Proxy upstream = Proxy.NO_PROXY;
+            if (StringUtils.isNotEmpty(configuration.getNetworkProxyHost())) {
+                upstream = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(configuration.getNetworkProxyHost(),
+                        configuration.getNetworkProxyPort()));
+            }
+            try {
+                instance = new RecordingProxy(mode, configuration.recordingProxyDir(),
+                        configuration.recordingProxyPort(), upstream);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Unable to start the recording proxy", e);
+            }
+        }
+        return instance;
+    }
+
+
+    /**
+     * Stops the proxy started by {@link #getInstance}, if there is one.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+
+    public void shutdown() {
+        this.running = false;
+        try {
+            this.serverSocket.close();
+        } catch (final IOException e) {
+            LOG.debug("Failed to close recording proxy socket", e);
+        }
+        this.connections.shutdownNow();
+    }
+
+
+    private void accept() {
+        while (this.running) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                this.connections.execute(new Runnable() {
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (final IOException e) {
+                if (this.running) {
+                    LOG.warn("Recording proxy failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+
+    private void handle(final Socket socket) {
+        try {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final OutputStream out = socket.getOutputStream();
+
+            final Request request = Request.read(in);
+            if (request == null) {
+                return;
+            }
+
+            if ("CONNECT".equals(request.method)) {
+                tunnel(request, socket, in, out);
+                return;
+            }
+
+            final File recording = new File(this.dir, request.key() + ".http");
+
+            Response response = null;
+            if (this.mode != Mode.RECORD && recording.exists()) {
+                response = Response.load(recording);
+            } else if (this.mode == Mode.REPLAY) {
+                LOG.warn("No recording of {} {}", request.method, request.url);
+                response = Response.error(504, "Not Recorded", request.method + " " + request.url);
+            } else {
+                response = fetch(request);
+                if (response.status < 500) {
+                    response.save(recording, request);
+                }
+            }
+
+            response.write(out);
+            out.flush();
+
+        } catch (final IOException e) {
+            LOG.debug("Recording proxy connection failed", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                LOG.debug("Failed to close recording proxy connection", e);
+            }
+        }
+    }
+
+
+    private Response fetch(final Request request) throws IOException {
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(request.url).openConnection(this.upstream);
+        try {
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            connection.setRequestMethod(request.method);
+
+            for (final String[] header : request.headers) {
+                if (!HOP_BY_HOP.contains(header[0].toLowerCase(Locale.ENGLISH))) {
+                    connection.addRequestProperty(header[0], header[1]);
+                }
+            }
+
+            if (request.body.length > 0) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.body.length);
+                final OutputStream out = connection.getOutputStream();
+                out.write(request.body);
+                out.close();
+            }
+
+            final int status = connection.getResponseCode();
+
+            final List<String[]> headers = new ArrayList<String[]>();
+            for (final Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                if (header.getKey() != null && !HOP_BY_HOP.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                    for (final String value : header.getValue()) {
+                        headers.add(new String[] { header.getKey(), value });
+                    }
+                }
+            }
+
+            InputStream body = status >= 400 ? connection.getErrorStream() : null;
+            if (body == null && status >= 200 && status != 204 && status != 304 && !"HEAD".equals(request.method)) {
+                body = connection.getInputStream();
+            }
+
+            return new Response(status, connection.getResponseMessage(), headers, body == null ? new byte[0]
+                    : readFully(body));
+
+        } catch (final IOException e) {
+            LOG.warn("Recording proxy failed to fetch " + request.url + ": " + e.getMessage());
+            return Response.error(502, "Bad Gateway", e.getMessage());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+
+    private void tunnel(final Request request, final Socket client, final InputStream in, final OutputStream out)
+            throws IOException {
+
+        if (this.mode == Mode.REPLAY) {
+            Response.error(502, "Bad Gateway", "https can't be played back").write(out);
+            return;
+        }
+
+        final Socket server;
+        final InputStream fromServer;
+        if (this.upstream == Proxy.NO_PROXY) {
+            final String[] hostAndPort = request.url.split(":");
+            server = new Socket(hostAndPort[0], hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : 443);
+            fromServer = server.getInputStream();
+        } else {
+            server = new Socket();
+            server.connect(this.upstream.address());
+            fromServer = new BufferedInputStream(server.getInputStream());
+        }
+        try {
+            if (this.upstream != Proxy.NO_PROXY) {
+                // ask the upstream proxy for the tunnel, the browser only
+                // hears it's established once the upstream says so
+                server.getOutputStream().write(
+                        ("CONNECT " + request.url + " HTTP/1.1" + CRLF + "Host: " + request.url + CRLF + CRLF)
+                                .getBytes("ISO-8859-1"));
+                server.getOutputStream().flush();
+
+                final String statusLine = readLine(fromServer);
+                readHeaders(fromServer);
+                final String[] parts = statusLine == null ? new String[0] : statusLine.split(" ", 3);
+                if (parts.length < 2 || !parts[1].startsWith("2")) {
+                    LOG.warn("Upstream proxy refused to tunnel to {}: {}", request.url, statusLine);
+                    Response.error(502, "Bad Gateway", "upstream proxy refused the tunnel: " + statusLine).write(out);
+                    return;
+                }
+            }
+
+            out.write(("HTTP/1.1 200 Connection Established" + CRLF + CRLF).getBytes("ISO-8859-1"));
+            out.flush();
+
+            final OutputStream toServer = server.getOutputStream();
+
+            this.connections.execute(new Runnable() {
+                public void run() {
+                    pipe(fromServer, out);
+                }
+            });
+            pipe(in, toServer);
+        } finally {
+            server.close();
+        }
+    }
+
+
+    private static void pipe(final InputStream in, final OutputStream out) {
+        final byte[] buf = new byte[8192];
+        try {
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+                out.flush();
+            }
+        } catch (final IOException e) {
+            // one side has hung up
+        }
+    }
+
+
+    static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buf.write(chunk, 0, read);
+        }
+        in.close();
+        return buf.toByteArray();
+    }
+
+
+    static String sha1(final byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(String.format("%02x", Integer.valueOf(b & 0xff)));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return c == -1 && line.length() == 0 ? null : line.toString();
+    }
+
+
+    private static List<String[]> readHeaders(final InputStream in) throws IOException {
+        final List<String[]> headers = new ArrayList<String[]>();
+        String line = readLine(in);
+        while (line != null && line.length() > 0) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.add(new String[] { line.substring(0, colon).trim(), line.substring(colon + 1).trim() });
+            }
+            line = readLine(in);
+        }
+        return headers;
+    }
+
+
+    private static String header(final List<String[]> headers, final String name) {
+        for (final String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    static final class Request {
+
+        final String method;
+        final String url;
+        final List<String[]> headers;
+        final byte[] body;
+
+
+        Request(final String method, final String url, final List<String[]> headers, final byte[] body) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+        }
+
+
+        static Request read(final InputStream in) throws IOException {
+
+            final String requestLine = readLine(in);
+            if (requestLine == null || requestLine.length() == 0) {
+                return null;
+            }
+
+            final String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                throw new IOException("Malformed request line " + requestLine);
+            }
+
+            final List<String[]> headers = readHeaders(in);
+
+            final byte[] body;
+            final String contentLength = header(headers, "Content-Length");
+            if ("chunked".equalsIgnoreCase(header(headers, "Transfer-Encoding"))) {
+                body = readChunked(in);
+            } else if (contentLength != null) {
+                body = new byte[Integer.parseInt(contentLength.trim())];
+                int read = 0;
+                while (read < body.length) {
+                    final int n = in.read(body, read, body.length - read);
+                    if (n == -1) {
+                        throw new IOException("Request body ended early");
+                    }
+                    read += n;
+                }
+            } else {
+                body = new byte[0];
+            }
+
+            return new Request(parts[0].toUpperCase(Locale.ENGLISH), parts[1], headers, body);
+        }
+
+
+        private static byte[] readChunked(final InputStream in) throws IOException {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            String sizeLine = readLine(in);
+            while (sizeLine != null) {
+                final int semicolon = sizeLine.indexOf(';');
+                final int size = Integer.parseInt(
+                        (semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+                if (size == 0) {
+                    readHeaders(in);
+                    break;
+                }
+                for (int i = 0; i < size; i++) {
+                    final int c = in.read();
+                    if (c == -1) {
+                        throw new IOException("Chunked request body ended early");
+                    }
+                    buf.write(c);
+                }
+                readLine(in);
+                sizeLine = readLine(in);
+            }
+            return buf.toByteArray();
+        }
+
+
+        /**
+         * @return the name the response to this request is recorded under
+         */
+        String key() {
+            return sha1((this.method + " " + this.url + " " + sha1(this.body)).getBytes());
+        }
+    }
+
+    static final class Response {
+
+        final int status;
+        final String reason;
+        final List<String[]> headers;
+        final byte[] body;
+
+
+        Response(final int status, final String reason, final List<String[]> headers, final byte[] body) {
+            this.status = status;
+            this.reason = reason == null ? "" : reason;
+            this.headers = headers;
+            this.body = body;
+        }
+
+
+        static Response error(final int status, final String reason, final String message) {
+            final List<String[]> headers = new ArrayList<String[]>();
+            headers.add(new String[] { "Content-Type", "text/plain" });
+            return new Response(status, reason, headers, String.valueOf(message).getBytes());
+        }
+
+
+        static Response load(final File file) throws IOException {
+
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                String statusLine = readLine(in);
+                // the request it was recorded for
+                while (statusLine != null && statusLine.startsWith("#")) {
+                    statusLine = readLine(in);
+                }
+                if (statusLine == null) {
+                    throw new IOException("Empty recording " + file);
+                }
+
+                final String[] parts = statusLine.split(" ", 3);
+                final List<String[]> headers = readHeaders(in);
+                return new Response(Integer.parseInt(parts[1]), parts.length > 2 ? parts[2] : "", headers,
+                        readFully(in));
+            } finally {
+                in.close();
+            }
+        }
+
+
+        void save(final File file, final Request request) throws IOException {
+
+            final File parent = file.getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+
+            // written aside and moved into place so a reader never sees half
+            final File temp = new File(parent, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(("# " + request.method + " " + request.url + CRLF).getBytes("ISO-8859-1"));
+                writeHead(out, false);
+                out.write(this.body);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                    throw new IOException("Unable to save recording " + file);
+                }
+            }
+        }
+
+
+        void write(final OutputStream out) throws IOException {
+            writeHead(out, true);
+            out.write(this.body);
+        }
+
+
+        private void writeHead(final OutputStream out, final boolean toClient) throws IOException {
+            final StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(this.status).append(' ').append(this.reason).append(CRLF);
+            for (final String[] header : this.headers) {
+                head.append(header[0]).append(": ").append(header[1]).append(CRLF);
+            }
+            if (toClient) {
+                head.append("Content-Length: ").append(this.body.length).append(CRLF);
+                head.append("Connection: close").append(CRLF);
+            }
+            head.append(CRLF);
+            out.write(head.toString().getBytes("ISO-8859-1"));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+/**
+ * How much browser state is cleared between scenarios when a webdriver is
+ * reused, set with webdriver.reset.mode.
+ */
+public enum ResetMode {
+
+    /**
+     * Delete the cookies of the current domain.
+     */
+    COOKIES,
+
+    /**
+     * Also clear the current origin's local and session storage, IndexedDB
+     * databases and service workers, close any extra windows, switch back to
+     * the top level frame and load about:blank.
+     */
+    FULL
+}
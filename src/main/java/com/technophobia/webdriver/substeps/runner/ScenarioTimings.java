@@ -0,0 +1,375 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.Histogram;
+import com.technophobia.webdriver.util.WebDriverCommandListener;
+
+/**
+ * How long each scenario took, split into driver startup, navigation, steps
+ * and teardown, collected over the suite and written out at the end as a
+ * JSON summary of the p50, p90 and p99 scenario times with the slowest
+ * scenarios, and as CSV of every scenario, slowest first.
+ *
+ * The scenario executing on each thread is timed by the setup and tear down
+ * through the static methods; navigation time is fed in by the instrumented
+ * driver and the scenario names by the notifier. Safe for scenarios executing
+ * on parallel workers.
+ */
+public class ScenarioTimings implements IExecutionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScenarioTimings.class);
+
+    private static final ThreadLocal<Scenario> current = new ThreadLocal<Scenario>();
+
+    // the name of a scenario that has been started by the notifier before its
+    // setup has run
+    private static final ThreadLocal<String> startingName = new ThreadLocal<String>();
+
+    private static final AtomicInteger scenarioCount = new AtomicInteger();
+
+    /**
+     * Adds the time taken loading pages to whichever scenario is executing on
+     * the calling thread.
+     */
+    public static final WebDriverCommandListener NAVIGATION_TIMER = new WebDriverCommandListener() {
+        public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+                final Throwable failure) {
+            final Scenario scenario = current.get();
+            if (scenario != null && scenario.stepsStartNanos != 0 && scenario.tearDownStartNanos == 0
+                    && isNavigation(command)) {
+                scenario.navigationNanos += durationNanos;
+            }
+        }
+    };
+
+    private final ConcurrentLinkedQueue<Scenario> scenarios = new ConcurrentLinkedQueue<Scenario>();
+
+
+    /**
+     * Starts timing a scenario on the calling thread, from the beginning of
+     * its setup.
+     */
+    public static Scenario scenarioStarting() {
+        final String name = startingName.get();
+        startingName.remove();
+
+        final Scenario scenario = new Scenario(name != null ? name : "scenario " + scenarioCount.incrementAndGet(),
+                Thread.currentThread().getName());
+        current.set(scenario);
+        return scenario;
+    }
+
+
+    /**
+     * Marks the end of the calling thread's scenario setup, its steps are
+     * about to run.
+     */
+    public static void stepsStarting() {
+        final Scenario scenario = current.get();
+        if (scenario != null) {
+            scenario.stepsStartNanos = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Marks the start of the calling thread's scenario tear down.
+     */
+    public static void tearDownStarting() {
+        final Scenario scenario = current.get();
+        if (scenario != null && scenario.stepsStartNanos != 0) {
+            scenario.tearDownStartNanos = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Stops timing the calling thread's scenario.
+     *
+     * @param failed
+     *            whether the scenario failed
+     * @return the finished scenario, or null if none was started
+     */
+    public static Scenario scenarioFinished(final boolean failed) {
+        final Scenario scenario = current.get();
+        current.remove();
+        startingName.remove();
+
+        if (scenario != null) {
+            scenario.endNanos = System.nanoTime();
+            scenario.failed = failed;
+        }
+        return scenario;
+    }
+
+
+    static boolean isNavigation(final String command) {
+        return command.startsWith("Navigation.") || "WebDriver.get".equals(command);
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+
+        if (node instanceof BasicScenarioNode) {
+            // the scenario's setup may or may not have run yet
+            final Scenario scenario = current.get();
+            if (scenario != null && scenario.tearDownStartNanos == 0) {
+                scenario.name = node.getDescription();
+            } else {
+                startingName.set(node.getDescription());
+            }
+        }
+    }
+
+
+    public void onNodeFinished(final IExecutionNode node) {
+        // no op
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        // no op
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    public void record(final Scenario scenario) {
+        this.scenarios.add(scenario);
+    }
+
+
+    /**
+     * @return the scenarios recorded, slowest first
+     */
+    public List<Scenario> getScenarios() {
+        final List<Scenario> sorted = new ArrayList<Scenario>(this.scenarios);
+        Collections.sort(sorted, new Comparator<Scenario>() {
+            public int compare(final Scenario s1, final Scenario s2) {
+                final long t1 = s1.getTotalNanos();
+                final long t2 = s2.getTotalNanos();
+                return t1 > t2 ? -1 : (t1 == t2 ? s1.name.compareTo(s2.name) : 1);
+            }
+        });
+        return sorted;
+    }
+
+
+    /**
+     * Writes basePath.json and basePath.csv
+     *
+     * @param slowest
+     *            the number of the slowest scenarios to list in the summary
+     */
+    public void write(final String basePath, final int slowest) {
+
+        if (this.scenarios.isEmpty()) {
+            return;
+        }
+
+        final File json = new File(basePath + ".json");
+        final File csv = new File(basePath + ".csv");
+        try {
+            final List<Scenario> sorted = getScenarios();
+            writeJson(json, sorted, slowest);
+            writeCsv(csv, sorted);
+            LOG.info("Scenario timings written to {} and {}", json.getAbsolutePath(), csv.getAbsolutePath());
+        } catch (final IOException e) {
+            LOG.warn("Failed to write scenario timings to " + basePath, e);
+        }
+    }
+
+
+    void writeJson(final File file, final List<Scenario> sorted, final int slowest) throws IOException {
+
+        final Histogram total = new Histogram();
+        final Histogram startup = new Histogram();
+        final Histogram navigation = new Histogram();
+        final Histogram steps = new Histogram();
+        final Histogram tearDown = new Histogram();
+        int failures = 0;
+
+        for (final Scenario scenario : sorted) {
+            total.record(scenario.getTotalNanos() / 1000);
+            startup.record(scenario.getStartupNanos() / 1000);
+            navigation.record(scenario.getNavigationNanos() / 1000);
+            steps.record(scenario.getStepNanos() / 1000);
+            tearDown.record(scenario.getTearDownNanos() / 1000);
+            if (scenario.failed) {
+                failures++;
+            }
+        }
+
+        final Writer writer = StepStatistics.open(file);
+        try {
+            writer.write(String.format(Locale.UK, "{\"scenarios\":%d,\"failures\":%d,", Integer.valueOf(sorted.size()),
+                    Integer.valueOf(failures)));
+            writer.write("\n\"totalMillis\":" + summary(total) + ",");
+            writer.write("\n\"startupMillis\":" + summary(startup) + ",");
+            writer.write("\n\"navigationMillis\":" + summary(navigation) + ",");
+            writer.write("\n\"stepMillis\":" + summary(steps) + ",");
+            writer.write("\n\"tearDownMillis\":" + summary(tearDown) + ",");
+            writer.write("\n\"slowest\":[");
+
+            for (int i = 0; i < Math.min(slowest, sorted.size()); i++) {
+                final Scenario scenario = sorted.get(i);
+                if (i > 0) {
+                    writer.write(",");
+                }
+                writer.write(String.format(Locale.UK, "\n{\"scenario\":\"%s\",\"thread\":\"%s\",\"failed\":%s,"
+                        + "\"totalMillis\":%.3f,\"startupMillis\":%.3f,\"navigationMillis\":%.3f,"
+                        + "\"stepMillis\":%.3f,\"tearDownMillis\":%.3f}", StepStatistics.escape(scenario.name),
+                        StepStatistics.escape(scenario.thread), Boolean.valueOf(scenario.failed),
+                        millis(scenario.getTotalNanos()), millis(scenario.getStartupNanos()),
+                        millis(scenario.getNavigationNanos()), millis(scenario.getStepNanos()),
+                        millis(scenario.getTearDownNanos())));
+            }
+            writer.write("\n]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    void writeCsv(final File file, final List<Scenario> sorted) throws IOException {
+
+        final Writer writer = StepStatistics.open(file);
+        try {
+            writer.write("scenario,thread,failed,total_ms,startup_ms,navigation_ms,steps_ms,teardown_ms\n");
+            for (final Scenario scenario : sorted) {
+                writer.write(String.format(Locale.UK, "\"%s\",\"%s\",%s,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                        scenario.name.replace("\"", "\"\""), scenario.thread.replace("\"", "\"\""),
+                        Boolean.valueOf(scenario.failed), millis(scenario.getTotalNanos()),
+                        millis(scenario.getStartupNanos()), millis(scenario.getNavigationNanos()),
+                        millis(scenario.getStepNanos()), millis(scenario.getTearDownNanos())));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    private static String summary(final Histogram micros) {
+        return String.format(Locale.UK, "{\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                Double.valueOf(micros.getMean() / 1000.0), Double.valueOf(micros.getValueAtPercentile(50) / 1000.0),
+                Double.valueOf(micros.getValueAtPercentile(90) / 1000.0),
+                Double.valueOf(micros.getValueAtPercentile(99) / 1000.0), Double.valueOf(micros.getMax() / 1000.0));
+    }
+
+
+    private static Double millis(final long nanos) {
+        return Double.valueOf(nanos / 1000000.0);
+    }
+
+    /**
+     * The timings of a single scenario
+     */
+    public static final class Scenario {
+
+        private String name;
+        private final String thread;
+        private final long startNanos;
+        private long stepsStartNanos = 0;
+        private long navigationNanos = 0;
+        private long tearDownStartNanos = 0;
+        private long endNanos = 0;
+        private boolean failed = false;
+
+
+        Scenario(final String name, final String thread) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = System.nanoTime();
+        }
+
+
+        public String getName() {
+            return this.name;
+        }
+
+
+        public String getThread() {
+            return this.thread;
+        }
+
+
+        public boolean isFailed() {
+            return this.failed;
+        }
+
+
+        public long getTotalNanos() {
+            return (this.endNanos != 0 ? this.endNanos : System.nanoTime()) - this.startNanos;
+        }
+
+
+        /**
+         * @return the time the setup took, mostly spent starting the driver
+         */
+        public long getStartupNanos() {
+            return this.stepsStartNanos != 0 ? this.stepsStartNanos - this.startNanos : getTotalNanos();
+        }
+
+
+        public long getNavigationNanos() {
+            return this.navigationNanos;
+        }
+
+
+        /**
+         * @return the time the steps took, apart from loading pages
+         */
+        public long getStepNanos() {
+            if (this.stepsStartNanos == 0) {
+                return 0;
+            }
+            final long stepsEnd = this.tearDownStartNanos != 0 ? this.tearDownStartNanos
+                    : (this.endNanos != 0 ? this.endNanos : System.nanoTime());
+            return Math.max(0, stepsEnd - this.stepsStartNanos - this.navigationNanos);
+        }
+
+
+        public long getTearDownNanos() {
+            return this.tearDownStartNanos != 0 ? (this.endNanos != 0 ? this.endNanos : System.nanoTime())
+                    - this.tearDownStartNanos : 0;
+        }
+    }
+}
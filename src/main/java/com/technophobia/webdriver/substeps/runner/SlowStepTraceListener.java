@@ -0,0 +1,267 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.technophobia.substeps.execution.node.BasicScenarioNode;
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.WebDriverCommandListener;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+/**
+ * Writes out what the browser was doing during each step that takes longer
+ * than webdriver.slow.step.trace.threshold.millis, so that a slow step can be
+ * put down to the page or to the WebDriver commands the step issued. For
+ * CHROME and CHROME_HEADLESS this is the devtools timeline from the driver's
+ * performance log, for other browsers the page's performance entries. Each
+ * trace is written to its own file, named after the step, in a directory
+ * named after the scenario, along with the number of commands the step issued
+ * and the time they took.
+ */
+public class SlowStepTraceListener implements IExecutionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowStepTraceListener.class);
+
+    private static final int MAX_NAME_LENGTH = 80;
+
+    // the entries overlapping the last arguments[0] ms, as a json array
+    private static final String ENTRIES_SCRIPT = "var p = window.performance;"
+            + "if (!p || !p.getEntries || !p.now) { return null; }"
+            + "var since = p.now() - arguments[0];"
+            + "var entries = p.getEntries();"
+            + "var out = [];"
+            + "for (var i = 0; i < entries.length; i++) {"
+            + "  var e = entries[i];"
+            + "  if (e.startTime + e.duration >= since) {"
+            + "    out.push({ name: e.name, entryType: e.entryType, startTime: e.startTime, duration: e.duration,"
+            + "      transferSize: e.transferSize });"
+            + "  }"
+            + "}"
+            + "return JSON.stringify(out);";
+
+    private static final ThreadLocal<StepTrace> current = new ThreadLocal<StepTrace>();
+    private static final ThreadLocal<String> scenario = new ThreadLocal<String>();
+
+    /**
+     * Times the commands issued by whichever step is executing on the calling
+     * thread.
+     */
+    public static final WebDriverCommandListener COMMAND_TIMER = new WebDriverCommandListener() {
+        public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+                final Throwable failure) {
+            final StepTrace trace = current.get();
+            if (trace != null) {
+                trace.commands++;
+                trace.commandNanos += durationNanos;
+            }
+        }
+    };
+
+    private final Supplier<WebDriverContext> webDriverContextSupplier;
+    private final long thresholdNanos;
+    private final File dir;
+    private final AtomicInteger traces = new AtomicInteger();
+
+
+    public SlowStepTraceListener(final Supplier<WebDriverContext> webDriverContextSupplier, final long thresholdMillis,
+            final File dir) {
+        this.webDriverContextSupplier = webDriverContextSupplier;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.dir = dir;
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+
+        if (node instanceof BasicScenarioNode) {
+            scenario.set(node.getDescription());
+        } else if (node instanceof StepImplementationNode) {
+            current.set(new StepTrace((StepImplementationNode) node));
+        }
+    }
+
+
+    public void onNodeFinished(final IExecutionNode node) {
+        if (node instanceof StepImplementationNode) {
+            finish(false);
+        }
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        if (node instanceof StepImplementationNode) {
+            finish(true);
+        }
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    private void finish(final boolean failed) {
+
+        final StepTrace trace = current.get();
+        current.remove();
+
+        final WebDriverContext webDriverContext = this.webDriverContextSupplier.get();
+        if (trace == null || webDriverContext == null || webDriverContext.isShutdown()) {
+            return;
+        }
+
+        final long elapsedNanos = System.nanoTime() - trace.startNanos;
+        final WebDriver webDriver = webDriverContext.getWebDriver();
+
+        try {
+            if (isChrome(webDriverContext.getDriverType())) {
+                // drained after every step, otherwise the driver's buffer
+                // fills with the timelines of the fast ones
+                final List<LogEntry> timeline = webDriver.manage().logs().get(LogType.PERFORMANCE).getAll();
+                if (elapsedNanos >= this.thresholdNanos) {
+                    write(trace, elapsedNanos, failed, "timeline", timelineJson(timeline, trace.startMillis));
+                }
+            } else if (elapsedNanos >= this.thresholdNanos) {
+                write(trace, elapsedNanos, failed, "performanceEntries", performanceEntries(webDriver, elapsedNanos));
+            }
+        } catch (final WebDriverException e) {
+            LOG.warn("Failed to trace slow step " + trace.description + ": " + e.getMessage());
+        }
+    }
+
+
+    private static boolean isChrome(final DriverType driverType) {
+        return driverType == DefaultDriverType.CHROME || driverType == DefaultDriverType.CHROME_HEADLESS;
+    }
+
+
+    static String timelineJson(final List<LogEntry> timeline, final long sinceMillis) {
+
+        final StringBuilder json = new StringBuilder("[");
+        for (final LogEntry entry : timeline) {
+            if (entry.getTimestamp() >= sinceMillis) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                // each message is devtools json already
+                json.append("\n{\"timestamp\":").append(entry.getTimestamp()).append(",\"message\":")
+                        .append(entry.getMessage()).append('}');
+            }
+        }
+        return json.append("\n]").toString();
+    }
+
+
+    static String performanceEntries(final WebDriver webDriver, final long elapsedNanos) {
+
+        if (webDriver instanceof JavascriptExecutor) {
+            try {
+                final Object entries = ((JavascriptExecutor) webDriver).executeScript(ENTRIES_SCRIPT,
+                        Long.valueOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+                if (entries instanceof String) {
+                    return (String) entries;
+                }
+            } catch (final WebDriverException e) {
+                LOG.debug("Unable to read the performance entries: " + e.getMessage());
+            } catch (final UnsupportedOperationException e) {
+                // e.g. HtmlUnit with javascript disabled, the slow step is
+                // still worth recording
+                LOG.debug("Unable to read the performance entries: " + e.getMessage());
+            }
+        }
+        return "[]";
+    }
+
+
+    private void write(final StepTrace trace, final long elapsedNanos, final boolean failed, final String kind,
+            final String entries) {
+
+        final String scenarioName = scenario.get() != null ? scenario.get() : "no scenario";
+        final File scenarioDir = new File(this.dir, fileName(scenarioName));
+        final File file = new File(scenarioDir, String.format("%04d-%s.json",
+                Integer.valueOf(this.traces.incrementAndGet()), fileName(trace.description)));
+
+        try {
+            if (!scenarioDir.exists() && !scenarioDir.mkdirs()) {
+                throw new IOException("Unable to create " + scenarioDir);
+            }
+
+            final Writer writer = new FileWriter(file);
+            try {
+                writer.write(String.format(Locale.UK, "{\"scenario\":\"%s\",\"step\":\"%s\",\"method\":\"%s\","
+                        + "\"failed\":%s,\"elapsedMillis\":%.3f,\"webDriverCommands\":%d,"
+                        + "\"webDriverCommandMillis\":%.3f,\n\"%s\":", StepStatistics.escape(scenarioName),
+                        StepStatistics.escape(trace.description), StepStatistics.escape(trace.method),
+                        Boolean.valueOf(failed), Double.valueOf(elapsedNanos / 1000000.0),
+                        Integer.valueOf(trace.commands), Double.valueOf(trace.commandNanos / 1000000.0), kind));
+                writer.write(entries);
+                writer.write("}\n");
+            } finally {
+                writer.close();
+            }
+            LOG.info("Step {} took {} ms, browser trace written to {}", new Object[] { trace.description,
+                    Long.valueOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)), file.getAbsolutePath() });
+
+        } catch (final IOException e) {
+            LOG.warn("Failed to write slow step trace " + file, e);
+        }
+    }
+
+
+    static String fileName(final String name) {
+        // no separators, and nothing that could be . or ..
+        final String safe = name.replaceAll("[^A-Za-z0-9._-]+", "_").replaceFirst("^\\.", "_");
+        return safe.length() > MAX_NAME_LENGTH ? safe.substring(0, MAX_NAME_LENGTH) : safe;
+    }
+
+    private static final class StepTrace {
+
+        private final String description;
+        private final String method;
+        private final long startNanos = System.nanoTime();
+        private final long startMillis = System.currentTimeMillis();
+        private int commands = 0;
+        private long commandNanos = 0;
+
+
+        StepTrace(final StepImplementationNode node) {
+            this.description = node.getDescription();
+            this.method = StepTimingListener.stepName(node);
+        }
+    }
+}
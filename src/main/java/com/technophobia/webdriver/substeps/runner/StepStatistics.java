@@ -0,0 +1,255 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.util.Histogram;
+
+/**
+ * Latency, WebDriver command and wait statistics per step implementation
+ * method, collected over the suite and written out as JSON and CSV at the end.
+ * Safe for steps executing on parallel workers.
+ */
+public class StepStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StepStatistics.class);
+
+    private final ConcurrentMap<String, Step> steps = new ConcurrentHashMap<String, Step>();
+
+
+    /**
+     * @param step
+     *            the step implementation method
+     * @param elapsedNanos
+     *            wall clock time the step took
+     * @param commands
+     *            the number of WebDriver commands it issued
+     * @param waitNanos
+     *            time it spent waiting for elements or conditions
+     * @param retries
+     *            the number of times it retried something
+     * @param failed
+     *            whether the step failed
+     */
+    public void record(final String step, final long elapsedNanos, final int commands, final long waitNanos,
+            final int retries, final boolean failed) {
+
+        Step stats = this.steps.get(step);
+        if (stats == null) {
+            final Step created = new Step(step);
+            stats = this.steps.putIfAbsent(step, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+
+        stats.latencyMicros.record(elapsedNanos / 1000);
+        stats.commands.record(commands);
+        stats.waitNanos.addAndGet(waitNanos);
+        stats.retries.addAndGet(retries);
+        if (failed) {
+            stats.failures.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return the steps recorded, those taking the most time in total first
+     */
+    public List<Step> getSteps() {
+        final List<Step> sorted = new ArrayList<Step>(this.steps.values());
+        Collections.sort(sorted, new Comparator<Step>() {
+            public int compare(final Step s1, final Step s2) {
+                final long t1 = s1.latencyMicros.getTotal();
+                final long t2 = s2.latencyMicros.getTotal();
+                return t1 > t2 ? -1 : (t1 == t2 ? s1.name.compareTo(s2.name) : 1);
+            }
+        });
+        return sorted;
+    }
+
+
+    /**
+     * Writes basePath.json and basePath.csv
+     */
+    public void write(final String basePath) {
+
+        if (this.steps.isEmpty()) {
+            return;
+        }
+
+        final File json = new File(basePath + ".json");
+        final File csv = new File(basePath + ".csv");
+        try {
+            writeJson(json);
+            writeCsv(csv);
+            LOG.info("Step statistics written to {} and {}", json.getAbsolutePath(), csv.getAbsolutePath());
+        } catch (final IOException e) {
+            LOG.warn("Failed to write step statistics to " + basePath, e);
+        }
+    }
+
+
+    void writeJson(final File file) throws IOException {
+
+        final Writer writer = open(file);
+        try {
+            writer.write("{\"steps\":[");
+            boolean first = true;
+            for (final Step step : getSteps()) {
+                if (!first) {
+                    writer.write(",");
+                }
+                first = false;
+
+                final Histogram latency = step.latencyMicros;
+                writer.write(String.format(Locale.UK, "\n{\"step\":\"%s\",\"count\":%d,\"failures\":%d,"
+                        + "\"latencyMillis\":{\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f,\"total\":%.3f},"
+                        + "\"commands\":{\"total\":%d,\"mean\":%.2f,\"p90\":%d,\"max\":%d},"
+                        + "\"waitMillis\":{\"total\":%.3f},\"retries\":%d}", escape(step.name),
+                        Long.valueOf(latency.getCount()),
+                        Long.valueOf(step.failures.get()), millis(latency.getMean()),
+                        millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                        millis(latency.getValueAtPercentile(99)), millis(latency.getMax()),
+                        millis(latency.getTotal()), Long.valueOf(step.commands.getTotal()),
+                        Double.valueOf(step.commands.getMean()), Long.valueOf(step.commands.getValueAtPercentile(90)),
+                        Long.valueOf(step.commands.getMax()), Double.valueOf(step.waitNanos.get() / 1000000.0),
+                        Long.valueOf(step.retries.get())));
+            }
+            writer.write("\n]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    void writeCsv(final File file) throws IOException {
+
+        final Writer writer = open(file);
+        try {
+            writer.write("step,count,failures,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,total_ms,commands_total,commands_mean,commands_p90,wait_total_ms,retries\n");
+            for (final Step step : getSteps()) {
+                final Histogram latency = step.latencyMicros;
+                writer.write(String.format(Locale.UK, "\"%s\",%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%.2f,%d,%.3f,%d\n",
+                        step.name.replace("\"", "\"\""), Long.valueOf(latency.getCount()),
+                        Long.valueOf(step.failures.get()), millis(latency.getMean()),
+                        millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                        millis(latency.getValueAtPercentile(99)), millis(latency.getMax()),
+                        millis(latency.getTotal()), Long.valueOf(step.commands.getTotal()),
+                        Double.valueOf(step.commands.getMean()), Long.valueOf(step.commands.getValueAtPercentile(90)),
+                        Double.valueOf(step.waitNanos.get() / 1000000.0), Long.valueOf(step.retries.get())));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+
+    static Writer open(final File file) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        return new FileWriter(file);
+    }
+
+
+    private static Double millis(final double micros) {
+        return Double.valueOf(micros / 1000.0);
+    }
+
+
+    static String escape(final String s) {
+        final StringBuilder buf = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf.append('\\').append(c);
+            } else if (c < ' ') {
+                buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Statistics for a single step implementation method
+     */
+    public static final class Step {
+
+        private final String name;
+        private final Histogram latencyMicros = new Histogram();
+        private final Histogram commands = new Histogram();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+
+        Step(final String name) {
+            this.name = name;
+        }
+
+
+        public String getName() {
+            return this.name;
+        }
+
+
+        public Histogram getLatencyMicros() {
+            return this.latencyMicros;
+        }
+
+
+        public Histogram getCommands() {
+            return this.commands;
+        }
+
+
+        public long getWaitNanos() {
+            return this.waitNanos.get();
+        }
+
+
+        public long getRetries() {
+            return this.retries.get();
+        }
+
+
+        public long getFailures() {
+            return this.failures.get();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import com.technophobia.substeps.execution.node.IExecutionNode;
+import com.technophobia.substeps.execution.node.StepImplementationNode;
+import com.technophobia.substeps.runner.IExecutionListener;
+import com.technophobia.webdriver.util.StepMetrics;
+
+/**
+ * Times each step implementation as it executes and records it, along with the
+ * WebDriver commands it issued and the time it spent waiting, against the
+ * step implementation method in the StepStatistics.
+ */
+public class StepTimingListener implements IExecutionListener {
+
+    private final StepStatistics statistics;
+
+
+    public StepTimingListener(final StepStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+
+    public void onNodeStarted(final IExecutionNode node) {
+        if (node instanceof StepImplementationNode) {
+            StepMetrics.start(node.getDescription());
+        }
+    }
+
+
+    public void onNodeFinished(final IExecutionNode node) {
+        if (node instanceof StepImplementationNode) {
+            finish((StepImplementationNode) node, false);
+        }
+    }
+
+
+    public void onNodeFailed(final IExecutionNode node, final Throwable cause) {
+        if (node instanceof StepImplementationNode) {
+            finish((StepImplementationNode) node, true);
+        }
+    }
+
+
+    public void onNodeIgnored(final IExecutionNode node) {
+        // no op
+    }
+
+
+    private void finish(final StepImplementationNode node, final boolean failed) {
+
+        final StepMetrics metrics = StepMetrics.finish();
+
+        if (metrics != null) {
+            this.statistics.record(stepName(node), metrics.getElapsedNanos(), metrics.getCommands(),
+                    metrics.getWaitNanos(), metrics.getRetries(), failed);
+        }
+    }
+
+
+    static String stepName(final StepImplementationNode node) {
+        return node.getTargetClass().getSimpleName() + "." + node.getTargetMethod().getName();
+    }
+}
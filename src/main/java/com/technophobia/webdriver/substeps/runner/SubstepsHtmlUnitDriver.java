@@ -0,0 +1,122 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitWebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import com.technophobia.webdriver.util.UrlBlockList;
+import com.technophobia.webdriver.util.XPathLocatorEngine;
+
+/**
+ * The HtmlUnitDriver created for driver.type=HTMLUNIT. As the DOM is in the
+ * same JVM, the WebDriverSubstepsBy XPath locators are evaluated directly
+ * against it, only the nodes that match are wrapped as WebElements.
+ */
+public class SubstepsHtmlUnitDriver extends HtmlUnitDriver implements XPathLocatorEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubstepsHtmlUnitDriver.class);
+
+    public SubstepsHtmlUnitDriver(final BrowserVersion version) {
+        super(version);
+    }
+
+
+    /**
+     * Answers requests for the urls with an empty response rather than
+     * fetching them.
+     */
+    public void blockUrls(final UrlBlockList blockList) {
+
+        new WebConnectionWrapper(getWebClient()) {
+
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+
+                final URL url = request.getUrl();
+                if (blockList.isBlocked(url.toExternalForm(), url.getHost())) {
+                    LOG.debug("Blocked {}", url);
+                    return new WebResponse(new WebResponseData(new byte[0], 204, "No Content",
+                            Collections.<NameValuePair> emptyList()), request, 0);
+                }
+                return super.getResponse(request);
+            }
+        };
+    }
+
+
+    public List<WebElement> findElementsByXPath(final SearchContext context, final String xpath) {
+
+        final Page page = lastPage();
+        if (!(page instanceof SgmlPage)) {
+            return null;
+        }
+
+        final DomNode root;
+        if (context == this) {
+            root = (SgmlPage) page;
+        } else if (context instanceof HtmlUnitWebElement && ((HtmlUnitWebElement) context).getWrappedDriver() == this) {
+            root = ((HtmlUnitWebElement) context).getElement();
+
+            // leave stale elements to the driver to report
+            if (root.getPage() != page) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        final List<?> nodes;
+        try {
+            nodes = root.getByXPath(xpath);
+        } catch (final RuntimeException e) {
+            // let the driver report the error in its usual way
+            LOG.debug("Failed to evaluate " + xpath + " in process", e);
+            return null;
+        }
+
+        final List<WebElement> elements = new ArrayList<WebElement>(nodes.size());
+        for (final Object node : nodes) {
+            if (node instanceof HtmlElement) {
+                elements.add(newHtmlUnitWebElement((HtmlElement) node));
+            }
+        }
+        return elements;
+    }
+}
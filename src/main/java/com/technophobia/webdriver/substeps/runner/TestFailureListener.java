@@ -24,6 +24,9 @@ import com.technophobia.substeps.runner.MutableSupplier;
 import com.technophobia.webdriver.util.WebDriverContext;
 
 /**
+ * Marks the WebDriverContext as failed when a node fails. Notifications arrive
+ * on the thread executing the node, so the supplier resolves the context of
+ * the worker that failed.
  * 
  * @author imoore
  * 
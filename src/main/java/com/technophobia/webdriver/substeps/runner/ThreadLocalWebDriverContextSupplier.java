@@ -0,0 +1,45 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.substeps.runner;
+
+import com.technophobia.substeps.runner.MutableSupplier;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+/**
+ * Holds a separate WebDriverContext for each thread executing scenarios, so
+ * that features running on parallel workers each drive their own browser.
+ */
+final class ThreadLocalWebDriverContextSupplier implements MutableSupplier<WebDriverContext> {
+
+    private final ThreadLocal<WebDriverContext> webDriverContext = new ThreadLocal<WebDriverContext>();
+
+
+    public WebDriverContext get() {
+        return this.webDriverContext.get();
+    }
+
+
+    public void set(final WebDriverContext context) {
+        if (context == null) {
+            this.webDriverContext.remove();
+        } else {
+            this.webDriverContext.set(context);
+        }
+    }
+}
@@ -33,4 +33,9 @@ public class WebDriverSubstepsException extends RuntimeException {
         super(msg);
 
     }
+
+
+    public WebDriverSubstepsException(final String msg, final Throwable cause) {
+        super(msg, cause);
+    }
 }
@@ -6,6 +6,9 @@ package com.technophobia.webdriver.substeps.runner;
  * Time: 21:58
  */
 public interface WebdriverSubstepsConfiguration {
+
+    static final String CONFIGURATION_KEY = "webdriverSubstepsConfiguration";
+
     String baseURL();
 
     DefaultDriverType driverType();
@@ -35,4 +38,98 @@ public interface WebdriverSubstepsConfiguration {
     int getNetworkProxyPort();
     
     Class<? extends WebDriverFactory> getWebDriverFactoryClass();
+
+    int webDriverPoolSize();
+
+    long webDriverPoolMaxAgeSecs();
+
+    int webDriverPoolMaxUses();
+
+    int parallelWorkers();
+
+    boolean stepMetricsEnabled();
+
+    String stepMetricsFile();
+
+    boolean traceCommands();
+
+    String traceCommandsDir();
+
+    ResetMode resetMode();
+
+    String timeoutDiagnosticsDir();
+
+    int timeoutDiagnosticsMaxBytes();
+
+    boolean timeoutDiagnosticsScreenshot();
+
+    String screenshotsDir();
+
+    int screenshotsMaxWidth();
+
+    int screenshotsQueueSize();
+
+    boolean screenshotsEveryStep();
+
+    boolean screenshotsOnFailure();
+
+    String browserLogsFile();
+
+    boolean browserLogsJson();
+
+    int browserLogsBufferSize();
+
+    String remoteUrl();
+
+    String remoteBrowser();
+
+    int remotePoolMaxTotal();
+
+    int remotePoolMaxPerRoute();
+
+    int remoteKeepAliveSecs();
+
+    boolean remoteCompression();
+
+    int remoteConnectTimeoutSecs();
+
+    int remoteSocketTimeoutSecs();
+
+    String pageLoadStrategy();
+
+    String blockUrls();
+
+    RecordingProxy.Mode recordingProxyMode();
+
+    String recordingProxyDir();
+
+    int recordingProxyPort();
+
+    boolean lookupCache();
+
+    long retryInitialDelayMillis();
+
+    long retryMaxDelayMillis();
+
+    int retryMaxAttempts();
+
+    String windowSize();
+
+    boolean headlessDisableImages();
+
+    long scenarioWarnThresholdMillis();
+
+    long scenarioFailThresholdMillis();
+
+    boolean scenarioTimingsEnabled();
+
+    String scenarioTimingsFile();
+
+    int scenarioTimingsSlowest();
+
+    String pagePerformanceFile();
+
+    long slowStepTraceThresholdMillis();
+
+    String slowStepTraceDir();
 }
@@ -27,6 +27,14 @@ import org.slf4j.LoggerFactory;
 
 import com.technophobia.substeps.model.Configuration;
 
+/**
+ * The configuration in the webdriver substeps properties. Every property is
+ * read and checked when the class is first used, not when its value is first
+ * asked for. A missing or malformed property then fails the run before a
+ * browser is started, rather than part way through on whichever step first
+ * needs it. The accessors, some called for every step or command, are then
+ * plain field reads.
+ */
 public enum WebdriverSubstepsPropertiesConfiguration implements WebdriverSubstepsConfiguration {
 
     INSTANCE; // uninstantiable
@@ -46,6 +54,53 @@ public enum WebdriverSubstepsPropertiesConfiguration implements WebdriverSubstep
     private final boolean visualWebdriverCloseOnFail;
     private final String networkProxyHost;
     private final int networkProxyPort;
+    private final int webDriverPoolSize;
+    private final long webDriverPoolMaxAgeSecs;
+    private final int webDriverPoolMaxUses;
+    private final int parallelWorkers;
+    private final boolean stepMetricsEnabled;
+    private final String stepMetricsFile;
+    private final boolean traceCommands;
+    private final String traceCommandsDir;
+    private final ResetMode resetMode;
+    private final String timeoutDiagnosticsDir;
+    private final int timeoutDiagnosticsMaxBytes;
+    private final boolean timeoutDiagnosticsScreenshot;
+    private final String screenshotsDir;
+    private final int screenshotsMaxWidth;
+    private final int screenshotsQueueSize;
+    private final boolean screenshotsEveryStep;
+    private final boolean screenshotsOnFailure;
+    private final String browserLogsFile;
+    private final boolean browserLogsJson;
+    private final int browserLogsBufferSize;
+    private final String remoteUrl;
+    private final String remoteBrowser;
+    private final int remotePoolMaxTotal;
+    private final int remotePoolMaxPerRoute;
+    private final int remoteKeepAliveSecs;
+    private final boolean remoteCompression;
+    private final int remoteConnectTimeoutSecs;
+    private final int remoteSocketTimeoutSecs;
+    private final String pageLoadStrategy;
+    private final String blockUrls;
+    private final RecordingProxy.Mode recordingProxyMode;
+    private final String recordingProxyDir;
+    private final int recordingProxyPort;
+    private final boolean lookupCache;
+    private final long retryInitialDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final int retryMaxAttempts;
+    private final String windowSize;
+    private final boolean headlessDisableImages;
+    private final long scenarioWarnThresholdMillis;
+    private final long scenarioFailThresholdMillis;
+    private final boolean scenarioTimingsEnabled;
+    private final String scenarioTimingsFile;
+    private final int scenarioTimingsSlowest;
+    private final String pagePerformanceFile;
+    private final long slowStepTraceThresholdMillis;
+    private final String slowStepTraceDir;
 
     private long defaultWebDriverTimeoutSecs;
 
@@ -67,6 +122,7 @@ public enum WebdriverSubstepsPropertiesConfiguration implements WebdriverSubstep
         visualWebdriverCloseOnFail = Configuration.INSTANCE.getBoolean("visual.webdriver.close.on.fail");
 
         reuseWebdriver = Configuration.INSTANCE.getBoolean("webdriver.reuse");
+        resetMode = ResetMode.valueOf(Configuration.INSTANCE.getString("webdriver.reset.mode").toUpperCase());
 
         defaultWebDriverTimeoutSecs = Configuration.INSTANCE.getInt("default.webdriver.timeout.secs");
 
@@ -77,6 +133,69 @@ public enum WebdriverSubstepsPropertiesConfiguration implements WebdriverSubstep
         networkProxyHost = Configuration.INSTANCE.getString("network.proxy.host");
         networkProxyPort = Configuration.INSTANCE.getInt("network.proxy.port");
 
+        webDriverPoolSize = Configuration.INSTANCE.getInt("webdriver.pool.size");
+        webDriverPoolMaxAgeSecs = Configuration.INSTANCE.getInt("webdriver.pool.max.age.secs");
+        webDriverPoolMaxUses = Configuration.INSTANCE.getInt("webdriver.pool.max.uses");
+
+        parallelWorkers = Configuration.INSTANCE.getInt("webdriver.parallel.workers");
+
+        stepMetricsEnabled = Configuration.INSTANCE.getBoolean("webdriver.step.metrics");
+        stepMetricsFile = Configuration.INSTANCE.getString("webdriver.step.metrics.file");
+
+        traceCommands = Configuration.INSTANCE.getBoolean("webdriver.trace.commands");
+        traceCommandsDir = Configuration.INSTANCE.getString("webdriver.trace.commands.dir");
+
+        timeoutDiagnosticsDir = Configuration.INSTANCE.getString("webdriver.timeout.diagnostics.dir");
+        timeoutDiagnosticsMaxBytes = Configuration.INSTANCE.getInt("webdriver.timeout.diagnostics.max.bytes");
+        timeoutDiagnosticsScreenshot = Configuration.INSTANCE.getBoolean("webdriver.timeout.diagnostics.screenshot");
+
+        screenshotsDir = Configuration.INSTANCE.getString("webdriver.screenshots.dir");
+        screenshotsMaxWidth = Configuration.INSTANCE.getInt("webdriver.screenshots.max.width");
+        screenshotsQueueSize = Configuration.INSTANCE.getInt("webdriver.screenshots.queue.size");
+        screenshotsEveryStep = Configuration.INSTANCE.getBoolean("webdriver.screenshots.every.step");
+        screenshotsOnFailure = Configuration.INSTANCE.getBoolean("webdriver.screenshots.on.failure");
+
+        browserLogsFile = Configuration.INSTANCE.getString("webdriver.browser.logs.file");
+        browserLogsJson = Configuration.INSTANCE.getBoolean("webdriver.browser.logs.json");
+        browserLogsBufferSize = Configuration.INSTANCE.getInt("webdriver.browser.logs.buffer.size");
+
+        remoteUrl = Configuration.INSTANCE.getString("webdriver.remote.url");
+        remoteBrowser = Configuration.INSTANCE.getString("webdriver.remote.browser");
+        remotePoolMaxTotal = Configuration.INSTANCE.getInt("webdriver.remote.pool.max.total");
+        remotePoolMaxPerRoute = Configuration.INSTANCE.getInt("webdriver.remote.pool.max.per.route");
+        remoteKeepAliveSecs = Configuration.INSTANCE.getInt("webdriver.remote.keep.alive.secs");
+        remoteCompression = Configuration.INSTANCE.getBoolean("webdriver.remote.compression");
+        remoteConnectTimeoutSecs = Configuration.INSTANCE.getInt("webdriver.remote.connect.timeout.secs");
+        remoteSocketTimeoutSecs = Configuration.INSTANCE.getInt("webdriver.remote.socket.timeout.secs");
+
+        pageLoadStrategy = Configuration.INSTANCE.getString("webdriver.page.load.strategy").toLowerCase();
+        blockUrls = Configuration.INSTANCE.getString("webdriver.block.urls");
+
+        recordingProxyMode = RecordingProxy.Mode.valueOf(Configuration.INSTANCE.getString("webdriver.recording.proxy")
+                .toUpperCase());
+        recordingProxyDir = Configuration.INSTANCE.getString("webdriver.recording.proxy.dir");
+        recordingProxyPort = Configuration.INSTANCE.getInt("webdriver.recording.proxy.port");
+
+        lookupCache = Configuration.INSTANCE.getBoolean("webdriver.lookup.cache");
+
+        retryInitialDelayMillis = Configuration.INSTANCE.getInt("webdriver.retry.initial.delay.millis");
+        retryMaxDelayMillis = Configuration.INSTANCE.getInt("webdriver.retry.max.delay.millis");
+        retryMaxAttempts = Configuration.INSTANCE.getInt("webdriver.retry.max.attempts");
+
+        windowSize = Configuration.INSTANCE.getString("webdriver.window.size");
+        headlessDisableImages = Configuration.INSTANCE.getBoolean("webdriver.headless.disable.images");
+
+        scenarioWarnThresholdMillis = Configuration.INSTANCE.getInt("webdriver.scenario.warn.threshold.millis");
+        scenarioFailThresholdMillis = Configuration.INSTANCE.getInt("webdriver.scenario.fail.threshold.millis");
+        scenarioTimingsEnabled = Configuration.INSTANCE.getBoolean("webdriver.scenario.timings");
+        scenarioTimingsFile = Configuration.INSTANCE.getString("webdriver.scenario.timings.file");
+        scenarioTimingsSlowest = Configuration.INSTANCE.getInt("webdriver.scenario.timings.slowest");
+
+        pagePerformanceFile = Configuration.INSTANCE.getString("webdriver.page.performance.file");
+
+        slowStepTraceThresholdMillis = Configuration.INSTANCE.getInt("webdriver.slow.step.trace.threshold.millis");
+        slowStepTraceDir = Configuration.INSTANCE.getString("webdriver.slow.step.trace.dir");
+
         try {
             webdriverFactoryClass = Class.forName(Configuration.INSTANCE.getString("webdriver.factory.class")).asSubclass(WebDriverFactory.class);
         } catch (ClassNotFoundException ex) {
@@ -148,6 +267,194 @@ public enum WebdriverSubstepsPropertiesConfiguration implements WebdriverSubstep
         return networkProxyPort;
     }
 
+    public int webDriverPoolSize() {
+        return webDriverPoolSize;
+    }
+
+    public long webDriverPoolMaxAgeSecs() {
+        return webDriverPoolMaxAgeSecs;
+    }
+
+    public int webDriverPoolMaxUses() {
+        return webDriverPoolMaxUses;
+    }
+
+    public int parallelWorkers() {
+        return parallelWorkers;
+    }
+
+    public boolean stepMetricsEnabled() {
+        return stepMetricsEnabled;
+    }
+
+    public String stepMetricsFile() {
+        return stepMetricsFile;
+    }
+
+    public boolean traceCommands() {
+        return traceCommands;
+    }
+
+    public String traceCommandsDir() {
+        return traceCommandsDir;
+    }
+
+    public ResetMode resetMode() {
+        return resetMode;
+    }
+
+    public String timeoutDiagnosticsDir() {
+        return timeoutDiagnosticsDir;
+    }
+
+    public int timeoutDiagnosticsMaxBytes() {
+        return timeoutDiagnosticsMaxBytes;
+    }
+
+    public boolean timeoutDiagnosticsScreenshot() {
+        return timeoutDiagnosticsScreenshot;
+    }
+
+    public String screenshotsDir() {
+        return screenshotsDir;
+    }
+
+    public int screenshotsMaxWidth() {
+        return screenshotsMaxWidth;
+    }
+
+    public int screenshotsQueueSize() {
+        return screenshotsQueueSize;
+    }
+
+    public boolean screenshotsEveryStep() {
+        return screenshotsEveryStep;
+    }
+
+    public boolean screenshotsOnFailure() {
+        return screenshotsOnFailure;
+    }
+
+    public String browserLogsFile() {
+        return browserLogsFile;
+    }
+
+    public boolean browserLogsJson() {
+        return browserLogsJson;
+    }
+
+    public int browserLogsBufferSize() {
+        return browserLogsBufferSize;
+    }
+
+    public String remoteUrl() {
+        return remoteUrl;
+    }
+
+    public String remoteBrowser() {
+        return remoteBrowser;
+    }
+
+    public int remotePoolMaxTotal() {
+        return remotePoolMaxTotal;
+    }
+
+    public int remotePoolMaxPerRoute() {
+        return remotePoolMaxPerRoute;
+    }
+
+    public int remoteKeepAliveSecs() {
+        return remoteKeepAliveSecs;
+    }
+
+    public boolean remoteCompression() {
+        return remoteCompression;
+    }
+
+    public int remoteConnectTimeoutSecs() {
+        return remoteConnectTimeoutSecs;
+    }
+
+    public int remoteSocketTimeoutSecs() {
+        return remoteSocketTimeoutSecs;
+    }
+
+    public String pageLoadStrategy() {
+        return pageLoadStrategy;
+    }
+
+    public String blockUrls() {
+        return blockUrls;
+    }
+
+    public RecordingProxy.Mode recordingProxyMode() {
+        return recordingProxyMode;
+    }
+
+    public String recordingProxyDir() {
+        return recordingProxyDir;
+    }
+
+    public int recordingProxyPort() {
+        return recordingProxyPort;
+    }
+
+    public boolean lookupCache() {
+        return lookupCache;
+    }
+
+    public long retryInitialDelayMillis() {
+        return retryInitialDelayMillis;
+    }
+
+    public long retryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    public int retryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    public String windowSize() {
+        return windowSize;
+    }
+
+    public boolean headlessDisableImages() {
+        return headlessDisableImages;
+    }
+
+    public long scenarioWarnThresholdMillis() {
+        return scenarioWarnThresholdMillis;
+    }
+
+    public long scenarioFailThresholdMillis() {
+        return scenarioFailThresholdMillis;
+    }
+
+    public boolean scenarioTimingsEnabled() {
+        return scenarioTimingsEnabled;
+    }
+
+    public String scenarioTimingsFile() {
+        return scenarioTimingsFile;
+    }
+
+    public int scenarioTimingsSlowest() {
+        return scenarioTimingsSlowest;
+    }
+
+    public String pagePerformanceFile() {
+        return pagePerformanceFile;
+    }
+
+    public long slowStepTraceThresholdMillis() {
+        return slowStepTraceThresholdMillis;
+    }
+
+    public String slowStepTraceDir() {
+        return slowStepTraceDir;
+    }
+
     private String determineBaseURL(final String baseUrlProperty) {
 
         final String resolvedBaseUrl;
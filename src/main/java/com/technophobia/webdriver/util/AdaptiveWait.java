@@ -0,0 +1,300 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.Condition;
+
+/**
+ * Waits for a Condition, polling quickly at first and backing off
+ * exponentially up to a maximum interval. Between polls the wait blocks on a
+ * {@link Signal}, by default a script in the browser that returns as soon as
+ * the DOM changes or the document's ready state moves on, so a condition is
+ * usually seen within a few milliseconds of becoming true.
+ *
+ * <pre>
+ * AdaptiveWait.forDriver(webDriver).withTimeout(20, TimeUnit.SECONDS).until(condition);
+ * </pre>
+ *
+ * The browser signal needs a script timeout longer than the wait, which is set
+ * the first time the wait blocks and reset to
+ * {@link #RESTORED_SCRIPT_TIMEOUT_MILLIS} when it ends; webdriver has no way
+ * of reading the timeout it replaced. Steps relying on a script timeout of
+ * their own have to set it again after waiting.
+ */
+public class AdaptiveWait {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveWait.class);
+
+    public static final long DEFAULT_INITIAL_POLL_MILLIS = 10;
+    public static final long DEFAULT_MAX_POLL_MILLIS = 500;
+
+    /**
+     * The script timeout put back after changing it, the one every session
+     * starts with.
+     */
+    public static final long RESTORED_SCRIPT_TIMEOUT_MILLIS = 0;
+
+    /**
+     * Blocks for at most the given time, returning early if whatever it is
+     * watching may have changed.
+     */
+    public interface Signal {
+
+        /**
+         * @return false if the signal can no longer be used, in which case
+         *         the wait falls back to sleeping
+         */
+        boolean await(long maxMillis) throws InterruptedException;
+    }
+
+    /**
+     * A Signal told when a wait starts and ends, so that anything it changes
+     * to be able to block is changed once per wait rather than per poll.
+     */
+    public interface ScopedSignal extends Signal {
+
+        void begin(long timeoutMillis);
+
+        void end();
+    }
+
+    private static final Signal SLEEP = new Signal() {
+        public boolean await(final long maxMillis) throws InterruptedException {
+            Thread.sleep(maxMillis);
+            return true;
+        }
+    };
+
+    private long timeoutMillis;
+    private long initialPollMillis = DEFAULT_INITIAL_POLL_MILLIS;
+    private long maxPollMillis = DEFAULT_MAX_POLL_MILLIS;
+    private Signal signal;
+
+
+    private AdaptiveWait(final long timeoutMillis, final Signal signal) {
+        this.timeoutMillis = timeoutMillis;
+        this.signal = signal;
+    }
+
+
+    /**
+     * A wait woken by changes to the driver's current document, if the driver
+     * can execute javascript, otherwise one that simply sleeps between polls.
+     */
+    public static AdaptiveWait forDriver(final WebDriver webDriver) {
+        final Signal signal = webDriver instanceof JavascriptExecutor ? new DomChangeSignal(webDriver) : SLEEP;
+        return new AdaptiveWait(TimeUnit.SECONDS.toMillis(10), signal);
+    }
+
+
+    /**
+     * A wait that sleeps between polls.
+     */
+    public static AdaptiveWait sleeping() {
+        return new AdaptiveWait(TimeUnit.SECONDS.toMillis(10), SLEEP);
+    }
+
+
+    public AdaptiveWait withTimeout(final long duration, final TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(duration);
+        return this;
+    }
+
+
+    public AdaptiveWait pollingBetween(final long initialMillis, final long maxMillis) {
+        this.initialPollMillis = Math.max(1, initialMillis);
+        this.maxPollMillis = Math.max(this.initialPollMillis, maxMillis);
+        return this;
+    }
+
+
+    public AdaptiveWait withSignal(final Signal signal) {
+        this.signal = signal;
+        return this;
+    }
+
+
+    /**
+     * @return true if the condition was met before the timeout, false if the
+     *         timeout expired or the waiting thread was interrupted
+     */
+    public boolean until(final Condition condition) {
+
+        final Signal scoped = this.signal;
+        if (scoped instanceof ScopedSignal) {
+            ((ScopedSignal) scoped).begin(this.timeoutMillis);
+        }
+        try {
+            return poll(condition);
+        } finally {
+            if (scoped instanceof ScopedSignal) {
+                ((ScopedSignal) scoped).end();
+            }
+        }
+    }
+
+
+    private boolean poll(final Condition condition) {
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+        long interval = this.initialPollMillis;
+
+        while (!condition.conditionMet()) {
+
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+
+            try {
+                if (!this.signal.await(Math.min(interval, remaining))) {
+                    LOG.debug("Wait signal unavailable, falling back to polling");
+                    this.signal = SLEEP;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            interval = Math.min(interval * 2, this.maxPollMillis);
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs an async script that completes once the DOM has been quiet for a
+     * moment after a mutation or ready state change, or after the interval,
+     * whichever comes first. A page that never settles, e.g. one with a
+     * spinner, is so polled at the interval rather than on every frame.
+     * Navigating away aborts the script, which is treated as a change.
+     */
+    static final class DomChangeSignal implements ScopedSignal {
+
+        private static final String SCRIPT = "var done = arguments[arguments.length - 1], max = arguments[0],"
+                + "    quietMillis = arguments[1], fired = false, observer = null, quiet = null;"
+                + "function finish() {"
+                + "  if (fired) { return; } fired = true;"
+                + "  if (quiet) { clearTimeout(quiet); }"
+                + "  if (observer) { observer.disconnect(); }"
+                + "  if (document.removeEventListener) {"
+                + "    document.removeEventListener('readystatechange', changed, false);"
+                + "  }"
+                + "  done(true);"
+                + "}"
+                + "function changed() {"
+                + "  if (quiet) { clearTimeout(quiet); }"
+                + "  quiet = setTimeout(finish, quietMillis);"
+                + "}"
+                + "var Observer = window.MutationObserver || window.WebKitMutationObserver;"
+                + "if (Observer) {"
+                + "  observer = new Observer(changed);"
+                + "  observer.observe(document.documentElement || document,"
+                + "      {childList: true, subtree: true, attributes: true, characterData: true});"
+                + "}"
+                + "if (document.addEventListener) { document.addEventListener('readystatechange', changed, false); }"
+                + "setTimeout(finish, max);";
+
+        // how long the DOM has to stay still after a change before the wait
+        // looks at the condition again
+        static final long QUIET_MILLIS = 25;
+
+        // give up on the script after this many consecutive failures
+        private static final int MAX_FAILURES = 3;
+
+        private final WebDriver webDriver;
+        private int failures = 0;
+        private long scriptTimeoutMillis = 0;
+        private boolean scriptTimeoutSet = false;
+
+
+        DomChangeSignal(final WebDriver webDriver) {
+            this.webDriver = webDriver;
+        }
+
+
+        public void begin(final long timeoutMillis) {
+            // no await may last longer than the wait itself
+            this.scriptTimeoutMillis = timeoutMillis + 1000;
+            this.scriptTimeoutSet = false;
+        }
+
+
+        public void end() {
+            if (this.scriptTimeoutSet) {
+                this.scriptTimeoutSet = false;
+                try {
+                    this.webDriver.manage().timeouts()
+                            .setScriptTimeout(RESTORED_SCRIPT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (final WebDriverException e) {
+                    LOG.debug("Failed to reset the script timeout: {}", e.getMessage());
+                }
+            }
+        }
+
+
+        public boolean await(final long maxMillis) throws InterruptedException {
+
+            final long start = System.nanoTime();
+            try {
+                // only once a wait actually has to block, most conditions are
+                // already met the first time round
+                if (!this.scriptTimeoutSet) {
+                    this.webDriver.manage().timeouts()
+                            .setScriptTimeout(Math.max(this.scriptTimeoutMillis, maxMillis + 1000),
+                                    TimeUnit.MILLISECONDS);
+                    this.scriptTimeoutSet = true;
+                }
+                ((JavascriptExecutor) this.webDriver).executeAsyncScript(SCRIPT, Long.valueOf(maxMillis),
+                        Long.valueOf(Math.min(QUIET_MILLIS, maxMillis)));
+                this.failures = 0;
+                return true;
+
+            } catch (final WebDriverException e) {
+                LOG.trace("Wait signal script failed: {}", e.getMessage());
+                this.failures++;
+                sleepRemainder(start, maxMillis);
+                return this.failures < MAX_FAILURES;
+
+            } catch (final UnsupportedOperationException e) {
+                // HtmlUnit with javascript disabled, it won't get any better
+                LOG.trace("Wait signal script unsupported: {}", e.getMessage());
+                sleepRemainder(start, maxMillis);
+                return false;
+            }
+        }
+
+
+        private static void sleepRemainder(final long startNanos, final long maxMillis) throws InterruptedException {
+            // make up the rest of the interval so the backoff still holds
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (elapsed < maxMillis) {
+                Thread.sleep(maxMillis - elapsed);
+            }
+        }
+    }
+}
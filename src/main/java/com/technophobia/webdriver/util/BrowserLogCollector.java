@@ -0,0 +1,242 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.logging.Logs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+/**
+ * Streams the browser's console log to a {@link Sink}, enabled by setting
+ * webdriver.browser.logs.file. The log is drained from the driver after each
+ * step, so the driver's own buffer doesn't overflow, and each entry is tagged
+ * with the step that was running. Entries pass through a ring buffer of
+ * webdriver.browser.logs.buffer.size, the oldest are dropped if the sink
+ * can't keep up, and are written in batches on a background thread.
+ */
+public class BrowserLogCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrowserLogCollector.class);
+
+    private static final long WRITE_INTERVAL_MILLIS = 200;
+
+    private static BrowserLogCollector instance;
+    private static boolean configured = false;
+
+    /**
+     * Where the collected entries end up, only called by one thread at a time.
+     */
+    public interface Sink {
+
+        void write(List<Entry> entries) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private final Sink sink;
+    private final BlockingQueue<Entry> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+
+
+    public BrowserLogCollector(final Sink sink, final int capacity) {
+        this.sink = sink;
+        this.buffer = new ArrayBlockingQueue<Entry>(Math.max(1, capacity));
+
+        final Thread writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "browser-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * @param configuration
+     *            the caller's configuration, the collector is set up from the
+     *            first one and shared after that
+     * @return the collector configured by webdriver.browser.logs.*, or null
+     *         if browser logs aren't being collected
+     */
+    public static synchronized BrowserLogCollector getInstance(final WebdriverSubstepsConfiguration configuration) {
+        if (!configured) {
+            configured = true;
+
+            if (StringUtils.isNotEmpty(configuration.browserLogsFile())) {
+                instance = new BrowserLogCollector(new BrowserLogFileSink(configuration.browserLogsFile(),
+                        configuration.browserLogsJson()), configuration.browserLogsBufferSize());
+            }
+        }
+        return instance;
+    }
+
+
+    /**
+     * Drains the browser log from the driver, must be called on the thread
+     * driving it.
+     *
+     * @param step
+     *            the step that was running when the entries were logged
+     */
+    public void collect(final WebDriver webDriver, final String step) {
+
+        final List<LogEntry> entries;
+        try {
+            final Logs logs = webDriver.manage().logs();
+            if (logs == null) {
+                return;
+            }
+            entries = logs.get(LogType.BROWSER).getAll();
+        } catch (final WebDriverException e) {
+            LOG.debug("Unable to read browser logs: " + e.getMessage());
+            return;
+        } catch (final UnsupportedOperationException e) {
+            LOG.debug("Unable to read browser logs: " + e.getMessage());
+            return;
+        }
+
+        final String thread = Thread.currentThread().getName();
+
+        for (final LogEntry entry : entries) {
+            final Entry collected = new Entry(entry.getTimestamp(), entry.getLevel().getName(), entry.getMessage(),
+                    step, thread);
+
+            // full, make room by dropping the oldest
+            while (!this.buffer.offer(collected)) {
+                if (this.buffer.poll() != null) {
+                    this.dropped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes everything collected so far.
+     */
+    public void flush() {
+        synchronized (this.sink) {
+            writeBatch();
+            try {
+                this.sink.flush();
+            } catch (final IOException e) {
+                LOG.warn("Failed to flush browser logs", e);
+            }
+        }
+
+        final long lost = this.dropped.getAndSet(0);
+        if (lost > 0) {
+            LOG.warn("{} browser log entries were dropped as the log couldn't be written quickly enough",
+                    Long.valueOf(lost));
+        }
+    }
+
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Thread.sleep(WRITE_INTERVAL_MILLIS);
+                synchronized (this.sink) {
+                    writeBatch();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // call holding the sink's lock
+    private void writeBatch() {
+
+        if (this.buffer.isEmpty()) {
+            return;
+        }
+
+        final List<Entry> batch = new ArrayList<Entry>(this.buffer.size());
+        this.buffer.drainTo(batch);
+        try {
+            this.sink.write(batch);
+        } catch (final IOException e) {
+            LOG.warn("Failed to write browser logs", e);
+        }
+    }
+
+    /**
+     * A browser log entry and the step that was running when it was logged.
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final String level;
+        private final String message;
+        private final String step;
+        private final String thread;
+
+
+        public Entry(final long timestamp, final String level, final String message, final String step,
+                final String thread) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.message = message;
+            this.step = step;
+            this.thread = thread;
+        }
+
+
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+
+
+        public String getLevel() {
+            return this.level;
+        }
+
+
+        public String getMessage() {
+            return this.message;
+        }
+
+
+        public String getStep() {
+            return this.step;
+        }
+
+
+        public String getThread() {
+            return this.thread;
+        }
+    }
+}
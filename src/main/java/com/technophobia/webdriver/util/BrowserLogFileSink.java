@@ -0,0 +1,130 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Appends browser log entries to a file, either as JSON, one object per line,
+ * or as plain text.
+ */
+public class BrowserLogFileSink implements BrowserLogCollector.Sink {
+
+    private final File file;
+    private final boolean json;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private Writer writer;
+
+
+    public BrowserLogFileSink(final String file, final boolean json) {
+        this.file = new File(file);
+        this.json = json;
+    }
+
+
+    public void write(final List<BrowserLogCollector.Entry> entries) throws IOException {
+
+        final Writer out = writer();
+        final StringBuilder line = new StringBuilder();
+
+        for (final BrowserLogCollector.Entry entry : entries) {
+            line.setLength(0);
+
+            if (this.json) {
+                line.append("{\"timestamp\":").append(entry.getTimestamp());
+                line.append(",\"level\":\"").append(escape(entry.getLevel()));
+                line.append("\",\"step\":").append(entry.getStep() == null ? "null" : "\"" + escape(entry.getStep()) + "\"");
+                line.append(",\"thread\":\"").append(escape(entry.getThread()));
+                line.append("\",\"message\":\"").append(escape(entry.getMessage())).append("\"}");
+            } else {
+                line.append(this.dateFormat.format(new Date(entry.getTimestamp()))).append(' ');
+                line.append(entry.getLevel()).append(" [").append(entry.getThread()).append("] ");
+                if (entry.getStep() != null) {
+                    line.append(entry.getStep()).append(": ");
+                }
+                line.append(entry.getMessage());
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+
+    public void flush() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+    }
+
+
+    private Writer writer() throws IOException {
+        if (this.writer == null) {
+            final File parent = this.file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+            this.writer = new BufferedWriter(new FileWriter(this.file, true));
+        }
+        return this.writer;
+    }
+
+
+    static String escape(final String value) {
+
+        if (value == null) {
+            return "";
+        }
+
+        final StringBuilder buf = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+                    } else {
+                        buf.append(c);
+                    }
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Returns a browser to a clean state so that it can be reused by another
+ * scenario without leaking anything into it, see
+ * {@link com.technophobia.webdriver.substeps.runner.ResetMode#FULL}. Storage
+ * can only be cleared for the origin of the page that is loaded when the
+ * reset happens, which is normally the application under test.
+ */
+public final class BrowserStateReset {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrowserStateReset.class);
+
+    private static final long SCRIPT_TIMEOUT_SECS = 5;
+
+    private static final String BLANK_PAGE = "about:blank";
+
+    // the IndexedDB and service worker apis are promise based, the rest is
+    // synchronous
+    private static final String CLEAR_STORAGE_SCRIPT = "var done = arguments[arguments.length - 1];"
+            + "try { window.localStorage && window.localStorage.clear(); } catch (e) {}"
+            + "try { window.sessionStorage && window.sessionStorage.clear(); } catch (e) {}"
+            + "if (typeof Promise === 'undefined') { done(); return; }"
+            + "var pending = [];"
+            + "try {"
+            + "  if (window.indexedDB && window.indexedDB.databases) {"
+            + "    pending.push(window.indexedDB.databases().then(function(dbs) {"
+            + "      for (var i = 0; i < dbs.length; i++) { window.indexedDB.deleteDatabase(dbs[i].name); }"
+            + "    }));"
+            + "  }"
+            + "} catch (e) {}"
+            + "try {"
+            + "  if (navigator.serviceWorker && navigator.serviceWorker.getRegistrations) {"
+            + "    pending.push(navigator.serviceWorker.getRegistrations().then(function(regs) {"
+            + "      var unregistered = [];"
+            + "      for (var i = 0; i < regs.length; i++) { unregistered.push(regs[i].unregister()); }"
+            + "      return Promise.all(unregistered);"
+            + "    }));"
+            + "  }"
+            + "} catch (e) {}"
+            + "Promise.all(pending).then(function() { done(); }, function() { done(); });";
+
+    private BrowserStateReset() {
+        // static helpers only
+    }
+
+
+    /**
+     * @throws WebDriverException
+     *             if the browser couldn't be reset, it shouldn't be reused
+     */
+    public static void reset(final WebDriver webDriver) {
+
+        closeExtraWindows(webDriver);
+
+        webDriver.switchTo().defaultContent();
+
+        if (webDriver instanceof JavascriptExecutor && !BLANK_PAGE.equals(webDriver.getCurrentUrl())) {
+            clearStorage((JavascriptExecutor) webDriver);
+        }
+
+        webDriver.manage().deleteAllCookies();
+
+        webDriver.get(BLANK_PAGE);
+    }
+
+
+    private static void closeExtraWindows(final WebDriver webDriver) {
+
+        final Set<String> handles = webDriver.getWindowHandles();
+        if (handles.size() <= 1) {
+            return;
+        }
+
+        String keep;
+        try {
+            keep = webDriver.getWindowHandle();
+        } catch (final WebDriverException e) {
+            // the current window has already been closed
+            keep = handles.iterator().next();
+        }
+
+        for (final String handle : handles) {
+            if (!handle.equals(keep)) {
+                webDriver.switchTo().window(handle);
+                webDriver.close();
+            }
+        }
+        webDriver.switchTo().window(keep);
+    }
+
+
+    private static void clearStorage(final JavascriptExecutor executor) {
+
+        try {
+            final WebDriver.Timeouts timeouts = ((WebDriver) executor).manage().timeouts();
+            timeouts.setScriptTimeout(SCRIPT_TIMEOUT_SECS, TimeUnit.SECONDS);
+            try {
+                executor.executeAsyncScript(CLEAR_STORAGE_SCRIPT);
+            } finally {
+                // as AdaptiveWait does, the timeout being replaced can't be read
+                timeouts.setScriptTimeout(AdaptiveWait.RESTORED_SCRIPT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (final UnsupportedOperationException e) {
+            // javascript is switched off, so nothing can have been stored
+            LOG.debug("Unable to clear browser storage: " + e.getMessage());
+        }
+    }
+}
@@ -18,36 +18,29 @@
  */
 package com.technophobia.webdriver.util;
 
+import java.util.concurrent.TimeUnit;
+
 import com.google.common.base.Function;
 import com.technophobia.webdriver.substeps.runner.Condition;
-import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsPropertiesConfiguration;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
 import org.openqa.selenium.By;
 import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.WebDriverWait;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class ElementLocators {
 
-    private static final Logger LOG = LoggerFactory.getLogger(ElementLocators.class);
-
-    private final static int timeout = 10;
-    final static long polltime = 1000;
-
-
-    public static WebElement waitForElement(final By by, WebDriver webDriver) {
-        return waitForElement(by, WebdriverSubstepsPropertiesConfiguration.INSTANCE.defaultTimeout(), webDriver);
-    }
-
 
     /**
      * Waits for a WebElement that can be found using the specified By to exist, or for a timeout to occur.
      *
+     * @param configuration
+     *            the configuration of the caller's context, which says what to capture if the wait times out
      * @return the discovered WebElement, or null if it does not exist within the timeout period.
      */
-    public static WebElement waitForElement(final By by, final long timeOutSeconds, WebDriver webDriver) {
+    public static WebElement waitForElement(final By by, final long timeOutSeconds, WebDriver webDriver,
+                                            final WebdriverSubstepsConfiguration configuration) {
         final WebDriverWait wait = new WebDriverWait(webDriver, timeOutSeconds);
         final Function<WebDriver, WebElement> condition2 = new Function<WebDriver, WebElement>() {
             public WebElement apply(final WebDriver driver) {
@@ -57,40 +50,44 @@ public class ElementLocators {
 
         // Implementations should wait until the condition evaluates to a value
         // that is neither null nor false.
-        return waitUntil(wait, condition2, webDriver);
+        return waitUntil(wait, condition2, webDriver, String.valueOf(by), timeOutSeconds, configuration);
     }
 
     private static WebElement waitUntil(final WebDriverWait wait, final Function<WebDriver, WebElement> condition,
-                                       WebDriver webDriver) {
+                                       WebDriver webDriver, final String waitingFor, final long timeOutSeconds,
+                                       final WebdriverSubstepsConfiguration configuration) {
         WebElement elem = null;
+        final long start = System.nanoTime();
         try {
             elem = wait.until(condition);
         } catch (final TimeoutException e) {
-            LOG.debug("timed out page src:\n" + webDriver.getPageSource());
+            TimeoutDiagnostics.timedOut(webDriver, waitingFor, timeOutSeconds, configuration);
+        } finally {
+            StepMetrics.waited(System.nanoTime() - start);
         }
         return elem;
     }
 
 
-    public static boolean waitForCondition(final Condition condition, WebDriver webDriver) {
-
-        int count = 0;
-
-        while (!condition.conditionMet()) {
-
-            count++;
-
-            try {
-                Thread.sleep(polltime);
-            } catch (final InterruptedException ignore) {
-                // Do Nothing
-            }
-
-            if (count == timeout) {
-                return false;
+    /**
+     * Waits for the condition to be met, checking again as soon as the page changes.
+     *
+     * @param configuration
+     *            the configuration of the caller's context, which says what to capture if the wait times out
+     * @return true if the condition was met within the timeout period.
+     */
+    public static boolean waitForCondition(final Condition condition, final long timeOutSeconds, WebDriver webDriver,
+                                           final WebdriverSubstepsConfiguration configuration) {
+        final long start = System.nanoTime();
+        try {
+            final boolean met = AdaptiveWait.forDriver(webDriver).withTimeout(timeOutSeconds, TimeUnit.SECONDS)
+                    .until(condition);
+            if (!met) {
+                TimeoutDiagnostics.timedOut(webDriver, "condition " + condition, timeOutSeconds, configuration);
             }
+            return met;
+        } finally {
+            StepMetrics.waited(System.nanoTime() - start);
         }
-
-        return true;
     }
 }
@@ -0,0 +1,228 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the elements found for each locator, so that finding the same one
+ * again, e.g. FindById followed by AssertSame on the same id, doesn't go back
+ * to the browser. Enabled with webdriver.lookup.cache.
+ *
+ * A MutationObserver put into the page counts changes to the DOM. After any
+ * command that could have changed the page - a click, typing, a script - the
+ * count is read before the next cache hit, and the cache is emptied if it has
+ * moved. Navigating and switching frame or window empties it straight away.
+ * Changes the page makes on its own, with no command in between, e.g. an
+ * ajax response or a timer, aren't noticed until the next such command, so
+ * elements are handed back through {@link ElementStash}: one the page has
+ * replaced since is found again with its locator the first time it is used.
+ *
+ * The commands are only seen through a driver from
+ * {@link InstrumentedWebDriver} with the {@link #INVALIDATOR} listening, see
+ * {@link #canWatch(WebDriver)}.
+ */
+public class ElementLookupCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElementLookupCache.class);
+
+    private static final ThreadLocal<ElementLookupCache> current = new ThreadLocal<ElementLookupCache>();
+
+    private static final long UNSUPPORTED = -2;
+    private static final long INSTALLED = -1;
+
+    // returns the number of changes to the document so far, or -1 if it had
+    // to start counting
+    private static final String DOM_GENERATION_SCRIPT = "var w = window;"
+            + "if (typeof MutationObserver == 'undefined') { return " + UNSUPPORTED + "; }"
+            + "if (w.__substepsDomGeneration === undefined) {"
+            + "  w.__substepsDomGeneration = 0;"
+            + "  new MutationObserver(function() { w.__substepsDomGeneration++; }).observe(document,"
+            + "    { childList: true, subtree: true, attributes: true, characterData: true });"
+            + "  return " + INSTALLED + ";"
+            + "}"
+            + "return w.__substepsDomGeneration;";
+
+    // commands after which the page may be a different one
+    private static final Set<String> NAVIGATION_KINDS = new HashSet<String>(Arrays.asList("Navigation",
+            "TargetLocator"));
+    private static final Set<String> NAVIGATION_COMMANDS = new HashSet<String>(Arrays.asList("WebDriver.get",
+            "WebDriver.close", "WebDriver.quit"));
+
+    // commands after which the page may have changed
+    private static final Set<String> CHANGING_KINDS = new HashSet<String>(Arrays.asList("JavascriptExecutor",
+            "Keyboard", "Mouse", "TouchScreen", "Alert"));
+    private static final Set<String> CHANGING_COMMANDS = new HashSet<String>(Arrays.asList("WebElement.click",
+            "WebElement.submit", "WebElement.sendKeys", "WebElement.clear"));
+
+    /**
+     * Tells the cache in use on the calling thread about the commands that
+     * may change the page.
+     */
+    public static final WebDriverCommandListener INVALIDATOR = new WebDriverCommandListener() {
+        public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+                final Throwable failure) {
+            final ElementLookupCache cache = current.get();
+            if (cache != null) {
+                cache.commandExecuted(command);
+            }
+        }
+    };
+
+    private final WebDriver webDriver;
+    private final ElementStash elements;
+
+    // the count of DOM changes when the cache was last known to be good, or
+    // less than 0 if the page isn't being watched
+    private long domGeneration = INSTALLED;
+    private boolean changed = false;
+    private boolean checking = false;
+
+
+    public ElementLookupCache(final WebDriver webDriver) {
+        this.webDriver = webDriver;
+        this.elements = new ElementStash(webDriver);
+        current.set(this);
+    }
+
+
+    /**
+     * @return whether the driver tells the cache about the commands that
+     *         change the page, without which it can't know when to forget
+     */
+    public static boolean canWatch(final WebDriver webDriver) {
+        return InstrumentedWebDriver.isListenedTo(webDriver, INVALIDATOR);
+    }
+
+
+    /**
+     * @return the element last found with by, found again with by if it has
+     *         gone stale, or null if there isn't one or the page has changed
+     *         since
+     */
+    public WebElement get(final By by) {
+
+        if (!isCacheable(by) || this.elements.isEmpty()) {
+            return null;
+        }
+        current.set(this);
+        if (this.changed) {
+            checkDom();
+        }
+        return this.elements.get(key(by));
+    }
+
+
+    public void put(final By by, final WebElement element) {
+
+        if (!isCacheable(by)) {
+            return;
+        }
+        current.set(this);
+        if (this.domGeneration < 0) {
+            // start watching the page before anything from it is kept
+            checkDom();
+        }
+        if (this.domGeneration >= 0) {
+            this.elements.put(key(by), element, ElementStash.recipe(null, by));
+        }
+    }
+
+
+    /**
+     * Forgets everything, e.g. once the browser has moved on to another page.
+     */
+    public void invalidate() {
+        this.elements.clear(ElementStash.Scope.FEATURE);
+        this.domGeneration = INSTALLED;
+        this.changed = false;
+    }
+
+
+    /**
+     * Locators are told apart by their toString, so only those whose
+     * toString says everything about what they find can be kept: Selenium's
+     * own and the xpath based ones. Others, e.g. one chained to the current
+     * element, would be mistaken for each other.
+     */
+    static boolean isCacheable(final By by) {
+        return by.getClass().getEnclosingClass() == By.class || by instanceof WebDriverSubstepsBy.XPathBy;
+    }
+
+
+    private static ElementStash.Key key(final By by) {
+        return new ElementStash.Key(String.valueOf(by), ElementStash.Scope.FEATURE);
+    }
+
+
+    void commandExecuted(final String command) {
+
+        if (this.checking) {
+            return;
+        }
+
+        final String kind = command.substring(0, command.indexOf('.'));
+
+        if (NAVIGATION_KINDS.contains(kind) || NAVIGATION_COMMANDS.contains(command)) {
+            invalidate();
+        } else if (CHANGING_KINDS.contains(kind) || CHANGING_COMMANDS.contains(command)) {
+            this.changed = true;
+        }
+    }
+
+
+    private void checkDom() {
+
+        long generation = UNSUPPORTED;
+        if (this.webDriver instanceof JavascriptExecutor) {
+            this.checking = true;
+            try {
+                final Object result = ((JavascriptExecutor) this.webDriver).executeScript(DOM_GENERATION_SCRIPT);
+                if (result instanceof Number) {
+                    generation = ((Number) result).longValue();
+                }
+            } catch (final WebDriverException e) {
+                LOG.debug("Unable to watch the page for changes: " + e.getMessage());
+            } catch (final UnsupportedOperationException e) {
+                // e.g. HtmlUnit with javascript disabled
+                LOG.debug("Unable to watch the page for changes: " + e.getMessage());
+            } finally {
+                this.checking = false;
+            }
+        }
+
+        if (generation != this.domGeneration || generation < 0) {
+            this.elements.clear(ElementStash.Scope.FEATURE);
+        }
+
+        // a freshly installed observer has counted nothing yet
+        this.domGeneration = generation == INSTALLED ? 0 : generation;
+        this.changed = false;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The text, tag name and attributes of an element, read for a whole list of
+ * elements in a single script execution rather than a driver call per element
+ * per property. Anything not in the snapshot, or everything if the snapshot
+ * couldn't be taken, is read from the element on first use.
+ *
+ * Snapshots are only taken by script for remote (grid) sessions, where each
+ * call is a round trip over the network. Local browsers, whose drivers also
+ * extend RemoteWebDriver, and HtmlUnit are read directly so that text keeps
+ * WebElement.getText()'s exact whitespace and visibility rules.
+ */
+public class ElementSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElementSnapshot.class);
+
+    // mimics WebElement.getText() and getAttribute() closely enough for
+    // comparisons: visible text with whitespace normalised per line,
+    // properties in preference to attributes and booleans as "true" or null
+    private static final String SNAPSHOT_SCRIPT = "var elements = arguments[0], withText = arguments[1], names = arguments[2];"
+            + "var booleans = {checked: 1, selected: 1, disabled: 1, readonly: 1, multiple: 1, required: 1, autofocus: 1};"
+            + "function visibleText(node) {"
+            + "  if (node.nodeType === 3) { return node.nodeValue; }"
+            + "  if (node.nodeType !== 1) { return ''; }"
+            + "  var style = window.getComputedStyle ? window.getComputedStyle(node, null) : null;"
+            + "  if (style && (style.display === 'none' || style.visibility === 'hidden')) { return ''; }"
+            + "  if (node.tagName.toLowerCase() === 'br') { return '\\n'; }"
+            + "  var text = '';"
+            + "  for (var i = 0; i < node.childNodes.length; i++) { text += visibleText(node.childNodes[i]); }"
+            + "  return style && style.display !== 'inline' && style.display !== 'inline-block' ? '\\n' + text + '\\n' : text;"
+            + "}"
+            + "function text(e) {"
+            + "  var raw = typeof e.innerText === 'string' ? e.innerText : visibleText(e);"
+            + "  var lines = raw.replace(/\\u00a0/g, ' ').split(/\\r?\\n/), out = [];"
+            + "  for (var i = 0; i < lines.length; i++) {"
+            + "    var line = lines[i].replace(/[ \\t\\f\\r]+/g, ' ').replace(/^ | $/g, '');"
+            + "    if (line.length > 0) { out.push(line); }"
+            + "  }"
+            + "  return out.join('\\n');"
+            + "}"
+            + "function attribute(e, name) {"
+            + "  var lower = name.toLowerCase();"
+            + "  if (lower === 'class') { lower = 'classname'; name = 'className'; }"
+            + "  if (booleans[lower]) {"
+            + "    var property = lower === 'readonly' ? 'readOnly' : lower;"
+            + "    return (property in e ? e[property] : e.hasAttribute(lower)) ? 'true' : null;"
+            + "  }"
+            + "  if (lower === 'style') { return e.style ? e.style.cssText : e.getAttribute('style'); }"
+            + "  var value = e[name];"
+            + "  if (value !== undefined && value !== null && typeof value !== 'object' && typeof value !== 'function') {"
+            + "    return String(value);"
+            + "  }"
+            + "  value = e.getAttribute(name);"
+            + "  return value === null || value === undefined ? null : String(value);"
+            + "}"
+            + "var results = [];"
+            + "for (var i = 0; i < elements.length; i++) {"
+            + "  var e = elements[i], attributes = {};"
+            + "  for (var n = 0; n < names.length; n++) { attributes[names[n]] = attribute(e, names[n]); }"
+            + "  results.push({tag: e.tagName.toLowerCase(), text: withText ? text(e) : null, attributes: attributes});"
+            + "}"
+            + "return results;";
+
+    private final WebElement element;
+
+    private String text;
+    private boolean hasText = false;
+
+    private String tagName;
+
+    private final Map<String, String> attributes = new HashMap<String, String>();
+
+
+    ElementSnapshot(final WebElement element) {
+        this.element = element;
+    }
+
+
+    /**
+     * Snapshots the elements, in a single script execution where the driver
+     * allows it.
+     *
+     * @param searchContext
+     *            the driver, or an element of the driver, the elements belong
+     *            to
+     * @param elements
+     *            the elements
+     * @param withText
+     *            whether to include the elements' text
+     * @param attributeNames
+     *            the attributes to include
+     * @return a snapshot per element, in the same order
+     */
+    public static List<ElementSnapshot> snapshot(final SearchContext searchContext, final List<WebElement> elements,
+            final boolean withText, final String... attributeNames) {
+
+        if (elements == null || elements.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<ElementSnapshot> snapshots = new ArrayList<ElementSnapshot>(elements.size());
+        for (final WebElement element : elements) {
+            snapshots.add(new ElementSnapshot(element));
+        }
+
+        final WebDriver webDriver = webDriverOf(searchContext);
+
+        if (isRemote(webDriver)) {
+            try {
+                final Object result = ((JavascriptExecutor) webDriver).executeScript(SNAPSHOT_SCRIPT, elements,
+                        Boolean.valueOf(withText), Arrays.asList(attributeNames));
+
+                if (result instanceof List && ((List<?>) result).size() == snapshots.size()) {
+                    int i = 0;
+                    for (final Object values : (List<?>) result) {
+                        snapshots.get(i++).populate((Map<?, ?>) values, withText);
+                    }
+                } else {
+                    LOG.debug("Unexpected element snapshot result: {}", result);
+                }
+            } catch (final WebDriverException e) {
+                // stale elements and the like, let the per element reads deal
+                // with it
+                LOG.debug("Unable to snapshot elements by script: {}", e.getMessage());
+            }
+        }
+
+        return snapshots;
+    }
+
+
+    public WebElement getElement() {
+        return this.element;
+    }
+
+
+    /**
+     * @see WebElement#getText()
+     */
+    public String getText() {
+        if (!this.hasText) {
+            this.text = this.element.getText();
+            this.hasText = true;
+        }
+        return this.text;
+    }
+
+
+    /**
+     * @see WebElement#getTagName()
+     */
+    public String getTagName() {
+        if (this.tagName == null) {
+            this.tagName = this.element.getTagName();
+        }
+        return this.tagName;
+    }
+
+
+    /**
+     * @see WebElement#getAttribute(String)
+     */
+    public String getAttribute(final String name) {
+        if (!this.attributes.containsKey(name)) {
+            this.attributes.put(name, this.element.getAttribute(name));
+        }
+        return this.attributes.get(name);
+    }
+
+
+    private void populate(final Map<?, ?> values, final boolean withText) {
+
+        this.tagName = (String) values.get("tag");
+
+        if (withText) {
+            this.text = (String) values.get("text");
+            this.hasText = true;
+        }
+
+        final Map<?, ?> attributeValues = (Map<?, ?>) values.get("attributes");
+        if (attributeValues != null) {
+            for (final Map.Entry<?, ?> entry : attributeValues.entrySet()) {
+                this.attributes.put((String) entry.getKey(), entry.getValue() == null ? null : entry.getValue()
+                        .toString());
+            }
+        }
+    }
+
+
+    private static WebDriver webDriverOf(final SearchContext searchContext) {
+
+        SearchContext context = searchContext;
+        if (context instanceof WebElement && context instanceof WrapsDriver) {
+            context = ((WrapsDriver) context).getWrappedDriver();
+        }
+        return context instanceof WebDriver ? (WebDriver) context : null;
+    }
+
+
+    static boolean isRemote(final WebDriver webDriver) {
+
+        WebDriver driver = webDriver;
+        while (driver instanceof WrapsDriver && !(driver instanceof RemoteWebDriver)) {
+            driver = ((WrapsDriver) driver).getWrappedDriver();
+        }
+        return driver != null && isRemoteSession(driver.getClass()) && webDriver instanceof JavascriptExecutor;
+    }
+
+
+    private static boolean isRemoteSession(final Class<?> driverClass) {
+        // FirefoxDriver, ChromeDriver and the like are RemoteWebDrivers too,
+        // but talk to a local browser; an Augmenter'd session is a generated
+        // subclass of RemoteWebDriver itself
+        return driverClass == RemoteWebDriver.class
+                || (driverClass.getSuperclass() == RemoteWebDriver.class && driverClass.getName().contains("$$"));
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Elements kept by step implementations for later steps to use, along with how
+ * they were found. An element stashed with a {@link Recipe} is handed back
+ * wrapped, and if the page has re-rendered it since it is found again through
+ * the recipe the first time it is used, rather than failing with a
+ * {@link StaleElementReferenceException}.
+ */
+public class ElementStash {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElementStash.class);
+
+    /**
+     * How long a stashed element is kept for.
+     */
+    public enum Scope {
+        STEP, SCENARIO, FEATURE
+    }
+
+    /**
+     * Finds an element again once the one that was stashed has gone stale.
+     */
+    public interface Recipe {
+
+        WebElement resolve(WebDriver webDriver);
+    }
+
+    /**
+     * The name of a stashed element and how long it is kept for.
+     */
+    public static final class Key {
+
+        private final String name;
+        private final Scope scope;
+
+
+        public Key(final String name, final Scope scope) {
+            this.name = name;
+            this.scope = scope;
+        }
+
+
+        public String getName() {
+            return this.name;
+        }
+
+
+        public Scope getScope() {
+            return this.scope;
+        }
+
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && ((Key) obj).name.equals(this.name);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return this.name.hashCode();
+        }
+
+
+        @Override
+        public String toString() {
+            return this.name + " (" + this.scope + ")";
+        }
+    }
+
+    private final WebDriver webDriver;
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+
+    public ElementStash(final WebDriver webDriver) {
+        this.webDriver = webDriver;
+    }
+
+
+    /**
+     * @return a recipe that finds the element with by, from the page or from
+     *         the element the parent recipe finds
+     */
+    public static Recipe recipe(final Recipe parent, final By by) {
+        return new Recipe() {
+            public WebElement resolve(final WebDriver webDriver) {
+                final SearchContext context = parent != null ? parent.resolve(webDriver) : webDriver;
+                return context.findElement(by);
+            }
+
+
+            @Override
+            public String toString() {
+                return parent != null ? parent + " > " + by : String.valueOf(by);
+            }
+        };
+    }
+
+
+    /**
+     * @param recipe
+     *            how to find the element again, or null if it can't be
+     */
+    public void put(final Key key, final WebElement element, final Recipe recipe) {
+
+        if (this.entries.containsKey(key)) {
+            LOG.debug("replacing existing object in stash using key: " + key);
+            // the scope may have changed too
+            this.entries.remove(key);
+        }
+        this.entries.put(key, new Entry(unwrap(element), recipe));
+    }
+
+
+    /**
+     * @return the stashed element, or null if there isn't one
+     */
+    public WebElement get(final Key key) {
+
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return entry.recipe == null ? entry.element : entry.proxy();
+    }
+
+
+    /**
+     * Forgets the elements kept for the scope, and for any shorter one.
+     */
+    public void clear(final Scope scope) {
+
+        final Iterator<Key> keys = this.entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().scope.compareTo(scope) <= 0) {
+                keys.remove();
+            }
+        }
+    }
+
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+
+    private static WebElement unwrap(final WebElement element) {
+        WebElement unwrapped = element;
+        while (unwrapped != null && Proxy.isProxyClass(unwrapped.getClass())
+                && Proxy.getInvocationHandler(unwrapped) instanceof Entry.Handler) {
+            unwrapped = ((WrapsElement) unwrapped).getWrappedElement();
+        }
+        return unwrapped;
+    }
+
+    private final class Entry {
+
+        private volatile WebElement element;
+        private final Recipe recipe;
+        private WebElement proxy = null;
+
+
+        Entry(final WebElement element, final Recipe recipe) {
+            this.element = element;
+            this.recipe = recipe;
+        }
+
+
+        WebElement proxy() {
+            if (this.proxy == null) {
+                final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+                collectInterfaces(this.element.getClass(), interfaces);
+                interfaces.add(WrapsElement.class);
+
+                this.proxy = (WebElement) Proxy.newProxyInstance(ElementStash.class.getClassLoader(),
+                        interfaces.toArray(new Class<?>[interfaces.size()]), new Handler());
+            }
+            return this.proxy;
+        }
+
+
+        WebElement resolve() {
+            LOG.debug("Stashed element has gone stale, finding it again with {}", this.recipe);
+            this.element = unwrap(this.recipe.resolve(ElementStash.this.webDriver));
+            return this.element;
+        }
+
+        private final class Handler implements InvocationHandler {
+
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+                if (method.getDeclaringClass() == WrapsElement.class) {
+                    return Entry.this.element;
+                }
+                if (method.getDeclaringClass() == Object.class) {
+                    if ("equals".equals(method.getName()) && args[0] instanceof WebElement) {
+                        return Boolean.valueOf(Entry.this.element.equals(unwrap((WebElement) args[0])));
+                    }
+                    return invokeOn(Entry.this.element, method, args);
+                }
+
+                final WebElement element = Entry.this.element;
+                try {
+                    return invokeOn(element, method, args);
+                } catch (final StaleElementReferenceException e) {
+                    // only the once, if it has gone stale again straight away
+                    // something else is going on
+                    return invokeOn(element == Entry.this.element ? resolve() : Entry.this.element, method, args);
+                }
+            }
+
+
+            private Object invokeOn(final WebElement target, final Method method, final Object[] args)
+                    throws Throwable {
+                try {
+                    return method.invoke(target, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+
+    private static void collectInterfaces(final Class<?> type, final Set<Class<?>> interfaces) {
+
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (final Class<?> i : c.getInterfaces()) {
+                if (Modifier.isPublic(i.getModifiers())) {
+                    interfaces.add(i);
+                }
+                collectInterfaces(i, interfaces);
+            }
+        }
+    }
+}
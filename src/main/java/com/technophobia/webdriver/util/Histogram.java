@@ -0,0 +1,136 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non negative values in the style of HdrHistogram: values are
+ * counted in buckets whose width doubles with each power of two, each power of
+ * two being split into 32 sub buckets, so percentiles are accurate to about 3%
+ * whatever the magnitude of the values. Safe for concurrent recording.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+
+    public void record(final long value) {
+
+        final long v = Math.max(0, value);
+
+        this.counts.incrementAndGet(index(v));
+        this.count.incrementAndGet();
+        this.total.addAndGet(v);
+
+        long current = this.min.get();
+        while (v < current && !this.min.compareAndSet(current, v)) {
+            current = this.min.get();
+        }
+        current = this.max.get();
+        while (v > current && !this.max.compareAndSet(current, v)) {
+            current = this.max.get();
+        }
+    }
+
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+
+    public long getTotal() {
+        return this.total.get();
+    }
+
+
+    public long getMin() {
+        return getCount() == 0 ? 0 : this.min.get();
+    }
+
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+
+    public double getMean() {
+        final long n = getCount();
+        return n == 0 ? 0 : (double) getTotal() / n;
+    }
+
+
+    /**
+     * @param percentile
+     *            between 0 and 100
+     * @return the highest value of the bucket containing the percentile, no
+     *         greater than the maximum value recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+
+        final long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(n * Math.min(100.0, percentile) / 100.0));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+
+    static int index(final long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS;
+        return SUB_BUCKETS + magnitude * SUB_BUCKETS + subBucket;
+    }
+
+
+    static long upperBound(final int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int magnitude = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        final long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
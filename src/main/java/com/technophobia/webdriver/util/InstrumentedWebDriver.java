@@ -0,0 +1,260 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorates a WebDriver so that every command issued through it, or through
+ * the elements, navigation, options and so on obtained from it, is timed and
+ * passed to {@link WebDriverCommandListener}s. The decorator implements all
+ * the public interfaces of the driver and elements it wraps, so casts to
+ * JavascriptExecutor, TakesScreenshot etc. continue to work, and
+ * {@link WrapsDriver} / {@link WrapsElement} to get at what's underneath.
+ *
+ * Selenium's EventFiringWebDriver only reports navigation, finds, clicks,
+ * value changes and scripts, this reports everything.
+ */
+public final class InstrumentedWebDriver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedWebDriver.class);
+
+    // methods that just return a local object to make further calls on
+    private static final Set<String> ACCESSORS = new HashSet<String>(Arrays.asList("manage", "navigate", "switchTo",
+            "window", "timeouts", "ime", "logs", "getKeyboard", "getMouse", "getTouch"));
+
+    private final WebDriver webDriver;
+    private final WebDriverCommandListener[] listeners;
+    private final WebDriver proxy;
+
+
+    private InstrumentedWebDriver(final WebDriver webDriver, final List<WebDriverCommandListener> listeners) {
+        this.webDriver = webDriver;
+        this.listeners = listeners.toArray(new WebDriverCommandListener[listeners.size()]);
+        this.proxy = (WebDriver) newProxy(webDriver, "WebDriver", WrapsDriver.class);
+    }
+
+
+    /**
+     * @return the driver decorated to report to the listeners, or the driver
+     *         itself if there are no listeners
+     */
+    public static WebDriver instrument(final WebDriver webDriver, final List<WebDriverCommandListener> listeners) {
+
+        if (listeners.isEmpty()) {
+            return webDriver;
+        }
+        return new InstrumentedWebDriver(webDriver, listeners).proxy;
+    }
+
+
+    /**
+     * @return whether the driver is one decorated to report to the listener
+     */
+    public static boolean isListenedTo(final WebDriver webDriver, final WebDriverCommandListener listener) {
+
+        if (webDriver == null || !Proxy.isProxyClass(webDriver.getClass())) {
+            return false;
+        }
+        final InvocationHandler handler = Proxy.getInvocationHandler(webDriver);
+        return handler instanceof Handler
+                && Arrays.asList(((Handler) handler).instrumented().listeners).contains(listener);
+    }
+
+
+    /**
+     * @return the driver underneath any decoration
+     */
+    public static WebDriver unwrap(final WebDriver webDriver) {
+        WebDriver driver = webDriver;
+        while (driver instanceof WrapsDriver && Proxy.isProxyClass(driver.getClass())) {
+            driver = ((WrapsDriver) driver).getWrappedDriver();
+        }
+        return driver;
+    }
+
+
+    private Object newProxy(final Object target, final String kind, final Class<?>... extraInterfaces) {
+
+        final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        collectInterfaces(target.getClass(), interfaces);
+        interfaces.addAll(Arrays.asList(extraInterfaces));
+
+        return Proxy.newProxyInstance(InstrumentedWebDriver.class.getClassLoader(),
+                interfaces.toArray(new Class<?>[interfaces.size()]), new Handler(target, kind));
+    }
+
+
+    private static void collectInterfaces(final Class<?> type, final Set<Class<?>> interfaces) {
+
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (final Class<?> i : c.getInterfaces()) {
+                if (Modifier.isPublic(i.getModifiers())) {
+                    interfaces.add(i);
+                }
+                collectInterfaces(i, interfaces);
+            }
+        }
+    }
+
+
+    private Object wrap(final Object result, final Class<?> declaredType) {
+
+        if (result == null || Proxy.isProxyClass(result.getClass())) {
+            return result;
+        }
+        if (result == this.webDriver) {
+            return this.proxy;
+        }
+        if (result instanceof WebElement) {
+            return newProxy(result, "WebElement", WrapsElement.class, WrapsDriver.class);
+        }
+        if (result instanceof List) {
+            final List<Object> wrapped = new ArrayList<Object>(((List<?>) result).size());
+            for (final Object o : (List<?>) result) {
+                wrapped.add(wrap(o, Object.class));
+            }
+            return wrapped;
+        }
+        if (declaredType.isInterface() && declaredType.getName().startsWith("org.openqa.selenium.")) {
+            return newProxy(result, declaredType.getSimpleName());
+        }
+        return result;
+    }
+
+
+    private static Object unwrap(final Object arg) {
+
+        if (arg == null) {
+            return null;
+        }
+        if (Proxy.isProxyClass(arg.getClass()) && Proxy.getInvocationHandler(arg) instanceof Handler) {
+            return ((Handler) Proxy.getInvocationHandler(arg)).target;
+        }
+        if (Proxy.isProxyClass(arg.getClass()) && arg instanceof WrapsElement) {
+            // e.g. a stashed element
+            return unwrap(((WrapsElement) arg).getWrappedElement());
+        }
+        if (arg instanceof Object[]) {
+            final Object[] array = (Object[]) arg;
+            final Object[] unwrapped = (Object[]) java.lang.reflect.Array.newInstance(array.getClass()
+                    .getComponentType(), array.length);
+            for (int i = 0; i < array.length; i++) {
+                unwrapped[i] = unwrap(array[i]);
+            }
+            return unwrapped;
+        }
+        if (arg instanceof Collection) {
+            final List<Object> unwrapped = new ArrayList<Object>(((Collection<?>) arg).size());
+            for (final Object o : (Collection<?>) arg) {
+                unwrapped.add(unwrap(o));
+            }
+            return unwrapped;
+        }
+        return arg;
+    }
+
+
+    private void notifyListeners(final String command, final Object[] args, final long durationNanos,
+            final Throwable failure) {
+
+        for (final WebDriverCommandListener listener : this.listeners) {
+            try {
+                listener.commandExecuted(command, args, durationNanos, failure);
+            } catch (final RuntimeException e) {
+                LOG.warn("WebDriver command listener failed", e);
+            }
+        }
+    }
+
+    private final class Handler implements InvocationHandler {
+
+        private final Object target;
+        private final String kind;
+
+
+        Handler(final Object target, final String kind) {
+            this.target = target;
+            this.kind = kind;
+        }
+
+
+        InstrumentedWebDriver instrumented() {
+            return InstrumentedWebDriver.this;
+        }
+
+
+        public Object invoke(final Object proxyInstance, final Method method, final Object[] args) throws Throwable {
+
+            final String name = method.getName();
+
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return Boolean.valueOf(this.target.equals(unwrap(args[0])));
+                }
+                return method.invoke(this.target, args);
+            }
+            if (method.getDeclaringClass() == WrapsElement.class) {
+                return this.target;
+            }
+            if (method.getDeclaringClass() == WrapsDriver.class) {
+                // elements hand back the decorated driver, the driver what it
+                // decorates
+                return this.target == InstrumentedWebDriver.this.webDriver ? this.target : InstrumentedWebDriver.this.proxy;
+            }
+
+            final boolean accessor = (args == null || args.length == 0) && ACCESSORS.contains(name);
+
+            final Object[] unwrappedArgs = args == null ? null : (Object[]) unwrap(args);
+
+            final long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                return wrap(method.invoke(this.target, unwrappedArgs), method.getReturnType());
+
+            } catch (final InvocationTargetException e) {
+                failure = e.getCause();
+                throw failure;
+
+            } finally {
+                if (!accessor) {
+                    notifyListeners(this.kind + "." + name, args, System.nanoTime() - start, failure);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.List;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * The browser's own measurements of the current page, read from the
+ * Navigation Timing and Resource Timing APIs: how long the page took to load
+ * and how many resources it fetched, with their total transfer size.
+ *
+ * The browser keeps resource timings in a buffer of limited size, by default
+ * 150 or 250 entries depending on the browser, and drops any beyond it. The
+ * first measurement of a page raises the limit to
+ * {@link #RESOURCE_TIMING_BUFFER_SIZE} for the rest of the page's life, but
+ * what was dropped before then is gone, so a measurement says whether the
+ * buffer filled up; if it did the resource count and transfer size are only
+ * the least the page fetched.
+ */
+public final class PagePerformance {
+
+    public static final long UNKNOWN = -1;
+
+    public static final int RESOURCE_TIMING_BUFFER_SIZE = 1000;
+
+    // transfer sizes are only reported by newer browsers, and are 0 for cached
+    // or cross origin resources served without Timing-Allow-Origin. A buffer
+    // that filled before the first measurement holds exactly the browser's
+    // default number of entries.
+    private static final String MEASURE_SCRIPT = "var w = window, p = w.performance;"
+            + "if (!p || !p.timing) { return null; }"
+            + "var t = p.timing;"
+            + "var resources = p.getEntriesByType ? p.getEntriesByType('resource') : [];"
+            + "if (p.setResourceTimingBufferSize && w.__substepsResourceBufferFull === undefined) {"
+            + "  w.__substepsResourceBufferFull = resources.length == 150 || resources.length == 250;"
+            + "  p.setResourceTimingBufferSize(" + RESOURCE_TIMING_BUFFER_SIZE + ");"
+            + "  p.onresourcetimingbufferfull = function() { w.__substepsResourceBufferFull = true; };"
+            + "}"
+            + "var sized = resources.length > 0 ? resources[0].transferSize !== undefined"
+            + "  : typeof PerformanceResourceTiming != 'undefined'"
+            + "    && 'transferSize' in PerformanceResourceTiming.prototype;"
+            + "var transfer = -1;"
+            + "if (sized) {"
+            + "  transfer = 0;"
+            + "  for (var i = 0; i < resources.length; i++) { transfer += resources[i].transferSize || 0; }"
+            + "  var nav = p.getEntriesByType('navigation');"
+            + "  if (nav.length > 0 && nav[0].transferSize) { transfer += nav[0].transferSize; }"
+            + "}"
+            + "return [t.navigationStart, t.responseStart, t.domContentLoadedEventEnd, t.loadEventEnd,"
+            + "  resources.length, transfer, document.location.href, w.__substepsResourceBufferFull === true];";
+
+    private final String url;
+    private final long navigationStart;
+    private final long responseStart;
+    private final long domContentLoadedEventEnd;
+    private final long loadEventEnd;
+    private final int resourceCount;
+    private final long transferBytes;
+    private final boolean resourceBufferFull;
+
+
+    PagePerformance(final String url, final long navigationStart, final long responseStart,
+            final long domContentLoadedEventEnd, final long loadEventEnd, final int resourceCount,
+            final long transferBytes, final boolean resourceBufferFull) {
+        this.url = url;
+        this.navigationStart = navigationStart;
+        this.responseStart = responseStart;
+        this.domContentLoadedEventEnd = domContentLoadedEventEnd;
+        this.loadEventEnd = loadEventEnd;
+        this.resourceCount = resourceCount;
+        this.transferBytes = transferBytes;
+        this.resourceBufferFull = resourceBufferFull;
+    }
+
+
+    /**
+     * @return the current page's performance, or null if the driver can't
+     *         execute javascript or the browser doesn't support Navigation
+     *         Timing
+     */
+    public static PagePerformance measure(final WebDriver webDriver) {
+
+        if (!(webDriver instanceof JavascriptExecutor)) {
+            return null;
+        }
+
+        final Object result = ((JavascriptExecutor) webDriver).executeScript(MEASURE_SCRIPT);
+        if (!(result instanceof List<?>)) {
+            return null;
+        }
+
+        final List<?> values = (List<?>) result;
+        return new PagePerformance(String.valueOf(values.get(6)), number(values.get(0)), number(values.get(1)),
+                number(values.get(2)), number(values.get(3)), (int) number(values.get(4)), number(values.get(5)),
+                Boolean.TRUE.equals(values.get(7)));
+    }
+
+
+    private static long number(final Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : UNKNOWN;
+    }
+
+
+    public String getUrl() {
+        return this.url;
+    }
+
+
+    /**
+     * @return whether the page's load event has finished
+     */
+    public boolean isLoaded() {
+        return this.loadEventEnd > 0;
+    }
+
+
+    /**
+     * @return the time from the start of the navigation to the end of the
+     *         load event, or UNKNOWN if the page is still loading
+     */
+    public long getPageLoadMillis() {
+        return since(this.loadEventEnd);
+    }
+
+
+    /**
+     * @return the time from the start of the navigation to the first byte of
+     *         the response
+     */
+    public long getTimeToFirstByteMillis() {
+        return since(this.responseStart);
+    }
+
+
+    public long getDomContentLoadedMillis() {
+        return since(this.domContentLoadedEventEnd);
+    }
+
+
+    public int getResourceCount() {
+        return this.resourceCount;
+    }
+
+
+    /**
+     * @return the bytes transferred for the page and its resources, or UNKNOWN
+     *         if the browser doesn't report transfer sizes
+     */
+    public long getTransferBytes() {
+        return this.transferBytes;
+    }
+
+
+    /**
+     * @return whether the browser's resource timing buffer filled up, in
+     *         which case the resource count and transfer size are too low
+     */
+    public boolean isResourceBufferFull() {
+        return this.resourceBufferFull;
+    }
+
+
+    private long since(final long timestamp) {
+        return timestamp > 0 && this.navigationStart > 0 ? timestamp - this.navigationStart : UNKNOWN;
+    }
+
+
+    @Override
+    public String toString() {
+        return this.url + " load " + getPageLoadMillis() + " ms, first byte " + getTimeToFirstByteMillis()
+                + " ms, dom content loaded " + getDomContentLoadedMillis() + " ms, " + this.resourceCount
+                + (this.resourceBufferFull ? " or more" : "") + " resources, " + this.transferBytes + " bytes";
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+/**
+ * Records each {@link PagePerformance} measured by the steps as a line of CSV
+ * in webdriver.page.performance.file, which is started afresh by each run.
+ */
+public class PagePerformanceLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PagePerformanceLog.class);
+
+    private static PagePerformanceLog instance;
+    private static boolean configured = false;
+
+    private final File file;
+
+    // guarded by this
+    private Writer writer = null;
+    private boolean started = false;
+
+
+    public PagePerformanceLog(final File file) {
+        this.file = file;
+    }
+
+
+    /**
+     * @param configuration
+     *            the caller's configuration, the log is set up from the first
+     *            one and shared after that
+     * @return the log configured by webdriver.page.performance.file, or null
+     *         if page performance isn't being recorded
+     */
+    public static synchronized PagePerformanceLog getInstance(final WebdriverSubstepsConfiguration configuration) {
+        if (!configured) {
+            configured = true;
+
+            final String file = configuration.pagePerformanceFile();
+            if (StringUtils.isNotEmpty(file)) {
+                instance = new PagePerformanceLog(new File(file));
+            }
+        }
+        return instance;
+    }
+
+
+    /**
+     * @param step
+     *            the step that took the measurement
+     */
+    public synchronized void record(final PagePerformance performance, final String step) {
+
+        try {
+            if (this.writer == null) {
+                final File dir = this.file.getAbsoluteFile().getParentFile();
+                if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Unable to create " + dir);
+                }
+                this.writer = new FileWriter(this.file, this.started);
+                if (!this.started) {
+                    this.writer.write("time,thread,step,url,load_ms,first_byte_ms,dom_content_loaded_ms,resources,"
+                            + "transfer_bytes\n");
+                    this.started = true;
+                }
+            }
+
+            this.writer.write(String.format("%tFT%<tT,\"%s\",\"%s\",\"%s\",%d,%d,%d,%d,%d\n", new Date(),
+                    quote(Thread.currentThread().getName()), quote(step), quote(performance.getUrl()),
+                    Long.valueOf(performance.getPageLoadMillis()), Long.valueOf(performance.getTimeToFirstByteMillis()),
+                    Long.valueOf(performance.getDomContentLoadedMillis()),
+                    Integer.valueOf(performance.getResourceCount()), Long.valueOf(performance.getTransferBytes())));
+            // little is written, and it should survive the run being killed
+            this.writer.flush();
+
+        } catch (final IOException e) {
+            LOG.warn("Failed to record page performance to " + this.file, e);
+        }
+    }
+
+
+    /**
+     * Closes the file, any further measurements are added to the end of it.
+     */
+    public synchronized void close() {
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close " + this.file, e);
+            }
+            this.writer = null;
+        }
+    }
+
+
+    private static String quote(final String s) {
+        return s.replace("\"", "\"\"");
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+/**
+ * Retries an attempt that fails with one of the given exception types, backing
+ * off exponentially with some jitter between attempts, until it succeeds, the
+ * attempts run out or the timeout would be passed. Each retry is counted
+ * against the step in {@link StepMetrics}.
+ *
+ * <pre>
+ * RetryPolicy.fromConfiguration(configuration).retryOn(StaleElementReferenceException.class)
+ *         .execute(&quot;find row&quot;, attempt);
+ * </pre>
+ */
+public class RetryPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final Random JITTER = new Random();
+
+    /**
+     * Something to try, which may be tried again.
+     */
+    public interface Attempt<T> {
+
+        T run();
+    }
+
+    /**
+     * Decides whether a failed attempt is worth trying again.
+     */
+    public interface Classifier {
+
+        boolean isRetryable(RuntimeException e);
+    }
+
+    private final List<Classifier> classifiers = new ArrayList<Classifier>();
+    private long timeoutMillis;
+    private long initialDelayMillis;
+    private long maxDelayMillis;
+    private int maxAttempts;
+
+
+    private RetryPolicy(final long timeoutMillis, final long initialDelayMillis, final long maxDelayMillis,
+            final int maxAttempts) {
+        this.timeoutMillis = timeoutMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+
+    /**
+     * @return a policy with the limits in webdriver.retry.*, timing out after
+     *         the default timeout
+     */
+    public static RetryPolicy fromConfiguration(final WebdriverSubstepsConfiguration configuration) {
+        return new RetryPolicy(TimeUnit.SECONDS.toMillis(configuration.defaultTimeout()),
+                configuration.retryInitialDelayMillis(), configuration.retryMaxDelayMillis(),
+                configuration.retryMaxAttempts());
+    }
+
+
+    public static RetryPolicy withLimits(final long timeoutMillis, final long initialDelayMillis,
+            final long maxDelayMillis, final int maxAttempts) {
+        return new RetryPolicy(timeoutMillis, initialDelayMillis, maxDelayMillis, maxAttempts);
+    }
+
+
+    /**
+     * Retries attempts that fail with the exception type, or a subclass of it.
+     */
+    public RetryPolicy retryOn(final Class<? extends RuntimeException> type) {
+        return retryIf(new Classifier() {
+            public boolean isRetryable(final RuntimeException e) {
+                return type.isInstance(e);
+            }
+        });
+    }
+
+
+    public RetryPolicy retryIf(final Classifier classifier) {
+        this.classifiers.add(classifier);
+        return this;
+    }
+
+
+    public RetryPolicy withTimeout(final long duration, final TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(duration);
+        return this;
+    }
+
+
+    /**
+     * @param description
+     *            what is being attempted, for the logs
+     * @return the result of the first attempt to succeed
+     * @throws RuntimeException
+     *             the exception from the last attempt, if none succeeded or
+     *             the exception isn't one to retry
+     */
+    public <T> T execute(final String description, final Attempt<T> attempt) {
+
+        final long deadline = System.currentTimeMillis() + this.timeoutMillis;
+
+        for (int attempts = 1;; attempts++) {
+            try {
+                return attempt.run();
+
+            } catch (final RuntimeException e) {
+
+                if (!isRetryable(e) || (this.maxAttempts > 0 && attempts >= this.maxAttempts)) {
+                    throw e;
+                }
+
+                final long delay = delayMillis(attempts);
+                if (System.currentTimeMillis() + delay > deadline) {
+                    throw e;
+                }
+
+                LOG.debug("{} failed on attempt {} with {}, retrying in {}ms", new Object[] { description,
+                        Integer.valueOf(attempts), e.getClass().getSimpleName(), Long.valueOf(delay) });
+                StepMetrics.retried();
+
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return how long to wait after the attempt, at least half of the
+     *         backed off delay and at most all of it
+     */
+    long delayMillis(final int attempt) {
+
+        final long backoff = Math.min(this.maxDelayMillis, this.initialDelayMillis << Math.min(attempt - 1, 30));
+        final long half = backoff / 2;
+        synchronized (JITTER) {
+            return half + (long) (JITTER.nextDouble() * (backoff - half));
+        }
+    }
+
+
+    /**
+     * @return whether an attempt failing with e would be tried again, time
+     *         and attempts allowing
+     */
+    public boolean isRetryable(final RuntimeException e) {
+        for (final Classifier classifier : this.classifiers) {
+            if (classifier.isRetryable(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+/**
+ * Takes screenshots and saves them to webdriver.screenshots.dir. The browser
+ * has to be captured on the thread driving it, but any downscaling and the
+ * writing happen on a background thread. Writes queue up to
+ * webdriver.screenshots.queue.size, after which the capturing thread writes
+ * its own rather than screenshots piling up in memory. Callers may ask for a
+ * screenshot identical to the previous one saved on the same thread to be
+ * skipped.
+ */
+public class ScreenshotService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScreenshotService.class);
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 30000;
+
+    private static ScreenshotService instance;
+
+    private final File dir;
+    private final int maxWidth;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private final ThreadPoolExecutor writer;
+
+    private final ThreadLocal<byte[]> lastDigest = new ThreadLocal<byte[]>();
+
+
+    /**
+     * @param dir
+     *            where to save screenshots
+     * @param maxWidth
+     *            screenshots wider than this are scaled down, 0 to keep them
+     *            as they are
+     * @param queueSize
+     *            the number of screenshots that may be waiting to be written
+     */
+    public ScreenshotService(final String dir, final int maxWidth, final int queueSize) {
+        this.dir = new File(dir);
+        this.maxWidth = maxWidth;
+
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                Math.max(1, queueSize)), new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "screenshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+
+    /**
+     * @param configuration
+     *            the caller's configuration, the service is set up from the
+     *            first one and shared after that
+     * @return the service configured by webdriver.screenshots.*
+     */
+    public static synchronized ScreenshotService getInstance(final WebdriverSubstepsConfiguration configuration) {
+        if (instance == null) {
+            instance = new ScreenshotService(configuration.screenshotsDir(), configuration.screenshotsMaxWidth(),
+                    configuration.screenshotsQueueSize());
+        }
+        return instance;
+    }
+
+
+    /**
+     * @return a png of the page, or null if the driver can't take screenshots
+     */
+    public static byte[] capture(final WebDriver webDriver) {
+        return webDriver instanceof TakesScreenshot ? ((TakesScreenshot) webDriver)
+                .getScreenshotAs(OutputType.BYTES) : null;
+    }
+
+
+    /**
+     * Captures the page and saves it in the background.
+     *
+     * @param skipUnchanged
+     *            true not to save the screenshot if the page looks just like
+     *            it did in the last one saved by this thread, as for the
+     *            screenshot after every step
+     * @return the file the screenshot will be written to, or null if the
+     *         driver can't take screenshots or it is skipped for being
+     *         unchanged
+     */
+    public File screenshot(final WebDriver webDriver, final String name, final boolean skipUnchanged) {
+        final byte[] png = capture(webDriver);
+        return png == null ? null : save(png, name, skipUnchanged);
+    }
+
+
+    /**
+     * Saves a screenshot that has already been captured in the background.
+     *
+     * @param skipUnchanged
+     *            true not to save the screenshot if it is the same as the
+     *            last one saved by this thread
+     * @return the file the screenshot will be written to, or null if it is
+     *         skipped for being unchanged
+     */
+    public File save(final byte[] png, final String name, final boolean skipUnchanged) {
+
+        final byte[] digest = digest(png);
+        if (skipUnchanged && digest != null && Arrays.equals(digest, this.lastDigest.get())) {
+            LOG.debug("Screenshot {} unchanged, not saving", name);
+            return null;
+        }
+        this.lastDigest.set(digest);
+
+        final File file = new File(this.dir, String.format("%04d-%s.png", Integer.valueOf(this.sequence
+                .incrementAndGet()), name.replaceAll("[^A-Za-z0-9._-]+", "_")));
+
+        this.writer.execute(new Runnable() {
+            public void run() {
+                write(file, png);
+            }
+        });
+        return file;
+    }
+
+
+    /**
+     * Waits for the screenshots taken so far to be written.
+     */
+    public void flush() {
+
+        final long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        try {
+            while ((this.writer.getActiveCount() > 0 || !this.writer.getQueue().isEmpty())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private void write(final File file, final byte[] png) {
+
+        try {
+            if (!this.dir.exists() && !this.dir.mkdirs()) {
+                throw new IOException("Unable to create " + this.dir);
+            }
+
+            final BufferedImage scaled = this.maxWidth > 0 ? downscale(png) : null;
+
+            if (scaled != null) {
+                ImageIO.write(scaled, "png", file);
+            } else {
+                final OutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(png);
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (final IOException e) {
+            LOG.warn("Failed to write screenshot " + file, e);
+        }
+    }
+
+
+    /**
+     * @return the image scaled down to the maximum width, or null if it is
+     *         already narrow enough
+     */
+    private BufferedImage downscale(final byte[] png) throws IOException {
+
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        if (image == null || image.getWidth() <= this.maxWidth) {
+            return null;
+        }
+
+        final int height = Math.max(1, image.getHeight() * this.maxWidth / image.getWidth());
+        final BufferedImage scaled = new BufferedImage(this.maxWidth, height, BufferedImage.TYPE_INT_RGB);
+
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, this.maxWidth, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+
+    private static byte[] digest(final byte[] png) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(png);
+        } catch (final NoSuchAlgorithmException e) {
+            // every jvm has md5, but it's no reason not to save a screenshot
+            return null;
+        }
+    }
+}
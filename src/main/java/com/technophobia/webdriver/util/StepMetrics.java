@@ -0,0 +1,145 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+/**
+ * What the step currently executing on this thread has cost so far: the
+ * WebDriver commands it has issued and the time it has spent waiting in
+ * {@link ElementLocators}. Steps are started and finished by the runner's
+ * StepTimingListener, the counts are fed in by the instrumented driver and
+ * the locators.
+ */
+public final class StepMetrics {
+
+    private static final ThreadLocal<StepMetrics> current = new ThreadLocal<StepMetrics>();
+
+    /**
+     * Counts commands against whichever step is executing on the calling
+     * thread.
+     */
+    public static final WebDriverCommandListener COMMAND_COUNTER = new WebDriverCommandListener() {
+        public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+                final Throwable failure) {
+            final StepMetrics metrics = current();
+            if (metrics != null) {
+                metrics.commands++;
+                metrics.commandNanos += durationNanos;
+            }
+        }
+    };
+
+    private final String step;
+    private final long startNanos;
+    private int commands = 0;
+    private long commandNanos = 0;
+    private long waitNanos = 0;
+    private int retries = 0;
+
+
+    private StepMetrics(final String step) {
+        this.step = step;
+        this.startNanos = System.nanoTime();
+    }
+
+
+    /**
+     * Starts accounting for a step on the calling thread.
+     *
+     * @param step
+     *            a description of the step
+     */
+    public static StepMetrics start(final String step) {
+        final StepMetrics metrics = new StepMetrics(step);
+        current.set(metrics);
+        return metrics;
+    }
+
+
+    /**
+     * @return the step executing on the calling thread, or null if there isn't
+     *         one
+     */
+    public static StepMetrics current() {
+        return current.get();
+    }
+
+
+    /**
+     * Stops accounting for the calling thread's step.
+     *
+     * @return the finished step, or null if none was started
+     */
+    public static StepMetrics finish() {
+        final StepMetrics metrics = current.get();
+        current.remove();
+        return metrics;
+    }
+
+
+    /**
+     * Adds to the time the calling thread's step has spent waiting.
+     */
+    public static void waited(final long nanos) {
+        final StepMetrics metrics = current.get();
+        if (metrics != null) {
+            metrics.waitNanos += nanos;
+        }
+    }
+
+
+    /**
+     * Counts a retry by {@link RetryPolicy} against the calling thread's step.
+     */
+    public static void retried() {
+        final StepMetrics metrics = current.get();
+        if (metrics != null) {
+            metrics.retries++;
+        }
+    }
+
+
+    public String getStep() {
+        return this.step;
+    }
+
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+
+
+    public int getCommands() {
+        return this.commands;
+    }
+
+
+    public long getCommandNanos() {
+        return this.commandNanos;
+    }
+
+
+    public long getWaitNanos() {
+        return this.waitNanos;
+    }
+
+
+    public int getRetries() {
+        return this.retries;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the text of every cell in a table with a single script execution,
+ * rather than a findElements per row and a getText per cell. Rows and cells
+ * are those that findElements(By.tagName("tr")) and
+ * findElements(By.tagName("td")) would return, and the cell text is the
+ * rendered text with whitespace collapsed, as getText would return it.
+ */
+public class TableScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TableScanner.class);
+
+    private static final String CELL_TEXT_SCRIPT = "var rows = arguments[0].getElementsByTagName('tr'), matrix = [];"
+            + "for (var r = 0; r < rows.length; r++) {"
+            + "  var cells = rows[r].getElementsByTagName('td'), texts = [];"
+            + "  for (var c = 0; c < cells.length; c++) {"
+            + "    var text = typeof cells[c].innerText === 'string' ? cells[c].innerText : cells[c].textContent;"
+            + "    texts.push((text || '').replace(/[\\s\\u00a0]+/g, ' ').replace(/^ | $/g, ''));"
+            + "  }"
+            + "  matrix.push(texts);"
+            + "}"
+            + "return matrix;";
+
+    private static final String ROWS_SCRIPT = "var rows = arguments[0].getElementsByTagName('tr'), found = [];"
+            + "for (var i = 0; i < arguments[1].length; i++) { found.push(rows[arguments[1][i]]); }"
+            + "return found;";
+
+    private final WebDriver webDriver;
+
+
+    public TableScanner(final WebDriver webDriver) {
+        this.webDriver = webDriver;
+    }
+
+
+    /**
+     * @return the rows of the table containing cells with each of the values,
+     *         in order, or null if the driver can't execute the scan, in
+     *         which case the caller should look through the rows itself
+     */
+    public List<WebElement> findRowsContainingText(final WebElement table, final List<String> columnValues) {
+
+        if (!(this.webDriver instanceof JavascriptExecutor)) {
+            return null;
+        }
+
+        final JavascriptExecutor executor = (JavascriptExecutor) this.webDriver;
+
+        try {
+            final Object matrix = executor.executeScript(CELL_TEXT_SCRIPT, table);
+            if (!(matrix instanceof List)) {
+                LOG.debug("Unexpected result scanning table: {}", matrix);
+                return null;
+            }
+
+            final List<Long> matchingIndexes = new ArrayList<Long>();
+            long idx = 0;
+            for (final Object row : (List<?>) matrix) {
+                if (containsInOrder(cellTexts((List<?>) row), columnValues)) {
+                    matchingIndexes.add(Long.valueOf(idx));
+                }
+                idx++;
+            }
+
+            if (matchingIndexes.isEmpty()) {
+                return new ArrayList<WebElement>();
+            }
+
+            final List<WebElement> rows = new ArrayList<WebElement>(matchingIndexes.size());
+            for (final Object row : (List<?>) executor.executeScript(ROWS_SCRIPT, table, matchingIndexes)) {
+                rows.add((WebElement) row);
+            }
+            return rows;
+
+        } catch (final WebDriverException e) {
+            LOG.debug("Unable to scan table with javascript: {}", e.getMessage());
+            return null;
+        } catch (final UnsupportedOperationException e) {
+            // HtmlUnit with javascript disabled
+            return null;
+        }
+    }
+
+
+    /**
+     * @return true if the cells contain each of the values, in order, not
+     *         necessarily in adjacent cells. The cells are only read as far as
+     *         needed.
+     */
+    public static boolean containsInOrder(final Iterator<String> cellTexts, final List<String> values) {
+
+        if (values.isEmpty()) {
+            return true;
+        }
+
+        int lookingForIdx = 0;
+
+        while (cellTexts.hasNext()) {
+            final String text = cellTexts.next();
+
+            if (text != null && text.contains(values.get(lookingForIdx))) {
+                lookingForIdx++;
+                if (lookingForIdx >= values.size()) {
+                    // found em all
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static Iterator<String> cellTexts(final List<?> row) {
+        final Iterator<?> cells = row.iterator();
+        return new Iterator<String>() {
+
+            public boolean hasNext() {
+                return cells.hasNext();
+            }
+
+
+            public String next() {
+                final Object text = cells.next();
+                return text == null ? null : text.toString();
+            }
+
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
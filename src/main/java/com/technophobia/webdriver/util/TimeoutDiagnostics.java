@@ -0,0 +1,289 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+/**
+ * Passes details of waits that time out to {@link Sink}s. The page source,
+ * screenshot and url are only fetched from the browser if a sink asks for
+ * them, so a timeout that nothing is interested in costs nothing, which
+ * matters for the lookups that expect not to find anything.
+ *
+ * By default the page source is logged at debug level; setting
+ * webdriver.timeout.diagnostics.dir in the waiting context's configuration
+ * also writes it, and optionally a screenshot, to a file per timeout.
+ */
+public final class TimeoutDiagnostics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutDiagnostics.class);
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * Told about each timed out wait, on the thread that was waiting.
+     */
+    public interface Sink {
+
+        void timedOut(Capture capture);
+    }
+
+    private static final List<Sink> SINKS = new CopyOnWriteArrayList<Sink>();
+
+    static {
+        SINKS.add(new DebugLogSink());
+    }
+
+    // one per directory, the workers may be configured to write to their own
+    private static final Map<String, TimeoutDiagnosticsWriter> WRITERS =
+            new HashMap<String, TimeoutDiagnosticsWriter>();
+
+    private TimeoutDiagnostics() {
+        // static helpers only
+    }
+
+
+    public static void addSink(final Sink sink) {
+        SINKS.add(sink);
+    }
+
+
+    public static void removeSink(final Sink sink) {
+        SINKS.remove(sink);
+    }
+
+
+    /**
+     * @param webDriver
+     *            the driver that was waiting
+     * @param waitingFor
+     *            what it was waiting for, e.g. the locator
+     * @param timeoutSeconds
+     *            how long it waited
+     * @param configuration
+     *            the configuration of the context that was waiting
+     */
+    public static void timedOut(final WebDriver webDriver, final String waitingFor, final long timeoutSeconds,
+            final WebdriverSubstepsConfiguration configuration) {
+
+        final List<Sink> sinks = new ArrayList<Sink>(SINKS);
+        final TimeoutDiagnosticsWriter writer = writer(configuration);
+        if (writer != null) {
+            sinks.add(writer);
+        }
+        if (sinks.isEmpty()) {
+            return;
+        }
+
+        final Capture capture = new Capture(webDriver, waitingFor, timeoutSeconds,
+                configuration.timeoutDiagnosticsMaxBytes());
+
+        for (final Sink sink : sinks) {
+            try {
+                sink.timedOut(capture);
+            } catch (final RuntimeException e) {
+                LOG.warn("Timeout diagnostics sink failed", e);
+            }
+        }
+    }
+
+
+    private static TimeoutDiagnosticsWriter writer(final WebdriverSubstepsConfiguration configuration) {
+
+        final String dir = configuration.timeoutDiagnosticsDir();
+        if (StringUtils.isEmpty(dir)) {
+            return null;
+        }
+        synchronized (WRITERS) {
+            TimeoutDiagnosticsWriter writer = WRITERS.get(dir);
+            if (writer == null) {
+                writer = new TimeoutDiagnosticsWriter(dir, configuration.timeoutDiagnosticsScreenshot());
+                WRITERS.put(dir, writer);
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * What was being waited for, and the state of the browser when the wait
+     * gave up, each fetched on first use and then kept. Must be used on the
+     * thread that was waiting.
+     */
+    public static final class Capture {
+
+        private final WebDriver webDriver;
+        private final String waitingFor;
+        private final long timeoutSeconds;
+        private final int maxBytes;
+        private final long timestamp = System.currentTimeMillis();
+        private final String step;
+
+        private String url;
+        private String pageSource;
+        private byte[] screenshot;
+        private boolean screenshotTaken = false;
+
+
+        Capture(final WebDriver webDriver, final String waitingFor, final long timeoutSeconds, final int maxBytes) {
+            this.webDriver = webDriver;
+            this.waitingFor = waitingFor;
+            this.timeoutSeconds = timeoutSeconds;
+            this.maxBytes = maxBytes;
+
+            final StepMetrics metrics = StepMetrics.current();
+            this.step = metrics == null ? null : metrics.getStep();
+        }
+
+
+        public String getWaitingFor() {
+            return this.waitingFor;
+        }
+
+
+        public long getTimeoutSeconds() {
+            return this.timeoutSeconds;
+        }
+
+
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+
+
+        /**
+         * @return the step that was waiting, if step metrics are enabled
+         */
+        public String getStep() {
+            return this.step;
+        }
+
+
+        public String getUrl() {
+            if (this.url == null) {
+                try {
+                    this.url = this.webDriver.getCurrentUrl();
+                } catch (final WebDriverException e) {
+                    this.url = "unknown: " + e.getMessage();
+                }
+            }
+            return this.url;
+        }
+
+
+        /**
+         * @return the page source, truncated to the configured maximum size
+         *         in UTF-8 bytes
+         */
+        public String getPageSource() {
+            if (this.pageSource == null) {
+                String source;
+                try {
+                    source = this.webDriver.getPageSource();
+                } catch (final WebDriverException e) {
+                    source = "unavailable: " + e.getMessage();
+                }
+                this.pageSource = source == null ? null : truncate(source, this.maxBytes);
+            }
+            return this.pageSource;
+        }
+
+
+        /**
+         * @return the source cut down to at most maxBytes when encoded as
+         *         UTF-8, at a character boundary, with a note of how big it was
+         */
+        static String truncate(final String source, final int maxBytes) {
+
+            if (maxBytes <= 0 || source.length() <= maxBytes / 3) {
+                // too short to be over the limit, however it encodes
+                return source;
+            }
+            try {
+                final byte[] bytes = source.getBytes(UTF8);
+                if (bytes.length <= maxBytes) {
+                    return source;
+                }
+
+                // back up to the start of the character that won't fit
+                int cut = maxBytes;
+                while (cut > 0 && (bytes[cut] & 0xC0) == 0x80) {
+                    cut--;
+                }
+                return new String(bytes, 0, cut, UTF8) + "\n<!-- truncated from " + bytes.length + " bytes -->";
+
+            } catch (final UnsupportedEncodingException e) {
+                // every jvm has utf-8
+                throw new IllegalStateException(e);
+            }
+        }
+
+
+        /**
+         * @return a png of the page, or null if the driver can't take one or
+         *         it is bigger than the configured maximum size
+         */
+        public byte[] getScreenshot() {
+            if (!this.screenshotTaken) {
+                this.screenshotTaken = true;
+
+                if (this.webDriver instanceof TakesScreenshot) {
+                    try {
+                        final byte[] png = ((TakesScreenshot) this.webDriver).getScreenshotAs(OutputType.BYTES);
+                        if (this.maxBytes <= 0 || png.length <= this.maxBytes) {
+                            this.screenshot = png;
+                        }
+                    } catch (final WebDriverException e) {
+                        LOG.debug("Failed to take timeout screenshot: " + e.getMessage());
+                    }
+                }
+            }
+            return this.screenshot;
+        }
+
+
+        @Override
+        public String toString() {
+            return "timed out after " + this.timeoutSeconds + "s waiting for " + this.waitingFor;
+        }
+    }
+
+    private static final class DebugLogSink implements Sink {
+
+        public void timedOut(final Capture capture) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(capture + ", page src:\n" + capture.getPageSource());
+            }
+        }
+    }
+}
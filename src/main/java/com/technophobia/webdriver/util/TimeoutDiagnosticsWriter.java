@@ -0,0 +1,125 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TimeoutDiagnostics.Sink} that writes the page source, and
+ * optionally a screenshot, of each timeout to a directory. The browser is
+ * read on the waiting thread but the files are written on a background
+ * thread; if that falls behind, further timeouts are dropped rather than
+ * queued without limit.
+ */
+public class TimeoutDiagnosticsWriter implements TimeoutDiagnostics.Sink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutDiagnosticsWriter.class);
+
+    private static final int MAX_QUEUED_WRITES = 16;
+
+    private final File dir;
+    private final boolean screenshots;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final ExecutorService writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_QUEUED_WRITES), new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "timeout-diagnostics-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+
+    public TimeoutDiagnosticsWriter(final String dir, final boolean screenshots) {
+        this.dir = new File(dir);
+        this.screenshots = screenshots;
+    }
+
+
+    public void timedOut(final TimeoutDiagnostics.Capture capture) {
+
+        final String name = String.format("timeout-%s-%03d", new SimpleDateFormat("yyyyMMdd-HHmmss")
+                .format(new Date(capture.getTimestamp())), Integer.valueOf(this.count.incrementAndGet()));
+
+        final StringBuilder buf = new StringBuilder();
+        buf.append("<!-- ").append(capture).append("\n     url: ").append(capture.getUrl());
+        if (capture.getStep() != null) {
+            buf.append("\n     step: ").append(capture.getStep());
+        }
+        buf.append(" -->\n").append(capture.getPageSource());
+
+        final byte[] source;
+        try {
+            source = buf.toString().getBytes("UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // every jvm has utf-8
+            throw new IllegalStateException(e);
+        }
+        final byte[] screenshot = this.screenshots ? capture.getScreenshot() : null;
+
+        try {
+            this.writer.execute(new Runnable() {
+                public void run() {
+                    write(name + ".html", source);
+                    if (screenshot != null) {
+                        write(name + ".png", screenshot);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            LOG.warn("Dropping timeout diagnostics {}, too many waiting to be written", name);
+        }
+    }
+
+
+    private void write(final String name, final byte[] bytes) {
+
+        final File file = new File(this.dir, name);
+        try {
+            if (!this.dir.exists() && !this.dir.mkdirs()) {
+                throw new IOException("Unable to create " + this.dir);
+            }
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        } catch (final IOException e) {
+            LOG.warn("Failed to write timeout diagnostics " + file, e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Urls that the browser shouldn't load, such as analytics, fonts and ads, set
+ * with webdriver.block.urls as a comma separated list of patterns where *
+ * matches anything and ? any one character, e.g.
+ * <code>*google-analytics.com*,*doubleclick.net*</code>. Patterns are matched
+ * against the whole url and, as browsers don't expose the path of https
+ * requests to proxy scripts, against the host alone.
+ */
+public class UrlBlockList {
+
+    // requests for blocked urls are sent to a port nothing listens on, so
+    // they fail straight away
+    static final String BLOCKING_PROXY = "PROXY 127.0.0.1:9";
+
+    private final List<String> patterns;
+    private final List<Pattern> regexes;
+
+
+    public UrlBlockList(final String patternList) {
+
+        final List<String> parsed = new ArrayList<String>();
+        final List<Pattern> compiled = new ArrayList<Pattern>();
+
+        if (patternList != null) {
+            for (final String pattern : patternList.split(",")) {
+                final String trimmed = pattern.trim();
+                if (trimmed.length() > 0) {
+                    parsed.add(trimmed);
+                    compiled.add(toRegex(trimmed));
+                }
+            }
+        }
+
+        this.patterns = Collections.unmodifiableList(parsed);
+        this.regexes = compiled;
+    }
+
+
+    public boolean isEmpty() {
+        return this.patterns.isEmpty();
+    }
+
+
+    public List<String> getPatterns() {
+        return this.patterns;
+    }
+
+
+    public boolean isBlocked(final String url, final String host) {
+
+        for (final Pattern regex : this.regexes) {
+            if (regex.matcher(url).matches() || (host != null && regex.matcher(host).matches())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @param proxyHostAndPort
+     *            where the urls that aren't blocked should go, or null to
+     *            connect directly
+     * @return a proxy auto config script that blocks the urls
+     */
+    public String toPacScript(final String proxyHostAndPort) {
+
+        final StringBuilder buf = new StringBuilder();
+        buf.append("function FindProxyForURL(url, host) {\n  var blocked = [");
+
+        for (int i = 0; i < this.patterns.size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append('\'').append(this.patterns.get(i).replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+        }
+
+        buf.append("];\n  for (var i = 0; i < blocked.length; i++) {\n");
+        buf.append("    if (shExpMatch(url, blocked[i]) || shExpMatch(host, blocked[i])) {\n");
+        buf.append("      return '").append(BLOCKING_PROXY).append("';\n    }\n  }\n");
+        buf.append("  return '").append(
+                StringUtils.isEmpty(proxyHostAndPort) ? "DIRECT" : "PROXY " + proxyHostAndPort).append("';\n}\n");
+
+        return buf.toString();
+    }
+
+
+    /**
+     * @return the proxy auto config script as a data url, for the browser's
+     *         proxy settings
+     */
+    public String toPacUrl(final String proxyHostAndPort) {
+        try {
+            return "data:application/x-ns-proxy-autoconfig;base64,"
+                    + DatatypeConverter.printBase64Binary(toPacScript(proxyHostAndPort).getBytes("UTF-8"));
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static Pattern toRegex(final String glob) {
+
+        final StringBuilder regex = new StringBuilder();
+        for (final char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
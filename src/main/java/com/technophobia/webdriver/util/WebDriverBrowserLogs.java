@@ -28,19 +28,28 @@ import org.openqa.selenium.logging.Logs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
 
 public class WebDriverBrowserLogs {
     private static final Logger logger = LoggerFactory.getLogger(WebDriverBrowserLogs.class);
     
     private final WebDriver webDriver;
+    private final WebdriverSubstepsConfiguration configuration;
     
-    public WebDriverBrowserLogs (WebDriver webDriver){
+    public WebDriverBrowserLogs (WebDriver webDriver, WebdriverSubstepsConfiguration configuration){
         this.webDriver = webDriver;
+        this.configuration = configuration;
     }
     
     public void printBrowserLogs() {
-        
-        if (logger.isTraceEnabled()){
+
+        final BrowserLogCollector collector = BrowserLogCollector.getInstance(configuration);
+        if (collector != null) {
+            // already streamed after each step, pick up anything since
+            collector.collect(webDriver, null);
+
+        } else if (logger.isTraceEnabled()){
             final Logs logs = webDriver.manage().logs();
             if (logs != null) {
                 final LogEntries logEntries = logs.get(LogType.BROWSER);
@@ -0,0 +1,38 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+/**
+ * Notified of every command issued through a driver decorated by
+ * {@link InstrumentedWebDriver}, on the thread that issued it.
+ */
+public interface WebDriverCommandListener {
+
+    /**
+     * @param command
+     *            the interface and method called, eg. WebElement.click
+     * @param args
+     *            the arguments, null if there were none
+     * @param durationNanos
+     *            how long the underlying driver took
+     * @param failure
+     *            the exception thrown by the driver, or null
+     */
+    void commandExecuted(String command, Object[] args, long durationNanos, Throwable failure);
+}
@@ -18,18 +18,20 @@
  */
 package com.technophobia.webdriver.util;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import org.junit.Assert;
 import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.technophobia.webdriver.substeps.runner.Condition;
 import com.technophobia.webdriver.substeps.runner.DriverType;
+import com.technophobia.webdriver.substeps.runner.ResetMode;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
 import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsPropertiesConfiguration;
 
 /**
@@ -47,16 +49,32 @@ public class WebDriverContext {
     private final DriverType driverType;
     private final WebDriver webDriver;
     private final WebDriverBrowserLogs browserLogs;
+    private final WebdriverSubstepsConfiguration configuration;
 
     private WebElement currentElement = null;
+    private ElementStash.Recipe currentElementRecipe = null;
     private boolean failed = false;
+    private boolean shutdown = false;
 
-    private Map<String, WebElement> elementStash = null;
+    private ElementStash elementStash = null;
+    private ElementLookupCache lookupCache = null;
+    private boolean lookupCacheRefused = false;
 
     public WebDriverContext(final DriverType driverType, final WebDriver webDriver) {
+        this(driverType, webDriver, WebdriverSubstepsPropertiesConfiguration.INSTANCE);
+    }
+
+    /**
+     * @param configuration
+     *            the configuration steps using this context run with, which
+     *            may differ from one parallel worker to another
+     */
+    public WebDriverContext(final DriverType driverType, final WebDriver webDriver,
+            final WebdriverSubstepsConfiguration configuration) {
         this.driverType = driverType;
         this.webDriver = webDriver;
-        browserLogs = new WebDriverBrowserLogs(webDriver);
+        this.configuration = configuration;
+        browserLogs = new WebDriverBrowserLogs(webDriver, configuration);
     }
 
     public WebElement getCurrentElement() {
@@ -65,7 +83,33 @@ public class WebDriverContext {
     }
 
     public void setCurrentElement(final WebElement currentElement) {
+        setCurrentElement(currentElement, null);
+    }
+
+    /**
+     * @param recipe
+     *            how to find the current element again if it goes stale, may
+     *            be null
+     */
+    public void setCurrentElement(final WebElement currentElement, final ElementStash.Recipe recipe) {
         this.currentElement = currentElement;
+        this.currentElementRecipe = recipe;
+    }
+
+    /**
+     * @return how the current element was found, or null if it can't be
+     *         found again
+     */
+    public ElementStash.Recipe getCurrentElementRecipe() {
+        return this.currentElementRecipe;
+    }
+
+    /**
+     * @return a recipe for the element by finds inside the current element,
+     *         or null if the current element can't be found again
+     */
+    public ElementStash.Recipe childRecipe(final By by) {
+        return this.currentElementRecipe != null ? ElementStash.recipe(this.currentElementRecipe, by) : null;
     }
 
     public WebDriver getWebDriver() {
@@ -76,21 +120,61 @@ public class WebDriverContext {
         return this.driverType;
     }
 
+    public WebdriverSubstepsConfiguration getConfiguration() {
+        return this.configuration;
+    }
+
     public void shutdownWebDriver() {
         logger.debug("Shutting WebDriver down");
         if (this.webDriver != null) {
-            browserLogs.printBrowserLogs();
-            this.webDriver.manage().deleteAllCookies();
-            this.webDriver.quit();
+            // a browser that has died still has to be quit, so the tidying up
+            // before it mustn't stop that happening
+            try {
+                try {
+                    browserLogs.printBrowserLogs();
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to print browser logs: " + e.getMessage());
+                }
+                try {
+                    this.webDriver.manage().deleteAllCookies();
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to delete cookies: " + e.getMessage());
+                }
+            } finally {
+                this.webDriver.quit();
+                this.shutdown = true;
+            }
         }
     }
 
     public void resetWebDriver() {
+        resetWebDriver(this.configuration.resetMode());
+    }
+
+    /**
+     * @return false if the browser state couldn't be cleared, in which case
+     *         the webdriver shouldn't be reused
+     */
+    public boolean resetWebDriver(final ResetMode resetMode) {
         logger.debug("Resetting WebDriver");
+        if (this.lookupCache != null) {
+            this.lookupCache.invalidate();
+        }
         if (this.webDriver != null) {
             browserLogs.printBrowserLogs();
-            this.webDriver.manage().deleteAllCookies();
+
+            if (resetMode == ResetMode.FULL) {
+                try {
+                    BrowserStateReset.reset(this.webDriver);
+                } catch (final WebDriverException e) {
+                    logger.warn("Failed to reset WebDriver: " + e.getMessage());
+                    return false;
+                }
+            } else {
+                this.webDriver.manage().deleteAllCookies();
+            }
         }
+        return true;
     }
 
    
@@ -103,40 +187,96 @@ public class WebDriverContext {
         this.failed = true;
     }
 
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
     public WebElement waitForElement(final By by) {
-        return ElementLocators.waitForElement(by, WebdriverSubstepsPropertiesConfiguration.INSTANCE.defaultTimeout(),
-                this.webDriver);
+        return waitForElement(by, this.configuration.defaultTimeout());
     }
 
     public WebElement waitForElement(final By by, final long timeOutSeconds) {
-        return ElementLocators.waitForElement(by, timeOutSeconds, this.webDriver);
+
+        final ElementLookupCache cache = lookupCache();
+
+        WebElement element = cache != null ? cache.get(by) : null;
+        if (element == null) {
+            element = ElementLocators.waitForElement(by, timeOutSeconds, this.webDriver, this.configuration);
+
+            if (cache != null && element != null) {
+                cache.put(by, element);
+            }
+        }
+        return element;
+    }
+
+    private ElementLookupCache lookupCache() {
+        if (this.lookupCache == null && this.configuration.lookupCache() && !this.lookupCacheRefused) {
+            if (ElementLookupCache.canWatch(this.webDriver)) {
+                this.lookupCache = new ElementLookupCache(this.webDriver);
+            } else {
+                logger.warn("webdriver.lookup.cache is ignored, the webdriver doesn't report the commands that change "
+                        + "the page, as the one from DefaultWebDriverFactory does");
+                this.lookupCacheRefused = true;
+            }
+        }
+        return this.lookupCache;
     }
 
     public boolean waitForCondition(final Condition condition) {
-        return ElementLocators.waitForCondition(condition, this.webDriver);
+        return ElementLocators.waitForCondition(condition, this.configuration.defaultTimeout(), this.webDriver,
+                this.configuration);
     }
 
-    public void stashElement(final String key, final WebElement element) {
+    /**
+     * Reads the text and named attributes of all the elements together, rather
+     * than a driver call per element per property.
+     *
+     * @see ElementSnapshot
+     */
+    public List<ElementSnapshot> snapshot(final List<WebElement> elements, final boolean withText,
+            final String... attributeNames) {
+        return ElementSnapshot.snapshot(this.webDriver, elements, withText, attributeNames);
+    }
 
-        if (this.elementStash == null) {
-            this.elementStash = new HashMap<String, WebElement>();
-        }
+    /**
+     * Stashes the element for the rest of the scenario.
+     */
+    public void stashElement(final String key, final WebElement element) {
+        stashElement(new ElementStash.Key(key, ElementStash.Scope.SCENARIO), element, null);
+    }
 
-        if (this.elementStash.containsKey(key)) {
+    /**
+     * @param recipe
+     *            how to find the element again if it goes stale, may be null
+     */
+    public void stashElement(final ElementStash.Key key, final WebElement element, final ElementStash.Recipe recipe) {
 
-            // do we care ?
-            logger.debug("replacing existing object in stash using key: " + key);
+        if (this.elementStash == null) {
+            this.elementStash = new ElementStash(this.webDriver);
         }
-
-        this.elementStash.put(key, element);
+        this.elementStash.put(key, element, recipe);
     }
 
     public WebElement getElementFromStash(final String key) {
+        return getElementFromStash(new ElementStash.Key(key, ElementStash.Scope.SCENARIO));
+    }
+
+    public WebElement getElementFromStash(final ElementStash.Key key) {
 
         final WebElement elem = this.elementStash != null ? this.elementStash.get(key) : null;
 
-        Assert.assertNotNull("Attempt to retrieve a null element from the stash with key: " + key, elem);
+        Assert.assertNotNull("Attempt to retrieve a null element from the stash with key: " + key.getName(), elem);
 
         return elem;
     }
+
+    /**
+     * Forgets the stashed elements kept for the scope, or any shorter one.
+     */
+    public void clearStash(final ElementStash.Scope scope) {
+        if (this.elementStash != null) {
+            this.elementStash.clear(scope);
+        }
+    }
 }
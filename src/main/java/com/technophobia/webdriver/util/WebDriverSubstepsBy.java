@@ -19,14 +19,18 @@
 package com.technophobia.webdriver.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.By;
 import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,14 +41,40 @@ import com.technophobia.substeps.step.StepImplementationUtils;
  */
 public abstract class WebDriverSubstepsBy {
 
-    
+    // the locators are immutable, so those built from step parameters are
+    // interned to save re-parsing attributes and rebuilding xpaths each time
+    // a step runs, or each time round a wait loop
+    private static final int MAX_CACHED_LOCATORS = 512;
+
+    private static final Map<List<Object>, By> LOCATOR_CACHE = new LinkedHashMap<List<Object>, By>(64, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, By> eldest) {
+            return size() > MAX_CACHED_LOCATORS;
+        }
+    };
+
+    private interface LocatorFactory<T extends By> {
+        T create();
+    }
 
     public static ByIdAndText ByIdAndText(final String id, final String text) {
-        return new ByIdAndText(id, text);
+        return cached(key("ByIdAndText", id, text), new LocatorFactory<ByIdAndText>() {
+            public ByIdAndText create() {
+                return new ByIdAndText(id, text);
+            }
+        });
     }
 
     public static ByIdAndText ByIdAndCaseSensitiveText(final String id, final String text) {
-        return new ByIdAndText(id, text, true);
+        return cached(key("ByIdAndCaseSensitiveText", id, text), new LocatorFactory<ByIdAndText>() {
+            public ByIdAndText create() {
+                return new ByIdAndText(id, text, true);
+            }
+        });
     }
 
     public static ByTagAndAttributes ByTagAndAttributes(final String tagName,
@@ -54,17 +84,27 @@ public abstract class WebDriverSubstepsBy {
 
     public static ByTagAndAttributes ByTagAndAttributes(final String tagName, final String attributeString) {
 
-        final Map<String, String> expectedAttributes = StepImplementationUtils.convertToMap(attributeString);
+        return cached(key("ByTagAndAttributes", tagName, attributeString), new LocatorFactory<ByTagAndAttributes>() {
+            public ByTagAndAttributes create() {
+                final Map<String, String> expectedAttributes = StepImplementationUtils.convertToMap(attributeString);
 
-        return new ByTagAndAttributes(tagName, expectedAttributes);
+                return new ByTagAndAttributes(tagName, expectedAttributes);
+            }
+        });
     }
 
     public static ByTagAndAttributes NthByTagAndAttributes(final String tagName, final String attributeString,
             final int nth) {
 
-        final Map<String, String> expectedAttributes = StepImplementationUtils.convertToMap(attributeString);
+        return cached(key("NthByTagAndAttributes", tagName, attributeString, Integer.valueOf(nth)),
+                new LocatorFactory<ByTagAndAttributes>() {
+                    public ByTagAndAttributes create() {
+                        final Map<String, String> expectedAttributes = StepImplementationUtils
+                                .convertToMap(attributeString);
 
-        return new ByTagAndAttributes(tagName, expectedAttributes, nth);
+                        return new ByTagAndAttributes(tagName, expectedAttributes, nth);
+                    }
+                });
     }
 
     public static ByCurrentWebElement ByCurrentWebElement(final WebElement elem) {
@@ -72,19 +112,35 @@ public abstract class WebDriverSubstepsBy {
     }
 
     public static ByTagAndWithText ByTagAndWithText(final String tag, final String text) {
-        return new ByTagAndWithText(tag, text);
+        return cached(key("ByTagAndWithText", tag, text), new LocatorFactory<ByTagAndWithText>() {
+            public ByTagAndWithText create() {
+                return new ByTagAndWithText(tag, text);
+            }
+        });
     }
 
     public static ByTagAndWithText ByTagContainingText(final String tag, final String text) {
-        return new ByTagAndContainingText(tag, text);
+        return cached(key("ByTagContainingText", tag, text), new LocatorFactory<ByTagAndWithText>() {
+            public ByTagAndWithText create() {
+                return new ByTagAndContainingText(tag, text);
+            }
+        });
     }
 
     public static ByTagAndWithText ByTagStartingWithText(final String tag, final String text) {
-        return new ByTagAndStartingWithText(tag, text);
+        return cached(key("ByTagStartingWithText", tag, text), new LocatorFactory<ByTagAndWithText>() {
+            public ByTagAndWithText create() {
+                return new ByTagAndStartingWithText(tag, text);
+            }
+        });
     }
 
     public static ByIdContainingText ByIdContainingText(final String id, final String text) {
-        return new ByIdContainingText(id, text);
+        return cached(key("ByIdContainingText", id, text), new LocatorFactory<ByIdContainingText>() {
+            public ByIdContainingText create() {
+                return new ByIdContainingText(id, text);
+            }
+        });
     }
 
     public static BySomethingContainingText ByXpathContainingText(final String xpath, final String text) {
@@ -107,19 +163,90 @@ public abstract class WebDriverSubstepsBy {
         public abstract List<WebElement> findElementsBy(final SearchContext context);
     }
 
+    private static List<Object> key(final Object... parts) {
+        return Arrays.asList(parts);
+    }
+
+    // the access-ordered map is reordered by get() as well as put(), so every
+    // access goes through the one lock
+    @SuppressWarnings("unchecked")
+    private static <T extends By> T cached(final List<Object> key, final LocatorFactory<T> factory) {
+        synchronized (LOCATOR_CACHE) {
+            T by = (T) LOCATOR_CACHE.get(key);
+            if (by == null) {
+                by = factory.create();
+                LOCATOR_CACHE.put(key, by);
+            }
+            return by;
+        }
+    }
+
+    private static Map<String, String> copyOf(final Map<String, String> attributes) {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+    }
+
     static abstract class XPathBy extends BaseBy {
 
+        // built on first use as subclass fields aren't set until after this
+        // constructor has run; both are immutable so a racing thread at worst
+        // builds its own identical copy
+        private String xpath;
+        private By by;
+
         @Override
         public List<WebElement> findElementsBy(final SearchContext context) {
 
-            final StringBuilder xpathBuilder = new StringBuilder();
+            final XPathLocatorEngine engine = engineFor(context);
+            if (engine != null) {
+                final List<WebElement> matchingElems = engine.findElementsByXPath(context, getXPath());
+                if (matchingElems != null) {
+                    return matchingElems;
+                }
+            }
 
-            buildXPath(xpathBuilder);
+            By xpathBy = this.by;
+            if (xpathBy == null) {
+                xpathBy = By.xpath(getXPath());
+                this.by = xpathBy;
+            }
 
-            return context.findElements(By.xpath(xpathBuilder.toString()));
+            return context.findElements(xpathBy);
+        }
+
+        String getXPath() {
+
+            String built = this.xpath;
+            if (built == null) {
+                final StringBuilder xpathBuilder = new StringBuilder();
+
+                buildXPath(xpathBuilder);
+
+                built = xpathBuilder.toString();
+                this.xpath = built;
+            }
+            return built;
         }
 
         protected abstract void buildXPath(StringBuilder xpathBuilder);
+
+        private static XPathLocatorEngine engineFor(final SearchContext context) {
+
+            if (context instanceof XPathLocatorEngine) {
+                return (XPathLocatorEngine) context;
+            }
+            if (context instanceof WrapsDriver) {
+                final WebDriver webDriver = ((WrapsDriver) context).getWrappedDriver();
+                if (webDriver instanceof XPathLocatorEngine) {
+                    return (XPathLocatorEngine) webDriver;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + ": " + getXPath();
+        }
     }
 
     static class ByTagAndAttributes extends XPathBy {
@@ -131,14 +258,12 @@ public abstract class WebDriverSubstepsBy {
         private final int minimumExpected;
 
         ByTagAndAttributes(final String tagName, final Map<String, String> requiredAttributes) {
-            this.tagName = tagName;
-            this.requiredAttributes = requiredAttributes;
-            this.minimumExpected = 1;
+            this(tagName, requiredAttributes, 1);
         }
 
         ByTagAndAttributes(final String tagName, final Map<String, String> requiredAttributes, final int nth) {
             this.tagName = tagName;
-            this.requiredAttributes = requiredAttributes;
+            this.requiredAttributes = copyOf(requiredAttributes);
             this.minimumExpected = nth;
         }
 
@@ -183,6 +308,13 @@ public abstract class WebDriverSubstepsBy {
 
             return matchingElems;
         }
+
+        @Override
+        public String toString() {
+            // the xpath doesn't say how many have to be found
+            return this.minimumExpected > 1 ? super.toString() + ", at least " + this.minimumExpected : super
+                    .toString();
+        }
     }
 
     /**
@@ -273,14 +405,14 @@ public abstract class WebDriverSubstepsBy {
 
             final List<WebElement> elems = context.findElements(this.by);
             if (elems != null) {
-                for (final WebElement e : elems) {
+                for (final ElementSnapshot e : ElementSnapshot.snapshot(context, elems, true)) {
 
                     if (e.getText() != null && e.getText().contains(this.text)) {
 
                         if (matchingElems == null) {
                             matchingElems = new ArrayList<WebElement>();
                         }
-                        matchingElems.add(e);
+                        matchingElems.add(e.getElement());
                     }
                 }
             }
@@ -348,17 +480,29 @@ public abstract class WebDriverSubstepsBy {
     public static ByTagAndAttributesWithValue ByTagAndAttributesWithValue(final String tagName,
             final String attributeString, final String value) {
 
-        final Map<String, String> expectedAttributes = StepImplementationUtils.convertToMap(attributeString);
+        return cached(key("ByTagAndAttributesWithValue", tagName, attributeString, value),
+                new LocatorFactory<ByTagAndAttributesWithValue>() {
+                    public ByTagAndAttributesWithValue create() {
+                        final Map<String, String> expectedAttributes = StepImplementationUtils
+                                .convertToMap(attributeString);
 
-        return new ByTagAndAttributesWithValue(tagName, expectedAttributes, value);
+                        return new ByTagAndAttributesWithValue(tagName, expectedAttributes, value);
+                    }
+                });
     }
 
     public static ByTagAndAttributesWithText ByTagAndAttributesWithText(final String tagName,
             final String attributeString, final String text) {
 
-        final Map<String, String> expectedAttributes = StepImplementationUtils.convertToMap(attributeString);
+        return cached(key("ByTagAndAttributesWithText", tagName, attributeString, text),
+                new LocatorFactory<ByTagAndAttributesWithText>() {
+                    public ByTagAndAttributesWithText create() {
+                        final Map<String, String> expectedAttributes = StepImplementationUtils
+                                .convertToMap(attributeString);
 
-        return new ByTagAndAttributesWithText(tagName, expectedAttributes, text);
+                        return new ByTagAndAttributesWithText(tagName, expectedAttributes, text);
+                    }
+                });
     }
 
     static class ByTagAndAttributesWithText extends XPathBy {
@@ -377,7 +521,7 @@ public abstract class WebDriverSubstepsBy {
         ByTagAndAttributesWithText(final String tagName, final Map<String, String> requiredAttributes,
                 final String text, final int nth) {
             this.tagName = tagName;
-            this.requiredAttributes = requiredAttributes;
+            this.requiredAttributes = copyOf(requiredAttributes);
             this.text = text;
             this.minimumExpected = nth;
         }
@@ -432,6 +576,13 @@ public abstract class WebDriverSubstepsBy {
 
             return matchingElems;
         }
+
+        @Override
+        public String toString() {
+            // the xpath doesn't say how many have to be found
+            return this.minimumExpected > 1 ? super.toString() + ", at least " + this.minimumExpected : super
+                    .toString();
+        }
     }
 
     static class ByTagAndAttributesWithValue extends ByTagAndAttributes {
@@ -474,6 +625,11 @@ public abstract class WebDriverSubstepsBy {
 
             return matchingElems;
         }
+
+        @Override
+        public String toString() {
+            return super.toString() + ", value " + this.value;
+        }
     }    
     
 }
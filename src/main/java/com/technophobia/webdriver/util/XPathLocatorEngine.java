@@ -0,0 +1,43 @@
+/*
+ *  Copyright Technophobia Ltd 2014
+ *
+ *   This file is part of Substeps.
+ *
+ *    Substeps is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU Lesser General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    Substeps is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU Lesser General Public License for more details.
+ *
+ *    You should have received a copy of the GNU Lesser General Public License
+ *    along with Substeps.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.technophobia.webdriver.util;
+
+import java.util.List;
+
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Implemented by drivers that can evaluate an XPath more cheaply than going
+ * through {@link SearchContext#findElements(org.openqa.selenium.By)}, used by
+ * the {@link WebDriverSubstepsBy} XPath locators when available.
+ */
+public interface XPathLocatorEngine {
+
+    /**
+     * @param context
+     *            the driver, or one of its elements, to search from
+     * @param xpath
+     *            the expression to evaluate
+     * @return the matching elements, or null if the engine can't search from
+     *         the context, in which case the locator falls back to
+     *         {@link SearchContext#findElements(org.openqa.selenium.By)}
+     */
+    List<WebElement> findElementsByXPath(SearchContext context, String xpath);
+}
@@ -0,0 +1,67 @@
+package com.technophobia.webdriver.substeps.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.InvalidElementStateException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Suppliers;
+import com.technophobia.webdriver.substeps.runner.DefaultDriverType;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+public class ActionWebDriverSubStepImplementationsTest {
+
+    private final WebElement element = mock(WebElement.class);
+    private ActionWebDriverSubStepImplementations steps;
+
+
+    @Before
+    public void setUp() {
+        final WebdriverSubstepsConfiguration configuration = mock(WebdriverSubstepsConfiguration.class);
+        when(configuration.retryInitialDelayMillis()).thenReturn(1L);
+        when(configuration.retryMaxDelayMillis()).thenReturn(1L);
+        when(configuration.retryMaxAttempts()).thenReturn(2);
+
+        final WebDriverContext context = new WebDriverContext(DefaultDriverType.HTMLUNIT, mock(WebDriver.class),
+                configuration);
+        context.setCurrentElement(element);
+        steps = new ActionWebDriverSubStepImplementations(new FinderWebDriverSubStepImplementations(),
+                Suppliers.ofInstance(context));
+    }
+
+
+    @Test
+    public void shouldFailTheClickWithTheOriginalMessageOnceTheRetriesRunOut() {
+
+        final InvalidElementStateException notVisible = new InvalidElementStateException("not visible");
+        doThrow(notVisible).when(element).click();
+
+        try {
+            steps.click();
+            fail("expected the click to fail");
+        } catch (final AssertionError e) {
+            assertThat(e.getMessage(), is("Failed to click on element within timeout"));
+            assertThat(e.getCause(), sameInstance((Throwable) notVisible));
+        }
+    }
+
+
+    @Test(expected = NoSuchWindowException.class)
+    public void shouldLetFailuresThatArentRetriedThrough() {
+
+        doThrow(new NoSuchWindowException("closed")).when(element).click();
+
+        steps.click();
+    }
+}
@@ -26,6 +26,8 @@ import java.util.regex.Pattern;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.technophobia.substeps.model.SubSteps.Step;
+
 /**
  * TODO
  * 
@@ -77,4 +79,20 @@ public class PatternTests {
         Assert.assertThat(src, is(desired));
     }
 
+
+    @Test
+    public void transferSizeShouldOnlyMatchADecimalNumber() throws NoSuchMethodException {
+        final Pattern p = Pattern.compile(PerformanceWebDriverSubStepImplementations.class
+                .getMethod("assertTransferSizeBelow", String.class, String.class).getAnnotation(Step.class).value());
+
+        final Matcher matcher = p.matcher("AssertTransferSizeBelow 1.5 MB");
+        Assert.assertTrue(matcher.matches());
+        Assert.assertThat(matcher.group(1), is("1.5"));
+        Assert.assertTrue(p.matcher("AssertTransferSizeBelow 500 KB").matches());
+
+        Assert.assertFalse(p.matcher("AssertTransferSizeBelow 1.2.3 MB").matches());
+        Assert.assertFalse(p.matcher("AssertTransferSizeBelow 1. MB").matches());
+        Assert.assertFalse(p.matcher("AssertTransferSizeBelow .5 MB").matches());
+    }
+
 }
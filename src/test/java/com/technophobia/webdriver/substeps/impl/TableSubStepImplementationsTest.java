@@ -0,0 +1,84 @@
+package com.technophobia.webdriver.substeps.impl;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Suppliers;
+import com.technophobia.webdriver.substeps.runner.DefaultDriverType;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+import com.technophobia.webdriver.util.ElementStash;
+import com.technophobia.webdriver.util.WebDriverContext;
+
+public class TableSubStepImplementationsTest {
+
+    private WebDriver webDriver;
+    private WebDriverContext context;
+    private TableSubStepImplementations steps;
+
+
+    @Before
+    public void setUp() {
+        webDriver = mock(WebDriver.class);
+        context = new WebDriverContext(DefaultDriverType.HTMLUNIT, webDriver,
+                mock(WebdriverSubstepsConfiguration.class));
+        steps = new TableSubStepImplementations(Suppliers.ofInstance(context));
+    }
+
+
+    @Test
+    public void shouldFindTheRowAgainWhenTheWholeTableIsReplaced() {
+
+        final WebElement oldRow = row("Bob", mock(WebElement.class));
+        final WebElement oldTable = table(oldRow);
+
+        final WebElement link = mock(WebElement.class);
+        final WebElement newRow = row("Bob", link);
+        final WebElement newTable = table(newRow);
+        when(webDriver.findElement(By.id("results"))).thenReturn(newTable);
+
+        context.setCurrentElement(oldTable, ElementStash.recipe(null, By.id("results")));
+        steps.findRowInTableWithText("\"Bob\"");
+
+        // the page redraws the table, and everything in it, before the row
+        // is used
+        when(oldTable.findElements(By.tagName("tr"))).thenThrow(new StaleElementReferenceException("replaced"));
+        when(oldRow.getTagName()).thenThrow(new StaleElementReferenceException("replaced"));
+
+        steps.findLinkInRow("View");
+
+        assertThat(context.getCurrentElement(), sameInstance(link));
+    }
+
+
+    private static WebElement table(final WebElement row) {
+        final WebElement table = mock(WebElement.class);
+        when(table.getTagName()).thenReturn("table");
+        when(table.findElements(By.tagName("tr"))).thenReturn(Collections.singletonList(row));
+        return table;
+    }
+
+
+    private static WebElement row(final String text, final WebElement link) {
+        final WebElement cell = mock(WebElement.class);
+        when(cell.getText()).thenReturn(text);
+        final List<WebElement> links = Collections.singletonList(link);
+        when(cell.findElements(By.linkText("View"))).thenReturn(links);
+
+        final WebElement row = mock(WebElement.class);
+        when(row.getTagName()).thenReturn("tr");
+        when(row.findElements(By.tagName("td"))).thenReturn(Collections.singletonList(cell));
+        return row;
+    }
+}
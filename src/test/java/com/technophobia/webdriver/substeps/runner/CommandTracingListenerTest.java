@@ -0,0 +1,77 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.NoSuchElementException;
+
+public class CommandTracingListenerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void shouldLogScenarioCommandsAndWriteStatistics() throws IOException {
+
+        final CommandTracingListener tracer = CommandTracingListener.INSTANCE;
+        final File dir = folder.getRoot();
+
+        tracer.scenarioStarted();
+        tracer.commandExecuted("WebDriver.get", new Object[] { "http://localhost/" },
+                TimeUnit.MILLISECONDS.toNanos(20), null);
+        tracer.commandExecuted("WebDriver.findElement", new Object[] { "By.id: missing" },
+                TimeUnit.MILLISECONDS.toNanos(5), new NoSuchElementException("missing"));
+        tracer.scenarioFinished(dir);
+
+        final File[] logs = dir.listFiles();
+        assertThat(logs.length, is(1));
+
+        final String log = read(logs[0]);
+        assertThat(log, containsString("WebDriver.get(http://localhost/)"));
+        assertThat(log, containsString("WebDriver.findElement(By.id: missing)  FAILED NoSuchElementException"));
+
+        tracer.writeSummary(dir);
+
+        final String stats = read(new File(dir, "command-stats.csv"));
+        assertThat(stats, containsString("WebDriver.findElement,1,1,"));
+        assertThat(stats, containsString("WebDriver.get,1,0,"));
+    }
+
+
+    @Test
+    public void shouldNotTraceTypedKeys() {
+        assertThat(CommandTracingListener.formatArgs("WebElement.sendKeys",
+                new Object[] { new CharSequence[] { "s3cret", "!" } }), is("<7 chars>"));
+        assertThat(CommandTracingListener.formatArgs("Keyboard.sendKeys", new Object[] { new CharSequence[] { "pw" } }),
+                is("<2 chars>"));
+        assertThat(CommandTracingListener.formatArgs("WebDriver.get", new Object[] { "http://localhost/" }),
+                is("http://localhost/"));
+    }
+
+
+    private static String read(final File file) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final Reader reader = new FileReader(file);
+        try {
+            final char[] chars = new char[1024];
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                buf.append(chars, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigurationSnapshotTest {
+
+    private WebdriverSubstepsConfiguration config;
+
+
+    @Before
+    public void initialiseDependencies() {
+        this.config = mock(WebdriverSubstepsConfiguration.class);
+        when(this.config.baseURL()).thenReturn("http://localhost/");
+        when(this.config.driverType()).thenReturn(DefaultDriverType.FIREFOX);
+        when(this.config.defaultTimeout()).thenReturn(10L);
+    }
+
+
+    @Test
+    public void shouldCopyEachValueWhenTheSnapshotIsTaken() {
+        final WebdriverSubstepsConfiguration snapshot = ConfigurationSnapshot.of(this.config,
+                Collections.<String, String> emptyMap());
+
+        verify(this.config, times(1)).baseURL();
+        when(this.config.baseURL()).thenReturn("http://changed/");
+
+        assertThat(snapshot.baseURL(), is("http://localhost/"));
+        assertThat(snapshot.defaultTimeout(), is(10L));
+        assertThat(snapshot.windowSize(), is(nullValue()));
+
+        verify(this.config, times(1)).defaultTimeout();
+    }
+
+
+    @Test
+    public void shouldApplyOverridesOfEachType() {
+        final Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("driverType", "chrome_headless");
+        overrides.put("defaultTimeout", "20");
+        overrides.put("baseURL", "http://elsewhere/");
+        overrides.put("lookupCache", "true");
+
+        final WebdriverSubstepsConfiguration snapshot = ConfigurationSnapshot.of(this.config, overrides);
+
+        assertThat(snapshot.driverType(), is(DefaultDriverType.CHROME_HEADLESS));
+        assertThat(snapshot.defaultTimeout(), is(20L));
+        assertThat(snapshot.baseURL(), is("http://elsewhere/"));
+        assertThat(snapshot.lookupCache(), is(true));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAnOverrideThatIsntASetting() {
+        ConfigurationSnapshot.of(this.config, Collections.singletonMap("noSuchSetting", "1"));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAnOverrideOfTheWrongType() {
+        ConfigurationSnapshot.of(this.config, Collections.singletonMap("defaultTimeout", "soon"));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAnUnknownDriverType() {
+        ConfigurationSnapshot.of(this.config, Collections.singletonMap("driverType", "NETSCAPE"));
+    }
+
+
+    @Test
+    public void shouldRejectAMisspeltBooleanNamingTheSetting() {
+        try {
+            ConfigurationSnapshot.of(this.config, Collections.singletonMap("lookupCache", "ture"));
+            fail("expected the override to be rejected");
+        } catch (final IllegalStateException e) {
+            assertThat(e.getMessage(), is("'ture' is invalid for 'lookupCache'"));
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.technophobia.webdriver.substeps.runner;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -222,6 +227,51 @@ public class DefaultExecutionSetupTearDownTest {
     }
 
 
+    /**
+     * A parallel worker's own configuration decides, rather than the suite's
+     */
+    @Test
+    public void shouldShutdownIfTheWorkersConfigurationSaysSo() {
+        when(this.config.shutDownWebdriver()).thenReturn(false);
+        when(this.config.reuseWebDriver()).thenReturn(true);
+
+        final WebdriverSubstepsConfiguration workerConfig = mock(WebdriverSubstepsConfiguration.class);
+        when(workerConfig.shutDownWebdriver()).thenReturn(true);
+
+        when(this.webDriver.manage()).thenReturn(this.options);
+
+        ExecutionContext.put(Scope.SUITE, WebdriverSubstepsConfiguration.CONFIGURATION_KEY, workerConfig);
+        try {
+            this.std.basePostScenariotearDown();
+        } finally {
+            ExecutionContext.put(Scope.SUITE, WebdriverSubstepsConfiguration.CONFIGURATION_KEY, null);
+        }
+
+        verify(this.webDriver).quit();
+    }
+
+
+    /**
+     * Each worker thread has its own context, so a context set on one thread
+     * is never seen by another
+     */
+    @Test
+    public void shouldNotShareWebDriverContextBetweenThreads() throws InterruptedException {
+        final WebDriverContext[] otherThreadsContext = new WebDriverContext[] { this.context };
+
+        final Thread other = new Thread(new Runnable() {
+            public void run() {
+                otherThreadsContext[0] = DefaultExecutionSetupTearDown.currentWebDriverContext().get();
+            }
+        });
+        other.start();
+        other.join();
+
+        assertThat(otherThreadsContext[0], is(nullValue()));
+        assertThat(DefaultExecutionSetupTearDown.currentWebDriverContext().get(), is(sameInstance(this.context)));
+    }
+
+
     /********* startup ***********/
 
     /**
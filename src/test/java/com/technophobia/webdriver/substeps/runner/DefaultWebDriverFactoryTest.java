@@ -0,0 +1,102 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.Dimension;
+
+public class DefaultWebDriverFactoryTest {
+
+    private WebdriverSubstepsConfiguration configuration;
+    private DefaultWebDriverFactory factory;
+
+
+    @Before
+    public void setUp() {
+        configuration = mock(WebdriverSubstepsConfiguration.class);
+        factory = new DefaultWebDriverFactory(configuration);
+    }
+
+
+    @Test
+    public void shouldMaximizeVisualBrowsersWithoutAWindowSize() {
+        when(configuration.driverType()).thenReturn(DefaultDriverType.CHROME);
+        when(configuration.windowSize()).thenReturn("");
+
+        assertThat(factory.windowSize(), nullValue());
+    }
+
+
+    @Test
+    public void shouldSizeHeadlessBrowsersWithoutAWindowSize() {
+        when(configuration.driverType()).thenReturn(DefaultDriverType.CHROME_HEADLESS);
+
+        assertThat(factory.windowSize(), is(new Dimension(1280, 1024)));
+    }
+
+
+    @Test
+    public void shouldUseTheConfiguredWindowSize() {
+        when(configuration.driverType()).thenReturn(DefaultDriverType.FIREFOX);
+        when(configuration.windowSize()).thenReturn("1024X768");
+
+        assertThat(factory.windowSize(), is(new Dimension(1024, 768)));
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAMalformedWindowSize() {
+        when(configuration.windowSize()).thenReturn("large");
+
+        factory.windowSize();
+    }
+
+
+    @Test
+    public void shouldLeaveFirefoxWaitingForTheWholePageByDefault() {
+        when(configuration.pageLoadStrategy()).thenReturn("normal");
+
+        assertThat(factory.firefoxLoadStrategy(), nullValue());
+    }
+
+
+    @Test
+    public void shouldStopFirefoxWaitingForEagerAsWellAsNone() {
+        when(configuration.pageLoadStrategy()).thenReturn("eager");
+        assertThat(factory.firefoxLoadStrategy(), is("unstable"));
+
+        when(configuration.pageLoadStrategy()).thenReturn("none");
+        assertThat(factory.firefoxLoadStrategy(), is("unstable"));
+    }
+
+
+    @Test
+    public void shouldLaunchHeadlessChromeWithoutTheExtras() {
+        when(configuration.driverType()).thenReturn(DefaultDriverType.CHROME_HEADLESS);
+        when(configuration.windowSize()).thenReturn("800x600");
+        when(configuration.headlessDisableImages()).thenReturn(true);
+
+        final List<String> arguments = factory.headlessChromeArguments();
+
+        assertTrue(arguments.contains("--headless"));
+        assertTrue(arguments.contains("--disable-gpu"));
+        assertTrue(arguments.contains("--disable-extensions"));
+        assertTrue(arguments.contains("--disable-background-networking"));
+        assertTrue(arguments.contains("--window-size=800,600"));
+        assertTrue(arguments.contains("--blink-settings=imagesEnabled=false"));
+    }
+
+
+    @Test
+    public void shouldNotReportHeadlessBrowsersAsVisual() {
+        assertThat(DefaultDriverType.CHROME_HEADLESS.isVisual(), is(false));
+    }
+}
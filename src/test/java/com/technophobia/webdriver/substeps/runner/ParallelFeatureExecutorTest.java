@@ -0,0 +1,132 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openqa.selenium.WebDriver;
+
+import com.technophobia.substeps.model.Scope;
+import com.technophobia.substeps.runner.ExecutionContext;
+import com.technophobia.substeps.runner.INotificationDistributor;
+
+/**
+ * Tests that features executed on parallel workers each get their own
+ * webdriver, and that the drivers are shut down when the workers finish
+ */
+public class ParallelFeatureExecutorTest {
+
+    private WebdriverSubstepsConfiguration config;
+
+    private WebDriverFactory factory;
+
+    private final List<WebDriver> created = Collections.synchronizedList(new ArrayList<WebDriver>());
+
+
+    @Before
+    public void initialiseDependencies() {
+        this.config = mock(WebdriverSubstepsConfiguration.class);
+        when(this.config.shutDownWebdriver()).thenReturn(false);
+        when(this.config.reuseWebDriver()).thenReturn(true);
+
+        this.factory = mock(WebDriverFactory.class);
+        when(this.factory.driverType()).thenReturn(DefaultDriverType.HTMLUNIT);
+        when(this.factory.createWebDriver()).thenAnswer(new Answer<WebDriver>() {
+            public WebDriver answer(final InvocationOnMock invocation) {
+                final WebDriver webDriver = mock(WebDriver.class, RETURNS_DEEP_STUBS);
+                ParallelFeatureExecutorTest.this.created.add(webDriver);
+                return webDriver;
+            }
+        });
+    }
+
+
+    @Test
+    public void shouldGiveEachWorkerItsOwnWebDriver() {
+        final DefaultExecutionSetupTearDown std = new DefaultExecutionSetupTearDown(this.config);
+        final CountDownLatch bothWorkersStarted = new CountDownLatch(2);
+        final List<WebDriver> used = Collections.synchronizedList(new ArrayList<WebDriver>());
+
+        final List<Runnable> features = new ArrayList<Runnable>();
+        for (int i = 0; i < 4; i++) {
+            final boolean waitForOtherWorker = i < 2;
+            features.add(new Runnable() {
+                public void run() {
+                    std.basePreScenarioSetup();
+                    used.add(DefaultExecutionSetupTearDown.getThreadLocalWebDriver());
+
+                    if (waitForOtherWorker) {
+                        bothWorkersStarted.countDown();
+                        try {
+                            bothWorkersStarted.await(5, TimeUnit.SECONDS);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    std.basePostScenariotearDown();
+                }
+            });
+        }
+
+        new ParallelFeatureExecutor(2, this.factory).execute(features);
+
+        assertThat(this.created.size(), is(2));
+        assertThat(used.get(0), is(not(sameInstance(used.get(1)))));
+        for (final WebDriver webDriver : this.created) {
+            verify(webDriver, times(1)).quit();
+        }
+    }
+
+
+    @Test
+    public void shouldHandTheNotifierToTheWorkers() {
+        final INotificationDistributor notifier = mock(INotificationDistributor.class);
+        ExecutionContext.put(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY, notifier);
+
+        final List<Object> seen = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Runnable> features = new ArrayList<Runnable>();
+        for (int i = 0; i < 2; i++) {
+            features.add(new Runnable() {
+                public void run() {
+                    seen.add(ExecutionContext.get(Scope.SUITE, INotificationDistributor.NOTIFIER_DISTRIBUTOR_KEY));
+                }
+            });
+        }
+
+        new ParallelFeatureExecutor(2, this.factory).execute(features);
+
+        assertThat(seen.size(), is(2));
+        for (final Object workerNotifier : seen) {
+            assertThat(workerNotifier, is(sameInstance((Object) notifier)));
+        }
+    }
+
+
+    @Test(expected = WebDriverSubstepsException.class)
+    public void shouldReportFailedFeaturesOnceAllHaveRun() {
+        final List<Runnable> features = new ArrayList<Runnable>();
+        features.add(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("feature failed");
+            }
+        });
+
+        new ParallelFeatureExecutor(2, this.factory).execute(features);
+    }
+}
@@ -0,0 +1,126 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.http.client.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledHttpCommandExecutorTest {
+
+    private HttpServer hub;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private volatile String acceptEncoding;
+
+
+    @Before
+    public void startHub() throws IOException {
+
+        // a stand-in for a selenium hub, just enough of the json wire
+        // protocol to start a session, ask for the url and quit
+        hub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        hub.createContext("/wd/hub", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                clientPorts.add(Integer.valueOf(exchange.getRemoteAddress().getPort()));
+                acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+                final InputStream in = exchange.getRequestBody();
+                while (in.read() != -1) {
+                    // drain the request
+                }
+
+                final String path = exchange.getRequestURI().getPath();
+                final String value;
+                if (path.endsWith("/session")) {
+                    value = "{\"browserName\":\"firefox\"}";
+                } else if (path.endsWith("/url")) {
+                    value = "\"http://localhost/app\"";
+                } else {
+                    value = "null";
+                }
+
+                final byte[] body = ("{\"sessionId\":\"stand-in\",\"status\":0,\"value\":" + value + "}")
+                        .getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        hub.start();
+    }
+
+
+    @After
+    public void stopHub() {
+        hub.stop(0);
+    }
+
+
+    @Test
+    public void shouldReuseOneConnectionForTheWholeSession() throws IOException {
+
+        final HttpClient client = PooledHttpCommandExecutor.createHttpClient(4, 4, 30000, true, 5000, 5000);
+        final URL url = new URL("http://localhost:" + hub.getAddress().getPort() + "/wd/hub");
+
+        final RemoteWebDriver webDriver = new RemoteWebDriver(new PooledHttpCommandExecutor(url, client),
+                DesiredCapabilities.firefox());
+
+        assertThat(webDriver.getCurrentUrl(), is("http://localhost/app"));
+        assertThat(webDriver.getCurrentUrl(), is("http://localhost/app"));
+        webDriver.quit();
+
+        assertThat(clientPorts.size(), is(1));
+        assertThat(acceptEncoding.contains("gzip"), is(true));
+    }
+
+
+    @Test
+    public void shouldBeAbleToSetTheClientOnThisVersionOfSelenium() {
+
+        // if a selenium upgrade moves the field, remote drivers quietly go
+        // back to selenium's own client; this is the place that notices
+        assertThat(PooledHttpCommandExecutor.isSupported(), is(true));
+    }
+
+
+    @Test
+    public void shouldStartANewSharedClientAfterTheOldOneIsShutdown() {
+
+        final WebdriverSubstepsConfiguration configuration = mock(WebdriverSubstepsConfiguration.class);
+        when(configuration.remotePoolMaxTotal()).thenReturn(4);
+        when(configuration.remotePoolMaxPerRoute()).thenReturn(4);
+
+        final HttpClient first = PooledHttpCommandExecutor.sharedHttpClient(configuration);
+        assertThat(PooledHttpCommandExecutor.sharedHttpClient(configuration), sameInstance(first));
+
+        PooledHttpCommandExecutor.shutdownSharedHttpClient();
+
+        final HttpClient second = PooledHttpCommandExecutor.sharedHttpClient(configuration);
+        assertThat(second, not(sameInstance(first)));
+        PooledHttpCommandExecutor.shutdownSharedHttpClient();
+    }
+}
@@ -0,0 +1,131 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Tests reuse and replacement of drivers held by the PooledWebDriverFactory
+ */
+public class PooledWebDriverFactoryTest {
+
+    private WebDriverFactory delegate;
+
+    private WebDriver first;
+
+    private WebDriver second;
+
+    private WebDriver third;
+
+    private PooledWebDriverFactory pool;
+
+
+    @Before
+    public void initialiseDependencies() {
+        this.delegate = mock(WebDriverFactory.class);
+        this.first = mock(WebDriver.class);
+        this.second = mock(WebDriver.class);
+        this.third = mock(WebDriver.class);
+
+        when(this.delegate.createWebDriver()).thenReturn(this.first, this.second, this.third);
+    }
+
+
+    @After
+    public void shutdownPool() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+
+    @Test
+    public void shouldReuseReleasedDriver() {
+        this.pool = new PooledWebDriverFactory(this.delegate, 1, 0, 0);
+
+        final WebDriver leased = this.pool.createWebDriver();
+        this.pool.releaseWebDriver(leased);
+
+        assertThat(this.pool.createWebDriver(), is(sameInstance(leased)));
+        verify(this.delegate, timeout(1000).times(1)).createWebDriver();
+        verify(leased, never()).quit();
+    }
+
+
+    @Test
+    public void shouldReplaceDriverOnceMaxUsesReached() {
+        this.pool = new PooledWebDriverFactory(this.delegate, 1, 0, 1);
+
+        final WebDriver leased = this.pool.createWebDriver();
+        this.pool.releaseWebDriver(leased);
+
+        verify(leased, timeout(1000)).quit();
+
+        assertThat(this.pool.createWebDriver(), is(not(sameInstance(leased))));
+    }
+
+
+    @Test
+    public void shouldQuitDriversOnShutdown() {
+        this.pool = new PooledWebDriverFactory(this.delegate, 2, 0, 0);
+
+        final WebDriver leased = this.pool.createWebDriver();
+        verify(this.delegate, timeout(1000).times(2)).createWebDriver();
+
+        this.pool.shutdown();
+        this.pool.releaseWebDriver(leased);
+
+        verify(this.first, timeout(1000)).quit();
+        verify(this.second, timeout(1000)).quit();
+    }
+
+
+    @Test
+    public void shouldQuitDriverLaunchedAfterShutdown() throws InterruptedException {
+        final CountDownLatch launching = new CountDownLatch(1);
+        final CountDownLatch shutDown = new CountDownLatch(1);
+
+        when(this.delegate.createWebDriver()).thenAnswer(new Answer<WebDriver>() {
+            public WebDriver answer(final InvocationOnMock invocation) throws InterruptedException {
+                launching.countDown();
+                shutDown.await(1, TimeUnit.SECONDS);
+                return PooledWebDriverFactoryTest.this.first;
+            }
+        });
+
+        this.pool = new PooledWebDriverFactory(this.delegate, 1, 0, 0);
+        assertThat(launching.await(1, TimeUnit.SECONDS), is(true));
+
+        this.pool.shutdown();
+        shutDown.countDown();
+
+        verify(this.first, timeout(1000)).quit();
+    }
+
+
+    @Test
+    public void shouldQuitDriverNotCreatedByPool() {
+        this.pool = new PooledWebDriverFactory(this.delegate, 0, 0, 0);
+
+        final WebDriver stranger = mock(WebDriver.class);
+        this.pool.releaseWebDriver(stranger);
+
+        verify(stranger).quit();
+    }
+}
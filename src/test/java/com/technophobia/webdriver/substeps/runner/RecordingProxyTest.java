@@ -0,0 +1,246 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class RecordingProxyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer backend;
+    private int backendPort;
+    private final AtomicInteger requests = new AtomicInteger();
+    private RecordingProxy proxy;
+
+
+    @Before
+    public void startBackend() throws IOException {
+
+        // echoes the request back, with a count so a recording can be told
+        // apart from a fresh response
+        backend = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        backend.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                final String requestBody = new String(RecordingProxy.readFully(exchange.getRequestBody()), "UTF-8");
+
+                final byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                        + requestBody + " " + requests.incrementAndGet()).getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        backend.start();
+        backendPort = backend.getAddress().getPort();
+    }
+
+
+    @After
+    public void stop() {
+        if (proxy != null) {
+            proxy.shutdown();
+        }
+        if (backend != null) {
+            backend.stop(0);
+        }
+    }
+
+
+    @Test
+    public void shouldRecordTheFirstResponseAndPlayItBackAfterwards() throws IOException {
+
+        proxy = startProxy(RecordingProxy.Mode.AUTO);
+
+        assertThat(get("/page?a=1"), is("GET /page?a=1  1"));
+        assertThat(get("/page?a=1"), is("GET /page?a=1  1"));
+        assertThat(get("/page?a=2"), is("GET /page?a=2  2"));
+
+        assertThat(requests.get(), is(2));
+    }
+
+
+    @Test
+    public void shouldTellRequestsApartByTheirBody() throws IOException {
+
+        proxy = startProxy(RecordingProxy.Mode.AUTO);
+
+        assertThat(post("/form", "x=1"), is("POST /form x=1 1"));
+        assertThat(post("/form", "x=2"), is("POST /form x=2 2"));
+        assertThat(post("/form", "x=1"), is("POST /form x=1 1"));
+    }
+
+
+    @Test
+    public void shouldPlayBackWithoutTheBackend() throws IOException {
+
+        proxy = startProxy(RecordingProxy.Mode.RECORD);
+        assertThat(get("/page"), is("GET /page  1"));
+        proxy.shutdown();
+
+        backend.stop(0);
+        backend = null;
+
+        proxy = startProxy(RecordingProxy.Mode.REPLAY);
+        assertThat(get("/page"), is("GET /page  1"));
+
+        final HttpURLConnection connection = open("/not-recorded");
+        assertThat(connection.getResponseCode(), is(504));
+        connection.disconnect();
+    }
+
+
+    @Test
+    public void shouldRecordAfreshInRecordMode() throws IOException {
+
+        proxy = startProxy(RecordingProxy.Mode.RECORD);
+
+        assertThat(get("/page"), is("GET /page  1"));
+        assertThat(get("/page"), is("GET /page  2"));
+    }
+
+
+    @Test
+    public void shouldTunnelHttpsThroughTheUpstreamProxy() throws Exception {
+
+        // stands in for a corporate proxy, agreeing to the tunnel and then
+        // echoing back whatever comes through it
+        final ServerSocket upstream = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+        final AtomicReference<String> connectLine = new AtomicReference<String>();
+        final Thread upstreamThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    final Socket socket = upstream.accept();
+                    final InputStream in = socket.getInputStream();
+                    connectLine.set(readLine(in));
+                    while (readLine(in).length() > 0) {
+                        // skip the headers
+                    }
+                    final OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes("ISO-8859-1"));
+                    out.flush();
+                    final byte[] buf = new byte[4];
+                    int read = 0;
+                    while (read < buf.length) {
+                        read += in.read(buf, read, buf.length - read);
+                    }
+                    out.write(buf);
+                    out.close();
+                } catch (final IOException e) {
+                    // the test fails on what the client sees
+                }
+            }
+        });
+        upstreamThread.start();
+
+        proxy = new RecordingProxy(RecordingProxy.Mode.AUTO, folder.getRoot().getPath(), 0, new Proxy(
+                Proxy.Type.HTTP, upstream.getLocalSocketAddress()));
+
+        final Socket client = new Socket("localhost", proxy.getPort());
+        try {
+            client.setSoTimeout(10000);
+            final OutputStream out = client.getOutputStream();
+            out.write("CONNECT secure.example.com:443 HTTP/1.1\r\n\r\n".getBytes("ISO-8859-1"));
+            out.flush();
+
+            final InputStream in = client.getInputStream();
+            assertThat(readLine(in), is("HTTP/1.1 200 Connection Established"));
+            assertThat(readLine(in), is(""));
+
+            out.write("ping".getBytes("ISO-8859-1"));
+            out.flush();
+            final byte[] echoed = new byte[4];
+            int read = 0;
+            while (read < echoed.length) {
+                read += in.read(echoed, read, echoed.length - read);
+            }
+            assertThat(new String(echoed, "ISO-8859-1"), is("ping"));
+        } finally {
+            client.close();
+            upstream.close();
+        }
+        upstreamThread.join(10000);
+
+        assertThat(connectLine.get(), is("CONNECT secure.example.com:443 HTTP/1.1"));
+    }
+
+
+    private RecordingProxy startProxy(final RecordingProxy.Mode mode) throws IOException {
+        return new RecordingProxy(mode, folder.getRoot().getPath(), 0, Proxy.NO_PROXY);
+    }
+
+
+    private HttpURLConnection open(final String path) throws IOException {
+        final URL url = new URL("http://localhost:" + backendPort + path);
+        return (HttpURLConnection) url.openConnection(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("localhost",
+                proxy.getPort())));
+    }
+
+
+    private String get(final String path) throws IOException {
+        final HttpURLConnection connection = open(path);
+        try {
+            return read(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+
+    private String post(final String path, final String body) throws IOException {
+        final HttpURLConnection connection = open(path);
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            final OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+            return read(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+
+    private static String read(final InputStream in) throws IOException {
+        return new String(RecordingProxy.readFully(in), "UTF-8");
+    }
+
+
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+}
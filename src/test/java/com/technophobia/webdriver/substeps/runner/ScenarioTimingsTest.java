@@ -0,0 +1,109 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScenarioTimingsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void shouldSplitScenarioIntoPhases() throws InterruptedException {
+
+        ScenarioTimings.scenarioStarting();
+        Thread.sleep(20);
+        ScenarioTimings.stepsStarting();
+
+        ScenarioTimings.NAVIGATION_TIMER.commandExecuted("WebDriver.get", new Object[] { "http://localhost/" },
+                TimeUnit.MILLISECONDS.toNanos(5), null);
+        ScenarioTimings.NAVIGATION_TIMER.commandExecuted("Navigation.back", null, TimeUnit.MILLISECONDS.toNanos(3),
+                null);
+        ScenarioTimings.NAVIGATION_TIMER.commandExecuted("WebElement.click", null, TimeUnit.MILLISECONDS.toNanos(7),
+                null);
+        Thread.sleep(20);
+
+        ScenarioTimings.tearDownStarting();
+        ScenarioTimings.NAVIGATION_TIMER.commandExecuted("WebDriver.get", new Object[] { "about:blank" },
+                TimeUnit.MILLISECONDS.toNanos(11), null);
+        Thread.sleep(10);
+
+        final ScenarioTimings.Scenario scenario = ScenarioTimings.scenarioFinished(true);
+
+        assertThat(scenario.isFailed(), is(true));
+        assertThat(scenario.getNavigationNanos(), is(TimeUnit.MILLISECONDS.toNanos(8)));
+        assertTrue(scenario.getStartupNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(scenario.getTearDownNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(scenario.getStartupNanos() + scenario.getNavigationNanos() + scenario.getStepNanos()
+                + scenario.getTearDownNanos(), is(scenario.getTotalNanos()));
+
+        assertThat(ScenarioTimings.scenarioFinished(false), is(nullValue()));
+    }
+
+
+    @Test
+    public void shouldReportPercentilesAndSlowestScenarios() throws IOException, InterruptedException {
+
+        final ScenarioTimings timings = new ScenarioTimings();
+        for (int i = 0; i < 3; i++) {
+            final ScenarioTimings.Scenario scenario = ScenarioTimings.scenarioStarting();
+            ScenarioTimings.stepsStarting();
+            Thread.sleep(i * 10);
+            ScenarioTimings.tearDownStarting();
+            timings.record(ScenarioTimings.scenarioFinished(false));
+            assertThat(scenario.isFailed(), is(false));
+        }
+
+        final List<ScenarioTimings.Scenario> sorted = timings.getScenarios();
+        assertThat(sorted.size(), is(3));
+        assertTrue(sorted.get(0).getTotalNanos() >= sorted.get(1).getTotalNanos());
+        assertTrue(sorted.get(1).getTotalNanos() >= sorted.get(2).getTotalNanos());
+
+        final String basePath = new File(this.folder.getRoot(), "timings").getPath();
+        timings.write(basePath, 2);
+
+        final String json = read(new File(basePath + ".json"));
+        assertThat(json, containsString("\"scenarios\":3"));
+        assertThat(json, containsString("\"totalMillis\":{\"mean\":"));
+        assertThat(json, containsString("\"p90\":"));
+        assertThat(json, containsString("\"scenario\":\"" + sorted.get(1).getName() + "\""));
+        assertThat(json.contains("\"scenario\":\"" + sorted.get(2).getName() + "\""), is(false));
+
+        final String csv = read(new File(basePath + ".csv"));
+        assertThat(csv, containsString("scenario,thread,failed,total_ms"));
+        final String slowest = "\"" + sorted.get(0).getName() + "\"";
+        final String fastest = "\"" + sorted.get(2).getName() + "\"";
+        assertTrue(csv.indexOf(slowest) < csv.indexOf(fastest));
+    }
+
+
+    private static String read(final File file) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final Reader reader = new FileReader(file);
+        try {
+            final char[] chars = new char[1024];
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                buf.append(chars, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Level;
+
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.logging.LogEntry;
+
+public class SlowStepTraceListenerTest {
+
+    @Test
+    public void shouldOnlyTraceTheTimelineSinceTheStepStarted() {
+
+        final String json = SlowStepTraceListener.timelineJson(Arrays.asList(
+                new LogEntry(Level.INFO, 900L, "{\"method\":\"Timeline.eventRecorded\",\"before\":true}"),
+                new LogEntry(Level.INFO, 1000L, "{\"method\":\"Network.requestWillBeSent\"}"),
+                new LogEntry(Level.INFO, 1200L, "{\"method\":\"Timeline.eventRecorded\"}")), 1000L);
+
+        assertThat(json, is("[\n{\"timestamp\":1000,\"message\":{\"method\":\"Network.requestWillBeSent\"}},"
+                + "\n{\"timestamp\":1200,\"message\":{\"method\":\"Timeline.eventRecorded\"}}\n]"));
+    }
+
+
+    @Test
+    public void shouldTraceAnEmptyTimeline() {
+        assertThat(SlowStepTraceListener.timelineJson(Collections.<LogEntry> emptyList(), 0L), is("[\n]"));
+    }
+
+
+    @Test
+    public void shouldTraceNoEntriesWhereJavascriptIsDisabled() {
+        final WebDriver webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+        when(((JavascriptExecutor) webDriver).executeScript(anyString(), any())).thenThrow(
+                new UnsupportedOperationException("Javascript is not enabled for this driver"));
+
+        assertThat(SlowStepTraceListener.performanceEntries(webDriver, 5000000000L), is("[]"));
+    }
+
+
+    @Test
+    public void shouldNameFilesAfterStepsSafely() {
+        assertThat(SlowStepTraceListener.fileName("ClickById login/../../etc"), is("ClickById_login_.._.._etc"));
+        assertThat(SlowStepTraceListener.fileName("AssertPageLoadUnder \"2000\" ms"),
+                is("AssertPageLoadUnder_2000_ms"));
+        assertThat(SlowStepTraceListener.fileName(".."), is("_."));
+
+        final char[] longName = new char[200];
+        Arrays.fill(longName, 'a');
+        assertThat(SlowStepTraceListener.fileName(new String(longName)).length(), is(80));
+    }
+}
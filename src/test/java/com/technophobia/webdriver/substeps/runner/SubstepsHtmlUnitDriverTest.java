@@ -0,0 +1,87 @@
+package com.technophobia.webdriver.substeps.runner;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitWebElement;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.technophobia.webdriver.util.WebDriverSubstepsBy;
+
+public class SubstepsHtmlUnitDriverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SubstepsHtmlUnitDriver webDriver;
+
+
+    @Before
+    public void openPage() throws IOException {
+
+        final File page = folder.newFile("page.html");
+        final Writer writer = new FileWriter(page);
+        try {
+            writer.write("<html><body><div id=\"first\"><span class=\"a\">one</span><span class=\"b\">two</span></div>"
+                    + "<div id=\"second\"><span class=\"a\">three</span></div></body></html>");
+        } finally {
+            writer.close();
+        }
+
+        webDriver = new SubstepsHtmlUnitDriver(BrowserVersion.FIREFOX_3_6);
+        webDriver.get(page.toURI().toString());
+    }
+
+
+    @After
+    public void quit() {
+        webDriver.quit();
+    }
+
+
+    @Test
+    public void shouldEvaluateXPathAgainstThePage() {
+
+        final List<WebElement> spans = webDriver.findElementsByXPath(webDriver, ".//span[@class='a']");
+
+        assertThat(spans.size(), is(2));
+        assertThat(spans.get(0), instanceOf(HtmlUnitWebElement.class));
+        assertThat(spans.get(1).getText(), is("three"));
+    }
+
+
+    @Test
+    public void shouldEvaluateXPathWithinAnElement() {
+
+        final WebElement second = webDriver.findElement(By.id("second"));
+
+        final List<WebElement> spans = second.findElements(WebDriverSubstepsBy.ByTagAndAttributes("span",
+                "class=\"a\""));
+
+        assertThat(spans.size(), is(1));
+        assertThat(spans.get(0).getText(), is("three"));
+    }
+
+
+    @Test
+    public void shouldLeaveOtherContextsToTheDriver() {
+
+        assertThat(webDriver.findElementsByXPath(mock(WebElement.class), ".//span"), is(nullValue()));
+    }
+}
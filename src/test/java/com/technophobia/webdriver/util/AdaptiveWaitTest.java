@@ -0,0 +1,135 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriver.Timeouts;
+import org.openqa.selenium.WebDriverException;
+
+import com.technophobia.webdriver.substeps.runner.Condition;
+
+/**
+ * Tests the polling behaviour of AdaptiveWait
+ */
+public class AdaptiveWaitTest {
+
+    @Test
+    public void shouldReturnShortlyAfterConditionIsMet() {
+        final Condition condition = conditionMetAfter(100);
+
+        final long start = System.currentTimeMillis();
+        final boolean met = AdaptiveWait.sleeping().withTimeout(5, TimeUnit.SECONDS).pollingBetween(5, 50)
+                .until(condition);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(met, is(true));
+        assertTrue("took " + elapsed + "ms", elapsed < 1000);
+    }
+
+
+    @Test
+    public void shouldGiveUpAtTimeout() {
+        final Condition never = new Condition() {
+            public boolean conditionMet() {
+                return false;
+            }
+        };
+
+        final long start = System.currentTimeMillis();
+        final boolean met = AdaptiveWait.sleeping().withTimeout(300, TimeUnit.MILLISECONDS).until(never);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(met, is(false));
+        assertTrue("took " + elapsed + "ms", elapsed >= 300 && elapsed < 1000);
+    }
+
+
+    @Test
+    public void shouldFallBackToPollingWhenSignalScriptFails() {
+        final WebDriver webDriver = mock(WebDriver.class,
+                withSettings().extraInterfaces(JavascriptExecutor.class).defaultAnswer(RETURNS_DEEP_STUBS));
+        when(((JavascriptExecutor) webDriver).executeAsyncScript(anyString(), any(), any())).thenThrow(
+                new WebDriverException("async scripts not supported"));
+
+        final boolean met = AdaptiveWait.forDriver(webDriver).withTimeout(5, TimeUnit.SECONDS).pollingBetween(5, 50)
+                .until(conditionMetAfter(200));
+
+        assertThat(met, is(true));
+    }
+
+
+    @Test
+    public void shouldFallBackToPollingWhenJavascriptIsDisabled() {
+        final WebDriver webDriver = mock(WebDriver.class,
+                withSettings().extraInterfaces(JavascriptExecutor.class).defaultAnswer(RETURNS_DEEP_STUBS));
+        when(((JavascriptExecutor) webDriver).executeAsyncScript(anyString(), any(), any())).thenThrow(
+                new UnsupportedOperationException("Javascript is not enabled for this HtmlUnitDriver instance"));
+
+        final boolean met = AdaptiveWait.forDriver(webDriver).withTimeout(5, TimeUnit.SECONDS).pollingBetween(5, 50)
+                .until(conditionMetAfter(200));
+
+        assertThat(met, is(true));
+        verify((JavascriptExecutor) webDriver, times(1)).executeAsyncScript(anyString(), any(), any());
+    }
+
+
+    @Test
+    public void shouldPutTheScriptTimeoutBackAfterWaiting() {
+        final WebDriver webDriver = mock(WebDriver.class,
+                withSettings().extraInterfaces(JavascriptExecutor.class).defaultAnswer(RETURNS_DEEP_STUBS));
+        final Timeouts timeouts = webDriver.manage().timeouts();
+
+        AdaptiveWait.forDriver(webDriver).withTimeout(5, TimeUnit.SECONDS).pollingBetween(5, 50)
+                .until(conditionMetAfter(50));
+
+        final InOrder inOrder = inOrder(timeouts, webDriver);
+        inOrder.verify(timeouts).setScriptTimeout(anyLong(), eq(TimeUnit.MILLISECONDS));
+        inOrder.verify((JavascriptExecutor) webDriver).executeAsyncScript(anyString(), any(), any());
+        inOrder.verify(timeouts).setScriptTimeout(AdaptiveWait.RESTORED_SCRIPT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        // once for the whole wait, not once per poll
+        verify(timeouts, times(2)).setScriptTimeout(anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+
+    @Test
+    public void shouldLeaveTheScriptTimeoutAloneIfTheConditionIsAlreadyMet() {
+        final WebDriver webDriver = mock(WebDriver.class,
+                withSettings().extraInterfaces(JavascriptExecutor.class).defaultAnswer(RETURNS_DEEP_STUBS));
+        final Timeouts timeouts = webDriver.manage().timeouts();
+
+        final boolean met = AdaptiveWait.forDriver(webDriver).until(conditionMetAfter(0));
+
+        assertThat(met, is(true));
+        verify(timeouts, never()).setScriptTimeout(anyLong(), any(TimeUnit.class));
+    }
+
+
+    private static Condition conditionMetAfter(final long millis) {
+        final long metAt = System.currentTimeMillis() + millis;
+        return new Condition() {
+            public boolean conditionMet() {
+                return System.currentTimeMillis() >= metAt;
+            }
+        };
+    }
+}
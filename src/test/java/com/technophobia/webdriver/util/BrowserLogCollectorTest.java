@@ -0,0 +1,58 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+
+public class BrowserLogCollectorTest {
+
+    private final List<BrowserLogCollector.Entry> written = new ArrayList<BrowserLogCollector.Entry>();
+
+    private final BrowserLogCollector.Sink sink = new BrowserLogCollector.Sink() {
+        public void write(final List<BrowserLogCollector.Entry> entries) {
+            written.addAll(entries);
+        }
+
+        public void flush() {
+            // nothing buffered
+        }
+    };
+
+
+    @Test
+    public void shouldTagEntriesWithTheStepAndDropTheOldestWhenFull() {
+
+        final WebDriver webDriver = mock(WebDriver.class, RETURNS_DEEP_STUBS);
+        when(webDriver.manage().logs().get(LogType.BROWSER)).thenReturn(
+                new LogEntries(Arrays.asList(new LogEntry(Level.INFO, 1L, "first"), new LogEntry(Level.WARNING, 2L,
+                        "second"), new LogEntry(Level.SEVERE, 3L, "third"))));
+
+        final BrowserLogCollector collector = new BrowserLogCollector(sink, 2);
+        collector.collect(webDriver, "ActionWebDriverSubStepImplementations.click");
+        collector.flush();
+
+        assertThat(written.size(), is(2));
+        assertThat(written.get(0).getMessage(), is("second"));
+        assertThat(written.get(1).getLevel(), is("SEVERE"));
+        assertThat(written.get(1).getStep(), is("ActionWebDriverSubStepImplementations.click"));
+    }
+
+
+    @Test
+    public void shouldEscapeJsonStrings() {
+        assertThat(BrowserLogFileSink.escape("say \"hi\"\n"), is("say \\\"hi\\\"\\n"));
+    }
+}
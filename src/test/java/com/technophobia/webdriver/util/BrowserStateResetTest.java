@@ -0,0 +1,88 @@
+package com.technophobia.webdriver.util;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+public class BrowserStateResetTest {
+
+    private WebDriver webDriver;
+
+
+    @Before
+    public void setUp() {
+        webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class).defaultAnswer(
+                RETURNS_DEEP_STUBS));
+        when(webDriver.getCurrentUrl()).thenReturn("http://localhost/app");
+    }
+
+
+    @Test
+    public void shouldCloseExtraWindowsAndClearStateBeforeLoadingABlankPage() {
+
+        when(webDriver.getWindowHandles()).thenReturn(new LinkedHashSet<String>(Arrays.asList("main", "popup")));
+        when(webDriver.getWindowHandle()).thenReturn("main");
+
+        BrowserStateReset.reset(webDriver);
+
+        final InOrder inOrder = inOrder(webDriver, webDriver.switchTo(), webDriver.manage());
+        inOrder.verify(webDriver.switchTo()).window("popup");
+        inOrder.verify(webDriver).close();
+        inOrder.verify(webDriver.switchTo()).window("main");
+        inOrder.verify(webDriver.switchTo()).defaultContent();
+        inOrder.verify((JavascriptExecutor) webDriver).executeAsyncScript(anyString());
+        inOrder.verify(webDriver.manage()).deleteAllCookies();
+        inOrder.verify(webDriver).get("about:blank");
+    }
+
+
+    @Test
+    public void shouldPutTheScriptTimeoutBackAfterClearingStorage() {
+
+        when(webDriver.getWindowHandles()).thenReturn(new LinkedHashSet<String>(Arrays.asList("main")));
+        when(((JavascriptExecutor) webDriver).executeAsyncScript(anyString())).thenThrow(
+                new WebDriverException("script timed out"));
+        final WebDriver.Timeouts timeouts = webDriver.manage().timeouts();
+
+        try {
+            BrowserStateReset.reset(webDriver);
+        } catch (final WebDriverException e) {
+            // the reset failing is reported by the caller
+        }
+
+        final InOrder inOrder = inOrder(timeouts, webDriver);
+        inOrder.verify(timeouts).setScriptTimeout(anyLong(), eq(TimeUnit.SECONDS));
+        inOrder.verify((JavascriptExecutor) webDriver).executeAsyncScript(anyString());
+        inOrder.verify(timeouts).setScriptTimeout(AdaptiveWait.RESTORED_SCRIPT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+
+    @Test
+    public void shouldLeaveASingleWindowOpen() {
+
+        when(webDriver.getWindowHandles()).thenReturn(new LinkedHashSet<String>(Arrays.asList("main")));
+
+        BrowserStateReset.reset(webDriver);
+
+        verify(webDriver, never()).close();
+        verify(webDriver).get("about:blank");
+    }
+}
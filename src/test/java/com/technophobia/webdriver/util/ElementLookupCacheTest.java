@@ -0,0 +1,198 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+public class ElementLookupCacheTest {
+
+    private WebDriver webDriver;
+    private ElementLookupCache cache;
+    private final WebElement element = mock(WebElement.class);
+
+
+    @Before
+    public void setUp() {
+        webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+        cache = new ElementLookupCache(webDriver);
+    }
+
+
+    @Test
+    public void shouldHandBackTheElementWithoutAskingTheBrowserAgain() {
+
+        domGenerations(-1L);
+
+        cache.put(By.id("username"), element);
+
+        assertThat(wrapped(cache.get(By.id("username"))), sameInstance(element));
+        assertThat(wrapped(cache.get(By.id("username"))), sameInstance(element));
+        assertThat(cache.get(By.id("password")), nullValue());
+
+        // just the once, to start watching the page
+        verify((JavascriptExecutor) webDriver, times(1)).executeScript(anyString());
+    }
+
+
+    @Test
+    public void shouldKeepTheElementIfTheDomHasNotChangedSinceAClick() {
+
+        domGenerations(-1L, 0L);
+
+        cache.put(By.id("username"), element);
+        ElementLookupCache.INVALIDATOR.commandExecuted("WebElement.click", null, 0, null);
+
+        assertThat(wrapped(cache.get(By.id("username"))), sameInstance(element));
+        verify((JavascriptExecutor) webDriver, times(2)).executeScript(anyString());
+    }
+
+
+    @Test
+    public void shouldForgetTheElementOnceTheDomHasChanged() {
+
+        domGenerations(-1L, 3L);
+
+        cache.put(By.id("username"), element);
+        ElementLookupCache.INVALIDATOR.commandExecuted("WebElement.sendKeys", null, 0, null);
+
+        assertThat(cache.get(By.id("username")), nullValue());
+    }
+
+
+    @Test
+    public void shouldForgetEverythingOnNavigation() {
+
+        domGenerations(-1L);
+
+        cache.put(By.id("username"), element);
+        ElementLookupCache.INVALIDATOR.commandExecuted("Navigation.back", null, 0, null);
+
+        assertThat(cache.get(By.id("username")), nullValue());
+    }
+
+
+    @Test
+    public void shouldIgnoreCommandsThatOnlyRead() {
+
+        domGenerations(-1L);
+
+        cache.put(By.id("username"), element);
+        ElementLookupCache.INVALIDATOR.commandExecuted("WebElement.getText", null, 0, null);
+        ElementLookupCache.INVALIDATOR.commandExecuted("WebDriver.getTitle", null, 0, null);
+
+        assertThat(wrapped(cache.get(By.id("username"))), sameInstance(element));
+    }
+
+
+    @Test
+    public void shouldNotCacheAnythingWhereThePageCannotBeWatched() {
+
+        domGenerations(-2L);
+
+        cache.put(By.id("username"), element);
+
+        assertThat(cache.get(By.id("username")), nullValue());
+    }
+
+
+    @Test
+    public void shouldNotCacheLocatorsThatLookAlike() {
+
+        domGenerations(-1L);
+
+        // both print the same, but find different things
+        final By first = WebDriverSubstepsBy.ByXpathContainingText("//td", "first");
+        final By second = WebDriverSubstepsBy.ByXpathContainingText("//td", "second");
+
+        cache.put(first, element);
+
+        assertThat(cache.get(first), nullValue());
+        assertThat(cache.get(second), nullValue());
+    }
+
+
+    @Test
+    public void shouldTellLocatorsApartByTheNumberOrValueTheyNeed() {
+
+        domGenerations(-1L);
+
+        cache.put(WebDriverSubstepsBy.ByTagAndAttributes("input", "name=\"q\""), element);
+
+        assertThat(wrapped(cache.get(WebDriverSubstepsBy.ByTagAndAttributes("input", "name=\"q\""))),
+                sameInstance(element));
+        assertThat(cache.get(WebDriverSubstepsBy.NthByTagAndAttributes("input", "name=\"q\"", 2)), nullValue());
+        assertThat(cache.get(WebDriverSubstepsBy.ByTagAndAttributesWithValue("input", "name=\"q\"", "x")),
+                nullValue());
+    }
+
+
+    @Test
+    public void shouldNotCacheAnythingWhereJavascriptIsDisabled() {
+
+        when(((JavascriptExecutor) webDriver).executeScript(anyString())).thenThrow(
+                new UnsupportedOperationException("Javascript is not enabled for this driver"));
+
+        cache.put(By.id("username"), element);
+
+        assertThat(cache.get(By.id("username")), nullValue());
+    }
+
+
+    @Test
+    public void shouldFindAnElementThePageHasReplacedAgain() {
+
+        domGenerations(-1L);
+
+        final WebElement replaced = mock(WebElement.class);
+        when(replaced.getText()).thenThrow(new StaleElementReferenceException("redrawn by an ajax response"));
+        when(element.getText()).thenReturn("Bob");
+        when(webDriver.findElement(By.id("username"))).thenReturn(element);
+
+        // no command in between to say the page has changed
+        cache.put(By.id("username"), replaced);
+
+        assertThat(cache.get(By.id("username")).getText(), is("Bob"));
+    }
+
+
+    @Test
+    public void shouldOnlyWatchDriversThatReportTheirCommands() {
+
+        assertThat(ElementLookupCache.canWatch(webDriver), is(false));
+
+        final List<WebDriverCommandListener> listeners = Collections.singletonList(ElementLookupCache.INVALIDATOR);
+        assertThat(ElementLookupCache.canWatch(InstrumentedWebDriver.instrument(webDriver, listeners)), is(true));
+
+        final List<WebDriverCommandListener> others = Collections.singletonList(mock(WebDriverCommandListener.class));
+        assertThat(ElementLookupCache.canWatch(InstrumentedWebDriver.instrument(webDriver, others)), is(false));
+    }
+
+
+    private static WebElement wrapped(final WebElement hit) {
+        return ((WrapsElement) hit).getWrappedElement();
+    }
+
+
+    private void domGenerations(final Long first, final Long... rest) {
+        when(((JavascriptExecutor) webDriver).executeScript(anyString())).thenReturn(first, (Object[]) rest);
+    }
+}
@@ -0,0 +1,105 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Tests reading element properties through ElementSnapshot
+ */
+public class ElementSnapshotTest {
+
+    private final WebElement first = mock(WebElement.class);
+
+    private final WebElement second = mock(WebElement.class);
+
+
+    @Test
+    public void shouldTakeSnapshotInOneScriptForRemoteDriver() {
+        final RemoteWebDriver webDriver = mock(RemoteWebDriver.class);
+
+        when(webDriver.executeScript(anyString(), any(), any(), any())).thenReturn(
+                Arrays.asList(values("a", "first link", "nav"), values("a", "second link", null)));
+
+        final List<ElementSnapshot> snapshots = ElementSnapshot.snapshot(webDriver,
+                Arrays.asList(this.first, this.second), true, "class");
+
+        assertThat(snapshots.get(0).getText(), is("first link"));
+        assertThat(snapshots.get(0).getAttribute("class"), is("nav"));
+        assertThat(snapshots.get(1).getTagName(), is("a"));
+        assertThat(snapshots.get(1).getAttribute("class"), is(nullValue()));
+
+        verify(this.first, never()).getText();
+        verify(this.second, never()).getAttribute("class");
+    }
+
+
+    @Test
+    public void shouldReadFromElementsWhenScriptFails() {
+        final RemoteWebDriver webDriver = mock(RemoteWebDriver.class);
+        when(webDriver.executeScript(anyString(), any(), any(), any())).thenThrow(
+                new StaleElementReferenceException("stale"));
+        when(this.first.getText()).thenReturn("first link");
+
+        final List<ElementSnapshot> snapshots = ElementSnapshot.snapshot(webDriver, Arrays.asList(this.first), true);
+
+        assertThat(snapshots.get(0).getText(), is("first link"));
+    }
+
+
+    @Test
+    public void shouldReadFromElementsOnlyWhenNeededForLocalDriver() {
+        final WebDriver webDriver = mock(WebDriver.class);
+        when(this.first.getText()).thenReturn("first link");
+
+        final List<ElementSnapshot> snapshots = ElementSnapshot.snapshot(webDriver,
+                Arrays.asList(this.first, this.second), true);
+
+        assertThat(snapshots.get(0).getText(), is("first link"));
+        verify(this.second, never()).getText();
+    }
+
+
+    @Test
+    public void shouldReadFromElementsForLocalBrowsers() {
+        final ChromeDriver webDriver = mock(ChromeDriver.class);
+        when(this.first.getText()).thenReturn("first link");
+
+        final List<ElementSnapshot> snapshots = ElementSnapshot.snapshot(webDriver, Arrays.asList(this.first), true);
+
+        assertThat(snapshots.get(0).getText(), is("first link"));
+        verify(webDriver, never()).executeScript(anyString(), any(), any(), any());
+        assertThat(ElementSnapshot.isRemote(mock(FirefoxDriver.class)), is(false));
+    }
+
+
+    private static Map<String, Object> values(final String tag, final String text, final String cssClass) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("class", cssClass);
+
+        final Map<String, Object> values = new HashMap<String, Object>();
+        values.put("tag", tag);
+        values.put("text", text);
+        values.put("attributes", attributes);
+        return values;
+    }
+}
@@ -0,0 +1,118 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+public class ElementStashTest {
+
+    private static final ElementStash.Key ROW = new ElementStash.Key("row", ElementStash.Scope.SCENARIO);
+
+    private WebDriver webDriver;
+    private ElementStash stash;
+
+
+    @Before
+    public void setUp() {
+        webDriver = mock(WebDriver.class);
+        stash = new ElementStash(webDriver);
+    }
+
+
+    @Test
+    public void shouldHandBackElementsWithoutARecipeAsTheyAre() {
+
+        final WebElement element = mock(WebElement.class);
+        stash.put(ROW, element, null);
+
+        assertThat(stash.get(ROW), sameInstance(element));
+    }
+
+
+    @Test
+    public void shouldFindAStaleElementAgainThroughItsRecipe() {
+
+        final WebElement stale = mock(WebElement.class);
+        when(stale.getText()).thenThrow(new StaleElementReferenceException("redrawn"));
+
+        final WebElement fresh = mock(WebElement.class);
+        when(fresh.getText()).thenReturn("row 1");
+        when(webDriver.findElement(By.id("row1"))).thenReturn(fresh);
+
+        stash.put(ROW, stale, ElementStash.recipe(null, By.id("row1")));
+
+        final WebElement row = stash.get(ROW);
+        assertThat(row.getText(), is("row 1"));
+        assertThat(row.getText(), is("row 1"));
+        assertThat(((WrapsElement) row).getWrappedElement(), sameInstance(fresh));
+
+        verify(webDriver, times(1)).findElement(By.id("row1"));
+    }
+
+
+    @Test
+    public void shouldResolveNestedRecipesFromTheParent() {
+
+        final WebElement table = mock(WebElement.class);
+        final WebElement fresh = mock(WebElement.class);
+        when(webDriver.findElement(By.id("results"))).thenReturn(table);
+        when(table.findElement(By.tagName("tr"))).thenReturn(fresh);
+        when(fresh.getTagName()).thenReturn("tr");
+
+        final WebElement stale = mock(WebElement.class);
+        when(stale.getTagName()).thenThrow(new StaleElementReferenceException("redrawn"));
+
+        stash.put(ROW, stale, ElementStash.recipe(ElementStash.recipe(null, By.id("results")), By.tagName("tr")));
+
+        assertThat(stash.get(ROW).getTagName(), is("tr"));
+    }
+
+
+    @Test(expected = StaleElementReferenceException.class)
+    public void shouldOnlyFindTheElementAgainOnce() {
+
+        final WebElement stale = mock(WebElement.class);
+        when(stale.getText()).thenThrow(new StaleElementReferenceException("redrawn"));
+        when(webDriver.findElement(By.id("row1"))).thenReturn(stale);
+
+        stash.put(ROW, stale, ElementStash.recipe(null, By.id("row1")));
+
+        stash.get(ROW).getText();
+    }
+
+
+    @Test
+    public void shouldClearTheScopeAndAnyShorterOne() {
+
+        final ElementStash.Key step = new ElementStash.Key("step", ElementStash.Scope.STEP);
+        final ElementStash.Key feature = new ElementStash.Key("feature", ElementStash.Scope.FEATURE);
+
+        stash.put(step, mock(WebElement.class), null);
+        stash.put(ROW, mock(WebElement.class), null);
+        stash.put(feature, mock(WebElement.class), null);
+
+        stash.clear(ElementStash.Scope.STEP);
+        assertThat(stash.get(step), nullValue());
+        assertThat(stash.get(ROW) != null, is(true));
+
+        stash.clear(ElementStash.Scope.SCENARIO);
+        assertThat(stash.get(ROW), nullValue());
+        assertThat(stash.get(feature) != null, is(true));
+
+        stash.clear(ElementStash.Scope.FEATURE);
+        assertThat(stash.isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,59 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the accuracy of Histogram percentiles
+ */
+public class HistogramTest {
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        final Histogram histogram = new Histogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+
+        assertThat(histogram.getCount(), is(10000L));
+        assertThat(histogram.getMin(), is(1000L));
+        assertThat(histogram.getMax(), is(10000000L));
+
+        assertWithin(histogram.getValueAtPercentile(50), 5000000L);
+        assertWithin(histogram.getValueAtPercentile(90), 9000000L);
+        assertWithin(histogram.getValueAtPercentile(99), 9900000L);
+        assertThat(histogram.getValueAtPercentile(100), is(10000000L));
+    }
+
+
+    @Test
+    public void shouldRecordSmallValuesExactly() {
+        final Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(3);
+        histogram.record(3);
+        histogram.record(31);
+
+        assertThat(histogram.getValueAtPercentile(50), is(3L));
+        assertThat(histogram.getValueAtPercentile(100), is(31L));
+        assertThat(histogram.getTotal(), is(37L));
+    }
+
+
+    @Test
+    public void shouldReportZeroWhenEmpty() {
+        final Histogram histogram = new Histogram();
+
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+        assertThat(histogram.getMin(), is(0L));
+    }
+
+
+    private static void assertWithin(final long actual, final long expected) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
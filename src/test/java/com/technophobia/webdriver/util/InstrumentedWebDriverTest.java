@@ -0,0 +1,96 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * Tests that commands through an InstrumentedWebDriver are reported, and that
+ * what it hands out can be passed back to the driver
+ */
+public class InstrumentedWebDriverTest {
+
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+
+    private WebDriver webDriver;
+
+    private WebElement element;
+
+    private WebDriver instrumented;
+
+
+    @Before
+    public void initialiseDependencies() {
+        this.webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+        this.element = mock(WebElement.class);
+
+        final WebDriverCommandListener listener = new WebDriverCommandListener() {
+            public void commandExecuted(final String command, final Object[] args, final long durationNanos,
+                    final Throwable failure) {
+                InstrumentedWebDriverTest.this.commands.add(command);
+            }
+        };
+        this.instrumented = InstrumentedWebDriver.instrument(this.webDriver, Arrays.asList(listener));
+    }
+
+
+    @Test
+    public void shouldReportDriverAndElementCommands() {
+        when(this.webDriver.findElement(By.id("go"))).thenReturn(this.element);
+        when(this.element.getText()).thenReturn("Go");
+
+        final WebElement found = this.instrumented.findElement(By.id("go"));
+
+        assertThat(found.getText(), is("Go"));
+        assertThat(this.commands, is(Arrays.asList("WebDriver.findElement", "WebElement.getText")));
+    }
+
+
+    @Test
+    public void shouldUnwrapElementsPassedBackToDriver() {
+        when(this.webDriver.findElement(By.id("go"))).thenReturn(this.element);
+
+        final WebElement found = this.instrumented.findElement(By.id("go"));
+        ((JavascriptExecutor) this.instrumented).executeScript("arguments[0].click();", found);
+
+        verify((JavascriptExecutor) this.webDriver).executeScript("arguments[0].click();", this.element);
+        assertThat(((WrapsElement) found).getWrappedElement(), is(sameInstance(this.element)));
+        assertThat(found, is(instanceOf(WebElement.class)));
+    }
+
+
+    @Test
+    public void shouldNotReportAccessorsAsCommands() {
+        final WebDriver.Options options = mock(WebDriver.Options.class);
+        when(this.webDriver.manage()).thenReturn(options);
+
+        this.instrumented.manage().deleteAllCookies();
+
+        verify(options).deleteAllCookies();
+        assertThat(this.commands, is(Arrays.asList("Options.deleteAllCookies")));
+    }
+
+
+    @Test
+    public void shouldUnwrapToUnderlyingDriver() {
+        assertThat(InstrumentedWebDriver.unwrap(this.instrumented), is(sameInstance(this.webDriver)));
+    }
+}
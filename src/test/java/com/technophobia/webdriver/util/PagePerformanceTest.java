@@ -0,0 +1,145 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+public class PagePerformanceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WebDriver webDriver;
+
+
+    @Before
+    public void setUp() {
+        webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+    }
+
+
+    @Test
+    public void shouldMeasureFromTheStartOfTheNavigation() {
+
+        timings(1000L, 1150L, 1400L, 1900L, 42L, 250000L);
+
+        final PagePerformance performance = PagePerformance.measure(webDriver);
+
+        assertThat(performance.getUrl(), is("http://localhost/page"));
+        assertThat(performance.isLoaded(), is(true));
+        assertThat(performance.getTimeToFirstByteMillis(), is(150L));
+        assertThat(performance.getDomContentLoadedMillis(), is(400L));
+        assertThat(performance.getPageLoadMillis(), is(900L));
+        assertThat(performance.getResourceCount(), is(42));
+        assertThat(performance.getTransferBytes(), is(250000L));
+    }
+
+
+    @Test
+    public void shouldKnowWhenThePageIsStillLoading() {
+
+        timings(1000L, 1150L, 0L, 0L, 3L, -1L);
+
+        final PagePerformance performance = PagePerformance.measure(webDriver);
+
+        assertThat(performance.isLoaded(), is(false));
+        assertThat(performance.getPageLoadMillis(), is(PagePerformance.UNKNOWN));
+        assertThat(performance.getTransferBytes(), is(PagePerformance.UNKNOWN));
+    }
+
+
+    @Test
+    public void shouldReportAFullResourceTimingBuffer() {
+
+        timings(1000L, 1150L, 1400L, 1900L, 250L, 900000L, Boolean.TRUE);
+
+        final PagePerformance performance = PagePerformance.measure(webDriver);
+
+        assertThat(performance.isResourceBufferFull(), is(true));
+        assertThat(performance.toString(), containsString("250 or more resources"));
+
+        timings(1000L, 1150L, 1400L, 1900L, 42L, 250000L);
+
+        assertThat(PagePerformance.measure(webDriver).isResourceBufferFull(), is(false));
+    }
+
+
+    @Test
+    public void shouldMeasureNothingWithoutNavigationTiming() {
+
+        when(((JavascriptExecutor) webDriver).executeScript(anyString())).thenReturn(null);
+
+        assertThat(PagePerformance.measure(webDriver), is(nullValue()));
+        assertThat(PagePerformance.measure(mock(WebDriver.class)), is(nullValue()));
+    }
+
+
+    @Test
+    public void shouldRecordMeasurementsAsCsv() throws IOException {
+
+        timings(1000L, 1150L, 1400L, 1900L, 42L, 250000L);
+        final File file = new File(folder.getRoot(), "perf/page-performance.csv");
+
+        final PagePerformanceLog log = new PagePerformanceLog(file);
+        log.record(PagePerformance.measure(webDriver), "AssertPageLoadUnder 2000 ms");
+        log.close();
+        log.record(PagePerformance.measure(webDriver), "RecordPagePerformance");
+        log.close();
+
+        final String csv = read(file);
+        assertThat(csv, containsString("time,thread,step,url,load_ms"));
+        assertThat(csv,
+                containsString(",\"AssertPageLoadUnder 2000 ms\",\"http://localhost/page\",900,150,400,42,250000"));
+        assertThat(csv, containsString(",\"RecordPagePerformance\","));
+        assertThat(csv.indexOf("time,thread"), is(csv.lastIndexOf("time,thread")));
+    }
+
+
+    private void timings(final Long navigationStart, final Long responseStart, final Long domContentLoaded,
+            final Long loadEventEnd, final Long resources, final Long transferSize) {
+        timings(navigationStart, responseStart, domContentLoaded, loadEventEnd, resources, transferSize,
+                Boolean.FALSE);
+    }
+
+
+    private void timings(final Long navigationStart, final Long responseStart, final Long domContentLoaded,
+            final Long loadEventEnd, final Long resources, final Long transferSize, final Boolean bufferFull) {
+        when(((JavascriptExecutor) webDriver).executeScript(anyString())).thenReturn(
+                Arrays.<Object> asList(navigationStart, responseStart, domContentLoaded, loadEventEnd, resources,
+                        transferSize, "http://localhost/page", bufferFull));
+    }
+
+
+    private static String read(final File file) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final Reader reader = new FileReader(file);
+        try {
+            final char[] chars = new char[1024];
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                buf.append(chars, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return buf.toString();
+    }
+}
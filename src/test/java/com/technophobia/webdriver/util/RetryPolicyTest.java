@@ -0,0 +1,111 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+
+public class RetryPolicyTest {
+
+    private int attempts = 0;
+
+
+    @After
+    public void finishStep() {
+        StepMetrics.finish();
+    }
+
+
+    @Test
+    public void shouldRetryUntilTheAttemptSucceeds() {
+
+        StepMetrics.start("step");
+
+        final String result = RetryPolicy.withLimits(5000, 1, 4, 0).retryOn(StaleElementReferenceException.class)
+                .execute("test", failing(3, new StaleElementReferenceException("redrawn")));
+
+        assertThat(result, is("done"));
+        assertThat(attempts, is(4));
+        assertThat(StepMetrics.current().getRetries(), is(3));
+    }
+
+
+    @Test
+    public void shouldNotRetryOtherExceptions() {
+
+        try {
+            RetryPolicy.withLimits(5000, 1, 4, 0).retryOn(StaleElementReferenceException.class)
+                    .execute("test", failing(3, new NoSuchElementException("gone")));
+            fail("expecting the exception to be thrown");
+        } catch (final NoSuchElementException e) {
+            assertThat(attempts, is(1));
+        }
+    }
+
+
+    @Test
+    public void shouldGiveUpAfterTheMaximumAttempts() {
+
+        try {
+            RetryPolicy.withLimits(5000, 1, 4, 2).retryOn(StaleElementReferenceException.class)
+                    .execute("test", failing(3, new StaleElementReferenceException("redrawn")));
+            fail("expecting the exception to be thrown");
+        } catch (final StaleElementReferenceException e) {
+            assertThat(attempts, is(2));
+        }
+    }
+
+
+    @Test
+    public void shouldGiveUpRatherThanWaitPastTheTimeout() {
+
+        final long start = System.currentTimeMillis();
+        try {
+            RetryPolicy.withLimits(0, 1000, 1000, 0).withTimeout(100, TimeUnit.MILLISECONDS)
+                    .retryOn(StaleElementReferenceException.class)
+                    .execute("test", failing(3, new StaleElementReferenceException("redrawn")));
+            fail("expecting the exception to be thrown");
+        } catch (final StaleElementReferenceException e) {
+            assertThat(attempts, is(1));
+            assertTrue(System.currentTimeMillis() - start < 500);
+        }
+    }
+
+
+    @Test
+    public void shouldBackOffExponentiallyWithJitter() {
+
+        final RetryPolicy policy = RetryPolicy.withLimits(5000, 100, 1000, 0);
+
+        for (int i = 0; i < 20; i++) {
+            assertBetween(policy.delayMillis(1), 50, 100);
+            assertBetween(policy.delayMillis(2), 100, 200);
+            assertBetween(policy.delayMillis(3), 200, 400);
+            assertBetween(policy.delayMillis(10), 500, 1000);
+        }
+    }
+
+
+    private static void assertBetween(final long value, final long min, final long max) {
+        assertTrue(value + " not between " + min + " and " + max, value >= min && value <= max);
+    }
+
+
+    private RetryPolicy.Attempt<String> failing(final int failures, final RuntimeException e) {
+        return new RetryPolicy.Attempt<String>() {
+            public String run() {
+                if (++attempts <= failures) {
+                    throw e;
+                }
+                return "done";
+            }
+        };
+    }
+}
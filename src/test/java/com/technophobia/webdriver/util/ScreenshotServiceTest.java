@@ -0,0 +1,78 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScreenshotServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void shouldNotSaveTheSameScreenshotTwiceInARow() throws IOException {
+
+        final ScreenshotService service = new ScreenshotService(folder.getRoot().getPath(), 0, 2);
+        final byte[] first = png(40, 20);
+
+        assertThat(service.save(first, "first", true), notNullValue());
+        assertThat(service.save(first, "again", true), nullValue());
+        assertThat(service.save(png(20, 20), "second", true), notNullValue());
+        assertThat(service.save(first, "first again", true), notNullValue());
+
+        service.flush();
+
+        assertThat(folder.getRoot().list().length, is(3));
+    }
+
+
+    @Test
+    public void shouldAlwaysSaveAFailureScreenshot() throws IOException {
+
+        final ScreenshotService service = new ScreenshotService(folder.getRoot().getPath(), 0, 2);
+        final byte[] page = png(40, 20);
+
+        assertThat(service.save(page, "last step", true), notNullValue());
+        assertThat(service.save(page, "failure", false), notNullValue());
+
+        service.flush();
+
+        assertThat(folder.getRoot().list().length, is(2));
+    }
+
+
+    @Test
+    public void shouldScaleDownWideScreenshots() throws IOException {
+
+        final ScreenshotService service = new ScreenshotService(folder.getRoot().getPath(), 100, 2);
+
+        final File file = service.save(png(400, 200), "wide page", false);
+        service.flush();
+
+        assertThat(file.getName(), is("0001-wide_page.png"));
+
+        final BufferedImage written = ImageIO.read(file);
+        assertThat(written.getWidth(), is(100));
+        assertThat(written.getHeight(), is(50));
+    }
+
+
+    private static byte[] png(final int width, final int height) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,81 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Tests row matching in the TableScanner
+ */
+public class TableScannerTest {
+
+    private final WebElement table = mock(WebElement.class);
+
+    private final WebDriver webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+
+
+    @Test
+    public void shouldMatchValuesInOrderAcrossNonAdjacentCells() {
+        final List<String> values = Arrays.asList("Bob", "London");
+
+        assertThat(TableScanner.containsInOrder(Arrays.asList("Bob Smith", "42", "London").iterator(), values),
+                is(true));
+        assertThat(TableScanner.containsInOrder(Arrays.asList("London", "Bob Smith").iterator(), values), is(false));
+        assertThat(TableScanner.containsInOrder(Arrays.<String> asList().iterator(), values), is(false));
+    }
+
+
+    @Test
+    public void shouldReturnOnlyMatchingRowFromScan() {
+        final WebElement matchingRow = mock(WebElement.class);
+
+        final List<List<String>> matrix = Arrays.asList(Arrays.<String> asList(), Arrays.asList("Alice", "Paris"),
+                Arrays.asList("Bob", "London"));
+
+        when(executor().executeScript(anyString(), eq(this.table))).thenReturn(matrix);
+        when(executor().executeScript(anyString(), eq(this.table), eq(Arrays.asList(Long.valueOf(2))))).thenReturn(
+                Arrays.asList(matchingRow));
+
+        final List<WebElement> rows = new TableScanner(this.webDriver).findRowsContainingText(this.table,
+                Arrays.asList("Bob", "London"));
+
+        assertThat(rows.size(), is(1));
+        assertThat(rows.get(0), is(sameInstance(matchingRow)));
+    }
+
+
+    @Test
+    public void shouldLeaveScanToCallerWhenScriptFails() {
+        when(executor().executeScript(anyString(), eq(this.table))).thenThrow(new WebDriverException("no js"));
+
+        assertThat(new TableScanner(this.webDriver).findRowsContainingText(this.table, Arrays.asList("Bob")),
+                is(nullValue()));
+    }
+
+
+    @Test
+    public void shouldLeaveScanToCallerWhenDriverCannotExecuteScript() {
+        assertThat(new TableScanner(mock(WebDriver.class)).findRowsContainingText(this.table, Arrays.asList("Bob")),
+                is(nullValue()));
+    }
+
+
+    private JavascriptExecutor executor() {
+        return (JavascriptExecutor) this.webDriver;
+    }
+}
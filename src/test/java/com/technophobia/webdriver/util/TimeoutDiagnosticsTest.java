@@ -0,0 +1,94 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.openqa.selenium.WebDriver;
+
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+public class TimeoutDiagnosticsTest {
+
+    @Test
+    public void shouldNotReadTheBrowserUnlessASinkAsks() {
+
+        final WebDriver webDriver = mock(WebDriver.class);
+        final TimeoutDiagnostics.Sink sink = new TimeoutDiagnostics.Sink() {
+            public void timedOut(final TimeoutDiagnostics.Capture capture) {
+                capture.getWaitingFor();
+            }
+        };
+
+        TimeoutDiagnostics.addSink(sink);
+        try {
+            TimeoutDiagnostics.timedOut(webDriver, "By.id: missing", 1,
+                    mock(WebdriverSubstepsConfiguration.class));
+        } finally {
+            TimeoutDiagnostics.removeSink(sink);
+        }
+
+        verify(webDriver, never()).getPageSource();
+    }
+
+
+    @Test
+    public void shouldTruncateToTheWaitingContextsLimit() {
+
+        final WebDriver webDriver = mock(WebDriver.class);
+        when(webDriver.getPageSource()).thenReturn("<html><body>0123456789</body></html>");
+
+        final WebdriverSubstepsConfiguration configuration = mock(WebdriverSubstepsConfiguration.class);
+        when(configuration.timeoutDiagnosticsMaxBytes()).thenReturn(12);
+
+        final StringBuilder pageSource = new StringBuilder();
+        final TimeoutDiagnostics.Sink sink = new TimeoutDiagnostics.Sink() {
+            public void timedOut(final TimeoutDiagnostics.Capture capture) {
+                pageSource.append(capture.getPageSource());
+            }
+        };
+
+        TimeoutDiagnostics.addSink(sink);
+        try {
+            TimeoutDiagnostics.timedOut(webDriver, "By.id: missing", 1, configuration);
+        } finally {
+            TimeoutDiagnostics.removeSink(sink);
+        }
+
+        assertThat(pageSource.toString(), startsWith("<html><body>\n<!-- truncated"));
+    }
+
+
+    @Test
+    public void shouldReadThePageSourceOnceAndTruncateIt() {
+
+        final WebDriver webDriver = mock(WebDriver.class);
+        when(webDriver.getPageSource()).thenReturn("<html><body>0123456789</body></html>");
+
+        final TimeoutDiagnostics.Capture capture = new TimeoutDiagnostics.Capture(webDriver, "By.id: missing", 1, 12);
+
+        assertThat(capture.getPageSource(), startsWith("<html><body>\n<!-- truncated from 36 bytes -->"));
+        assertThat(capture.getPageSource(), is(capture.getPageSource()));
+
+        verify(webDriver, times(1)).getPageSource();
+    }
+
+
+    @Test
+    public void shouldTruncateToWholeCharactersWithinTheByteLimit() throws Exception {
+
+        // two bytes each in utf-8, then one that is four bytes, a surrogate pair
+        final String source = "\u00e9\u00e9\u00e9\ud83d\ude00";
+
+        final String truncated = TimeoutDiagnostics.Capture.truncate(source, 7);
+
+        assertThat(truncated, is("\u00e9\u00e9\u00e9\n<!-- truncated from 10 bytes -->"));
+        assertThat(TimeoutDiagnostics.Capture.truncate(source, 10), is(source));
+    }
+}
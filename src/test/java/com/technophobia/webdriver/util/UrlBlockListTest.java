@@ -0,0 +1,40 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class UrlBlockListTest {
+
+    private final UrlBlockList blockList = new UrlBlockList(" *google-analytics.com* , fonts.*.com,,");
+
+
+    @Test
+    public void shouldMatchUrlsAndHosts() {
+
+        assertThat(blockList.getPatterns().size(), is(2));
+
+        assertThat(blockList.isBlocked("https://www.google-analytics.com/ga.js", "www.google-analytics.com"), is(true));
+        assertThat(blockList.isBlocked("https://fonts.googleapis.com/css?family=Lato", "fonts.googleapis.com"),
+                is(true));
+        assertThat(blockList.isBlocked("http://localhost/app/fonts.css", "localhost"), is(false));
+    }
+
+
+    @Test
+    public void shouldSendEverythingElseToTheProxy() {
+
+        assertThat(blockList.toPacScript("proxy:8080"), containsString("return 'PROXY proxy:8080';"));
+        assertThat(blockList.toPacScript(null), containsString("return 'DIRECT';"));
+        assertThat(blockList.toPacScript(null), containsString("'*google-analytics.com*', 'fonts.*.com'"));
+    }
+
+
+    @Test
+    public void shouldBeEmptyWithoutPatterns() {
+        assertThat(new UrlBlockList("").isEmpty(), is(true));
+        assertThat(new UrlBlockList(null).isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,58 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import com.technophobia.webdriver.substeps.runner.DefaultDriverType;
+import com.technophobia.webdriver.substeps.runner.WebdriverSubstepsConfiguration;
+
+public class WebDriverContextTest {
+
+    @Test
+    public void shouldQuitEvenIfTheCookiesCantBeDeleted() {
+        final WebDriver webDriver = mock(WebDriver.class);
+        final WebDriver.Options options = mock(WebDriver.Options.class);
+        when(webDriver.manage()).thenReturn(options);
+        doThrow(new WebDriverException("browser has gone")).when(options).deleteAllCookies();
+
+        final WebDriverContext context = new WebDriverContext(DefaultDriverType.FIREFOX, webDriver);
+        context.shutdownWebDriver();
+
+        verify(webDriver).quit();
+        assertThat(context.isShutdown(), is(true));
+    }
+
+
+    @Test
+    public void shouldNotCacheLookupsWithADriverThatDoesntReportItsCommands() {
+        final WebDriver webDriver = mock(WebDriver.class, withSettings().extraInterfaces(JavascriptExecutor.class));
+        final WebElement element = mock(WebElement.class);
+        when(webDriver.findElement(By.id("username"))).thenReturn(element);
+
+        final WebdriverSubstepsConfiguration configuration = mock(WebdriverSubstepsConfiguration.class);
+        when(configuration.lookupCache()).thenReturn(true);
+        when(configuration.defaultTimeout()).thenReturn(1L);
+
+        final WebDriverContext context = new WebDriverContext(DefaultDriverType.FIREFOX, webDriver, configuration);
+        context.waitForElement(By.id("username"));
+        context.waitForElement(By.id("username"));
+
+        verify(webDriver, times(2)).findElement(By.id("username"));
+        verify((JavascriptExecutor) webDriver, never()).executeScript(anyString());
+    }
+}
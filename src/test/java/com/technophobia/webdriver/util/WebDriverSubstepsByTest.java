@@ -0,0 +1,57 @@
+package com.technophobia.webdriver.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+
+public class WebDriverSubstepsByTest {
+
+    @Test
+    public void shouldReuseLocatorsForTheSameParameters() {
+
+        final By first = WebDriverSubstepsBy.ByTagAndAttributes("input", "type=\"submit\",name=\"go\"");
+        final By second = WebDriverSubstepsBy.ByTagAndAttributes("input", "type=\"submit\",name=\"go\"");
+
+        assertThat(second, sameInstance(first));
+        assertThat(WebDriverSubstepsBy.ByTagAndAttributes("input", "type=\"text\""), not(sameInstance(first)));
+        assertThat(WebDriverSubstepsBy.NthByTagAndAttributes("input", "type=\"submit\",name=\"go\"", 2),
+                not(sameInstance(first)));
+    }
+
+
+    @Test
+    public void shouldDistinguishTextModesForTheSameTagAndText() {
+
+        final By exact = WebDriverSubstepsBy.ByTagAndWithText("span", "result");
+        final By containing = WebDriverSubstepsBy.ByTagContainingText("span", "result");
+        final By startingWith = WebDriverSubstepsBy.ByTagStartingWithText("span", "result");
+
+        assertThat(containing, not(sameInstance(exact)));
+        assertThat(startingWith, not(sameInstance(containing)));
+        assertThat(((WebDriverSubstepsBy.XPathBy) containing).getXPath(),
+                is(".//span[contains(text(), 'result')]"));
+    }
+
+
+    @Test
+    public void shouldBuildTheXPathOnce() {
+
+        final WebDriverSubstepsBy.XPathBy by = (WebDriverSubstepsBy.XPathBy) WebDriverSubstepsBy
+                .ByIdContainingText("summary", "results");
+
+        final SearchContext context = mock(SearchContext.class);
+        by.findElements(context);
+        by.findElements(context);
+
+        assertThat(by.getXPath(), sameInstance(by.getXPath()));
+        verify(context, times(2)).findElements(By.xpath(".//*[@id='summary' and contains(text(), 'results')]"));
+    }
+}